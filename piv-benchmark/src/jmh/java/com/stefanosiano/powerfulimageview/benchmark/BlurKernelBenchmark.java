@@ -0,0 +1,113 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Box3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Box5x5BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.BoxBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian5x5BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.DualKawaseBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianFastBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.RecursiveGaussianBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.StackBlurKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of every Java blur kernel, over the sizes a downsampled bitmap usually has.
+ * Each operation blurs a square image of size x size pixels once.
+ * Run with the gc profiler (enabled by default in build.gradle) to get the allocation rate, too.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BlurKernelBenchmark {
+
+    /** Name of the PivBlurMode whose Java kernel is measured */
+    @Param({"STACK", "GAUSSIAN", "BOX3X3", "BOX5X5", "GAUSSIAN3X3", "GAUSSIAN5X5", "GAUSSIAN_FAST", "GAUSSIAN_RECURSIVE", "BOX", "DUAL_KAWASE"})
+    public String mode;
+
+    /** Width and height of the image */
+    @Param({"64", "128", "256", "512", "1080"})
+    public int size;
+
+    /** Radius passed to the kernel */
+    @Param({"1", "5", "10", "25"})
+    public int radius;
+
+    /** Value of BlurOptions.numThreads: 0 means all available cores */
+    @Param({"1", "2", "4", "0"})
+    public int numThreads;
+
+    private BlurKernel kernel;
+    private BlurContext context;
+    private ExecutorService executor;
+    private int[] source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernel = getKernel(mode);
+
+        //same kind of pool used by SharedBlurManager
+        executor = Executors.newCachedThreadPool();
+        context = new BlurContext(executor, numThreads);
+
+        //fixed seed, so that all runs blur the same image
+        Random random = new Random(size);
+        source = new int[size * size];
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+
+        pixels = new int[size * size];
+        buffer = PixelBuffer.wrap(pixels, size, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int[] blur() throws InterruptedException {
+        //kernels blur in place: restore the original image every time (a copy is negligible compared to a blur)
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        kernel.blur(buffer, radius, context);
+        return pixels;
+    }
+
+    private static BlurKernel getKernel(String mode) {
+        switch (mode) {
+            case "STACK": return new StackBlurKernel();
+            case "GAUSSIAN": return new GaussianBlurKernel();
+            case "BOX3X3": return new Box3x3BlurKernel();
+            case "BOX5X5": return new Box5x5BlurKernel();
+            case "GAUSSIAN3X3": return new Gaussian3x3BlurKernel();
+            case "GAUSSIAN5X5": return new Gaussian5x5BlurKernel();
+            case "GAUSSIAN_FAST": return new GaussianFastBlurKernel();
+            case "GAUSSIAN_RECURSIVE": return new RecursiveGaussianBlurKernel();
+            case "DUAL_KAWASE": return new DualKawaseBlurKernel();
+            case "BOX": return new BoxBlurKernel();
+            default: throw new IllegalArgumentException("Unknown blur mode: " + mode);
+        }
+    }
+}
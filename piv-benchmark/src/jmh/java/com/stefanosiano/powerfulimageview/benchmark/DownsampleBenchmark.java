@@ -0,0 +1,112 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.Box3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianFastBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.SeparableBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.StackBlurKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the area averaging downsampling fused with the horizontal pass of the separable kernels with the
+ * downsampling performed first, into an intermediate image, and blurred afterwards.
+ * Each operation downsamples a 12 megapixel photo (4000 x 3000) by the rate and blurs it once.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DownsampleBenchmark {
+
+    /** Width of the source image */
+    private static final int WIDTH = 4000;
+
+    /** Height of the source image */
+    private static final int HEIGHT = 3000;
+
+    /** Name of the PivBlurMode whose Java kernel is measured */
+    @Param({"STACK", "BOX3X3", "GAUSSIAN_FAST"})
+    public String mode;
+
+    /** Value of BlurOptions.downSamplingRate */
+    @Param({"2", "8"})
+    public int rate;
+
+    /** Radius passed to the kernel */
+    @Param({"3", "10"})
+    public int radius;
+
+    /** Value of BlurOptions.numThreads: 0 means all available cores */
+    @Param({"1", "0"})
+    public int numThreads;
+
+    private SeparableBlurKernel kernel;
+    private BlurContext context;
+    private ExecutorService executor;
+    private PixelBuffer source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernel = getKernel(mode);
+
+        //same kind of pool used by SharedBlurManager
+        executor = Executors.newCachedThreadPool();
+        context = new BlurContext(executor, numThreads);
+
+        //fixed seed, so that all runs blur the same image
+        Random random = new Random(WIDTH);
+        int[] sourcePixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < sourcePixels.length; i++)
+            sourcePixels[i] = random.nextInt();
+        source = PixelBuffer.wrap(sourcePixels, WIDTH, HEIGHT);
+
+        pixels = new int[(WIDTH / rate) * (HEIGHT / rate)];
+        buffer = PixelBuffer.wrap(pixels, WIDTH / rate, HEIGHT / rate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int[] fused() throws InterruptedException {
+        kernel.blur(source, buffer, radius, context);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] separate() throws InterruptedException {
+        //a radius of 0 only downsamples
+        kernel.blur(source, buffer, 0, context);
+        kernel.blur(buffer, radius, context);
+        return pixels;
+    }
+
+    private static SeparableBlurKernel getKernel(String mode) {
+        switch (mode) {
+            case "STACK": return new StackBlurKernel();
+            case "BOX3X3": return new Box3x3BlurKernel();
+            case "GAUSSIAN_FAST": return new GaussianFastBlurKernel();
+            default: throw new IllegalArgumentException("Unknown blur mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.DualKawaseBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianFastBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.RecursiveGaussianBlurKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the gaussian kernels with big radii, as used for static blurs of big images:
+ * the convolution one grows with the radius, while the others should stay flat.
+ * Each operation blurs a square image of size x size pixels once, on a single thread.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LargeRadiusBenchmark {
+
+    /** Name of the PivBlurMode whose Java kernel is measured */
+    @Param({"GAUSSIAN", "GAUSSIAN_FAST", "GAUSSIAN_RECURSIVE", "DUAL_KAWASE"})
+    public String mode;
+
+    /** Width and height of the image */
+    @Param({"512"})
+    public int size;
+
+    /** Radius passed to the kernel */
+    @Param({"10", "25", "50", "100", "200"})
+    public int radius;
+
+    private BlurKernel kernel;
+    private BlurContext context;
+    private int[] source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernel = getKernel(mode);
+        context = BlurContext.singleThreaded();
+
+        //fixed seed, so that all runs blur the same image
+        Random random = new Random(size);
+        source = new int[size * size];
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+
+        pixels = new int[size * size];
+        buffer = PixelBuffer.wrap(pixels, size, size);
+    }
+
+    @Benchmark
+    public int[] blur() throws InterruptedException {
+        //kernels blur in place: restore the original image every time (a copy is negligible compared to a blur)
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        kernel.blur(buffer, radius, context);
+        return pixels;
+    }
+
+    private static BlurKernel getKernel(String mode) {
+        switch (mode) {
+            case "GAUSSIAN": return new GaussianBlurKernel();
+            case "GAUSSIAN_FAST": return new GaussianFastBlurKernel();
+            case "GAUSSIAN_RECURSIVE": return new RecursiveGaussianBlurKernel();
+            case "DUAL_KAWASE": return new DualKawaseBlurKernel();
+            default: throw new IllegalArgumentException("Unknown blur mode: " + mode);
+        }
+    }
+}
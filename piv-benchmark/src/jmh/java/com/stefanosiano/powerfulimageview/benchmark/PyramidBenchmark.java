@@ -0,0 +1,87 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.BlurPyramid;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the live blur of the pyramid mode: the pyramid is built once, like when the radius changes through
+ * a SeekBar, and each operation blurs the image of width x (width * 9 / 16) pixels with a new radius.
+ * Compare it with the GAUSSIAN mode of BlurKernelBenchmark, which it approximates.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PyramidBenchmark {
+
+    /** Width of the image */
+    @Param({"256", "1080"})
+    public int width;
+
+    /** Radius passed to the pyramid */
+    @Param({"3", "10", "30"})
+    public int radius;
+
+    /** Value of BlurOptions.pyramidLevels */
+    @Param({"4"})
+    public int levels;
+
+    /** Value of BlurOptions.numThreads: 0 means all available cores */
+    @Param({"1", "0"})
+    public int numThreads;
+
+    private BlurPyramid pyramid;
+    private BlurContext context;
+    private ExecutorService executor;
+    private int[] source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        //same kind of pool used by SharedBlurManager
+        executor = Executors.newCachedThreadPool();
+        context = new BlurContext(executor, numThreads);
+
+        //fixed seed, so that all runs blur the same image
+        int height = width * 9 / 16;
+        Random random = new Random(width);
+        source = new int[width * height];
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+
+        pixels = new int[width * height];
+        buffer = PixelBuffer.wrap(pixels, width, height);
+        pyramid = BlurPyramid.build(PixelBuffer.wrap(source, width, height), levels, context);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int[] blur() throws InterruptedException {
+        //the pyramid blurs in place: restore the original image every time (a copy is negligible compared to a blur)
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        pyramid.blur(radius, buffer, context);
+        return pixels;
+    }
+}
@@ -0,0 +1,106 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.Box3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Box5x5BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.ConvolveBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian5x5BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the iterated execution of the fixed size convolution kernels with the single pass one,
+ * where iterations are collapsed into a single kernel or running sums, or approximated by 3 box filters with big radii.
+ * Each operation blurs a square image of size x size pixels once.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SinglePassBenchmark {
+
+    /** Name of the PivBlurMode whose Java kernel is measured */
+    @Param({"BOX3X3", "BOX5X5", "GAUSSIAN3X3", "GAUSSIAN5X5"})
+    public String mode;
+
+    /** Width and height of the image */
+    @Param({"256", "1080"})
+    public int size;
+
+    /** Radius passed to the kernel: number of iterations of the filter */
+    @Param({"1", "5", "20"})
+    public int radius;
+
+    /** Value of BlurOptions.singlePass */
+    @Param({"false", "true"})
+    public boolean singlePass;
+
+    /** Value of BlurOptions.numThreads: 0 means all available cores */
+    @Param({"1", "0"})
+    public int numThreads;
+
+    private ConvolveBlurKernel kernel;
+    private BlurContext context;
+    private ExecutorService executor;
+    private int[] source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernel = getKernel(mode);
+        kernel.setSinglePass(singlePass);
+
+        //same kind of pool used by SharedBlurManager
+        executor = Executors.newCachedThreadPool();
+        context = new BlurContext(executor, numThreads);
+
+        //fixed seed, so that all runs blur the same image
+        Random random = new Random(size);
+        source = new int[size * size];
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+
+        pixels = new int[size * size];
+        buffer = PixelBuffer.wrap(pixels, size, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int[] blur() throws InterruptedException {
+        //kernels blur in place: restore the original image every time (a copy is negligible compared to a blur)
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        kernel.blur(buffer, radius, context);
+        return pixels;
+    }
+
+    private static ConvolveBlurKernel getKernel(String mode) {
+        switch (mode) {
+            case "BOX3X3": return new Box3x3BlurKernel();
+            case "BOX5X5": return new Box5x5BlurKernel();
+            case "GAUSSIAN3X3": return new Gaussian3x3BlurKernel();
+            case "GAUSSIAN5X5": return new Gaussian5x5BlurKernel();
+            default: throw new IllegalArgumentException("Unknown blur mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.stefanosiano.powerfulimageview.benchmark;
+
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.Box3x3BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianFastBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.RecursiveGaussianBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.SeparableBlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.StackBlurKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the strided vertical pass of the separable kernels with the transposed one, where the image
+ * is transposed in blocks and blurred again horizontally.
+ * Each operation blurs an image of width x (width * 9 / 16) pixels once, like a landscape frame.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransposeBenchmark {
+
+    /** Name of the PivBlurMode whose Java kernel is measured */
+    @Param({"STACK", "GAUSSIAN", "BOX3X3", "GAUSSIAN_FAST", "GAUSSIAN_RECURSIVE"})
+    public String mode;
+
+    /** Width of the image */
+    @Param({"256", "1080"})
+    public int width;
+
+    /** Radius passed to the kernel */
+    @Param({"3", "10"})
+    public int radius;
+
+    /** Value of BlurOptions.transposeVertical */
+    @Param({"false", "true"})
+    public boolean transposeVertical;
+
+    /** Value of BlurOptions.numThreads: 0 means all available cores */
+    @Param({"1", "0"})
+    public int numThreads;
+
+    private SeparableBlurKernel kernel;
+    private BlurContext context;
+    private ExecutorService executor;
+    private int[] source;
+    private int[] pixels;
+    private PixelBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernel = getKernel(mode);
+        kernel.setTransposeVertical(transposeVertical);
+
+        //same kind of pool used by SharedBlurManager
+        executor = Executors.newCachedThreadPool();
+        context = new BlurContext(executor, numThreads);
+
+        //fixed seed, so that all runs blur the same image
+        int height = width * 9 / 16;
+        Random random = new Random(width);
+        source = new int[width * height];
+        for (int i = 0; i < source.length; i++)
+            source[i] = random.nextInt();
+
+        pixels = new int[width * height];
+        buffer = PixelBuffer.wrap(pixels, width, height);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int[] blur() throws InterruptedException {
+        //kernels blur in place: restore the original image every time (a copy is negligible compared to a blur)
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        kernel.blur(buffer, radius, context);
+        return pixels;
+    }
+
+    private static SeparableBlurKernel getKernel(String mode) {
+        switch (mode) {
+            case "STACK": return new StackBlurKernel();
+            case "GAUSSIAN": return new GaussianBlurKernel();
+            case "BOX3X3": return new Box3x3BlurKernel();
+            case "GAUSSIAN_FAST": return new GaussianFastBlurKernel();
+            case "GAUSSIAN_RECURSIVE": return new RecursiveGaussianBlurKernel();
+            default: throw new IllegalArgumentException("Unknown blur mode: " + mode);
+        }
+    }
+}
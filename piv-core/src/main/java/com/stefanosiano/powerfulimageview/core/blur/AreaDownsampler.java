@@ -0,0 +1,83 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Downsamples an image by area averaging (a box filter): each pixel is the average of all the source pixels it covers.
+ * Unlike bilinear scaling, which reads only the 4 source pixels nearest to each pixel, no source pixel is skipped,
+ * so fine details don't alias, whatever the ratio between the sizes.
+ * Each pixel covers whole source pixels: if the ratio is not an integer, some pixels cover an additional row or column.
+ */
+
+final class AreaDownsampler {
+
+    /** Maximum number of source pixels a pixel can cover, so that the sum of a channel fits an int */
+    static final int MAX_AREA = Integer.MAX_VALUE / 256;
+
+    private AreaDownsampler() {}
+
+    /**
+     * Checks that the source can be downsampled into the pixels.
+     *
+     * @throws IllegalArgumentException If the source is smaller than the pixels, or a pixel would cover more than MAX_AREA source pixels
+     */
+    static void check(PixelSource source, PixelBuffer pixels) {
+        int srcW = source.getWidth();
+        int srcH = source.getHeight();
+        int w = pixels.getWidth();
+        int h = pixels.getHeight();
+        if(srcW < w || srcH < h)
+            throw new IllegalArgumentException("Source (" + srcW + "x" + srcH + ") must not be smaller than the pixels (" + w + "x" + h + ")");
+        if((long) (srcW / w + 1) * (srcH / h + 1) > MAX_AREA)
+            throw new IllegalArgumentException("Source (" + srcW + "x" + srcH + ") is too big to be downsampled to " + w + "x" + h);
+    }
+
+    /**
+     * Downsamples a range of rows of the pixels from the source. The source rows covered by each row are read once.
+     *
+     * @param source Image to downsample, checked through check()
+     * @param pixels Pixels to write
+     * @param minY First row of the pixels to write
+     * @param maxY Row after the last one to write
+     * @param scratch Scratch buffers of the calling thread
+     */
+    static void downsample(PixelSource source, PixelBuffer pixels, int minY, int maxY, Scratch scratch) {
+        int srcW = source.getWidth();
+        int srcH = source.getHeight();
+        int[] dstPix = pixels.getPixels();
+        int dstOffset = pixels.getOffset();
+        int dstStride = pixels.getStride();
+        int w = pixels.getWidth();
+        int h = pixels.getHeight();
+
+        for (int y = minY; y < maxY; y++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+
+            //source rows covered by the row: at least one, since the source is not smaller
+            int srcY = (int) ((long) y * srcH / h);
+            int rows = (int) ((long) (y + 1) * srcH / h) - srcY;
+            int length = rows * srcW;
+            int[] rowPix = scratch.ints(2, length);
+            source.readRows(srcY, rows, rowPix);
+
+            int index = dstOffset + y * dstStride;
+            int srcX = 0;
+            for (int x = 0; x < w; x++, index++) {
+                int endX = (int) ((long) (x + 1) * srcW / w);
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int row = 0; row < length; row += srcW) {
+                    for (int i = row + srcX, end = row + endX; i < end; i++) {
+                        int pixel = rowPix[i];
+                        a += pixel >>> 24;
+                        r += (pixel >> 16) & 0xff;
+                        g += (pixel >> 8) & 0xff;
+                        b += pixel & 0xff;
+                    }
+                }
+                int count = rows * (endX - srcX);
+                int half = count >> 1;
+                dstPix[index] = ((a + half) / count << 24) | ((r + half) / count << 16) | ((g + half) / count << 8) | ((b + half) / count);
+                srcX = endX;
+            }
+        }
+    }
+}
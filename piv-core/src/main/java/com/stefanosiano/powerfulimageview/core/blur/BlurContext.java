@@ -0,0 +1,170 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Environment blur kernels run into: the executor used to run tasks and the number of threads to split the work into.
+ *
+ * When multithreaded, each pass is split into more tasks than threads, and threads claim tasks one by one until
+ * none is left: threads on faster cores (or less busy ones) end up running more tasks, so they don't wait for the
+ * slower ones. The calling thread claims tasks too, so a blur started from a thread of the executor itself
+ * (or from a busy executor) always completes.
+ */
+
+public final class BlurContext {
+
+    /** Number of tasks each thread runs on average, when multithreaded */
+    public static final int TASKS_PER_THREAD = 4;
+
+    /** Executor used to run blur tasks. If null, tasks are run on the calling thread */
+    private final Executor mExecutor;
+
+    /** Number of threads running the tasks of a pass, including the calling one */
+    private final int mNumThreads;
+
+    /** Pool of the buffers used by blur kernels */
+    private final ScratchPool mScratchPool;
+
+    /**
+     * Creates the context blur kernels will run into, with its own pool of buffers.
+     *
+     * @param executor Executor used to run blur tasks. If null, tasks are run on the calling thread
+     * @param numThreads Number of threads to use (no more than available). If it's 0 or negative, available cores number will be used
+     */
+    public BlurContext(Executor executor, int numThreads) {
+        this(executor, numThreads, new ScratchPool());
+    }
+
+    /**
+     * Creates the context blur kernels will run into.
+     *
+     * @param executor Executor used to run blur tasks. If null, tasks are run on the calling thread
+     * @param numThreads Number of threads to use (no more than available). If it's 0 or negative, available cores number will be used
+     * @param scratchPool Pool of the buffers used by blur kernels, which can be shared by several contexts
+     */
+    public BlurContext(Executor executor, int numThreads, ScratchPool scratchPool) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.mExecutor = executor;
+        this.mNumThreads = executor == null ? 1 : numThreads <= 0 ? cores : Math.min(numThreads, cores);
+        this.mScratchPool = scratchPool;
+    }
+
+    /** Returns a context that runs everything on the calling thread */
+    public static BlurContext singleThreaded() {
+        return new BlurContext(null, 1);
+    }
+
+    /** Returns the executor used to run blur tasks, or null if tasks are run on the calling thread */
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /** Returns the number of threads running the tasks of a pass, including the calling one */
+    public int getNumThreads() {
+        return mNumThreads;
+    }
+
+    /** Returns the number of tasks every pass is split into */
+    public int getNumTasks() {
+        return mNumThreads == 1 ? 1 : mNumThreads * TASKS_PER_THREAD;
+    }
+
+    /** Returns the pool of the buffers used by blur kernels */
+    public ScratchPool getScratchPool() {
+        return mScratchPool;
+    }
+
+    /**
+     * Runs all the tasks and waits for them to complete.
+     * If only one task is passed, or there is no executor, tasks are run on the calling thread, without allocating memory.
+     * Otherwise tasks are claimed by the calling thread and by (numThreads - 1) workers sent to the executor.
+     *
+     * @param tasks Tasks to run
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void invokeAll(List<? extends Callable<Void>> tasks) throws InterruptedException {
+        if(mExecutor == null || tasks.size() == 1) {
+            //indexed loop, so that no iterator is allocated
+            for (int i = 0; i < tasks.size(); i++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                try {
+                    tasks.get(i).call();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            //tasks stop early when interrupted, leaving their part of the pixels unfinished
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return;
+        }
+
+        Batch batch = new Batch(tasks);
+        for (int i = 1; i < Math.min(mNumThreads, tasks.size()); i++)
+            mExecutor.execute(batch);
+        batch.runTasks(true);
+        if(Thread.interrupted())
+            batch.mCancelled = true;
+
+        //tasks still running write into the pixels, so they are always waited for, even if interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                batch.mDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted || batch.mCancelled)
+            throw new InterruptedException();
+    }
+
+
+    /** Tasks of a pass, claimed one by one by the threads running them */
+    private static final class Batch implements Runnable {
+        private final List<? extends Callable<Void>> mTasks;
+        private final AtomicInteger mNext = new AtomicInteger();
+        private final CountDownLatch mDone;
+
+        /** Set when the calling thread is interrupted: tasks claimed afterwards are skipped */
+        private volatile boolean mCancelled;
+
+        Batch(List<? extends Callable<Void>> tasks) {
+            this.mTasks = tasks;
+            this.mDone = new CountDownLatch(tasks.size());
+        }
+
+        @Override public void run() {
+            runTasks(false);
+        }
+
+        /**
+         * Claims and runs tasks until none is left.
+         *
+         * @param caller Whether it's the calling thread, which checks for interruption between tasks
+         */
+        void runTasks(boolean caller) {
+            int i;
+            while ((i = mNext.getAndIncrement()) < mTasks.size()) {
+                if(caller && Thread.interrupted())
+                    mCancelled = true;
+                try {
+                    if(!mCancelled)
+                        mTasks.get(i).call();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    mDone.countDown();
+                }
+            }
+        }
+    }
+}
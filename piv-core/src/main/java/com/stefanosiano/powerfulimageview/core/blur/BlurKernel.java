@@ -0,0 +1,19 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Pure Java blur algorithm working on raw pixels
+ */
+
+public interface BlurKernel {
+
+    /**
+     * Blurs the pixels of the buffer, in place.
+     * Kernels check the interruption of the thread between rows (or columns), so an interrupted blur stops soon.
+     *
+     * @param pixels Pixels to blur
+     * @param radius Radius of the algorithm
+     * @param context Context providing the executor and the number of threads to use
+     * @throws InterruptedException If the thread is interrupted while blurring. Pixels are left in an undefined state
+     */
+    void blur(PixelBuffer pixels, int radius, BlurContext context) throws InterruptedException;
+}
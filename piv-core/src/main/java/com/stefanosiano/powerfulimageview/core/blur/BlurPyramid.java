@@ -0,0 +1,285 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Pyramid of an ARGB image: each level is the previous one downsampled to half its size with a small
+ * (1, 3, 3, 1) filter, so it's slightly blurred. It's built once, and then a blur of any radius costs
+ * little: the deepest level less blurred than requested is picked, only the missing blur is applied to it
+ * (a small gaussian over a small image), and it's upsampled back to the original size bilinearly.
+ *
+ * Blurs are close to the gaussian blur of GaussianBlurKernel with the same radius, and the strength
+ * changes smoothly with the radius, so it's good for live blurs (e.g. through a SeekBar).
+ * The levels take up to a third of the memory of the image, or less if the depth of the pyramid is limited.
+ */
+
+public final class BlurPyramid {
+
+    /** Number of fractional bits of the bilinear weights */
+    private static final int SHIFT = 8;
+
+    /** Downsampled images: level 0 is half the original size. The original image is not kept */
+    private final PixelBuffer[] mLevels;
+
+    /** Width of the original image */
+    private final int mWidth;
+
+    /** Height of the original image */
+    private final int mHeight;
+
+    /** Used to apply the missing blur to the levels */
+    private final GaussianBlurKernel mGaussian = new GaussianBlurKernel();
+
+    private BlurPyramid(int width, int height, PixelBuffer[] levels) {
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mLevels = levels;
+    }
+
+    /**
+     * Builds the pyramid of the pixels.
+     *
+     * @param pixels Pixels to build the pyramid from. They are not modified, and can be changed afterwards
+     * @param maxLevels Maximum number of levels. If it's 0 or negative, levels are added until the image is 1 pixel big
+     * @param context Context providing the executor and the number of threads to use
+     * @return The pyramid of the pixels
+     * @throws InterruptedException If the thread is interrupted while building the pyramid
+     */
+    public static BlurPyramid build(PixelBuffer pixels, int maxLevels, BlurContext context) throws InterruptedException {
+        ArrayList<PixelBuffer> levels = new ArrayList<>();
+        PixelBuffer src = pixels;
+        while ((maxLevels <= 0 || levels.size() < maxLevels) && (src.getWidth() > 1 || src.getHeight() > 1)) {
+            int w = (src.getWidth() + 1) / 2;
+            int h = (src.getHeight() + 1) / 2;
+            PixelBuffer dst = PixelBuffer.wrap(new int[w * h], w, h);
+            run(src, dst, 0, context);
+            levels.add(dst);
+            src = dst;
+        }
+        return new BlurPyramid(pixels.getWidth(), pixels.getHeight(), levels.toArray(new PixelBuffer[levels.size()]));
+    }
+
+    /** Returns the width of the original image */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** Returns the height of the original image */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Returns the number of levels of the pyramid */
+    public int getLevels() {
+        return mLevels.length;
+    }
+
+    /** Returns the number of bytes used by the levels */
+    public long getByteCount() {
+        long bytes = 0;
+        for (PixelBuffer level : mLevels)
+            bytes += 4L * level.getWidth() * level.getHeight();
+        return bytes;
+    }
+
+    /**
+     * Blurs the original image into the output, close to a gaussian blur with the passed radius.
+     *
+     * @param radius Radius of the blur. If it's 0 or negative, the output is not modified
+     * @param output Buffer containing the original image, which is blurred in place. It must have the size of the original image
+     * @param context Context providing the executor, the number of threads and the buffers to use
+     * @throws InterruptedException If the thread is interrupted while blurring. Output is left in an undefined state
+     */
+    public void blur(int radius, PixelBuffer output, BlurContext context) throws InterruptedException {
+        if(output.getWidth() != mWidth || output.getHeight() != mHeight)
+            throw new IllegalArgumentException("Output size " + output.getWidth() + "x" + output.getHeight() + " differs from pyramid size " + mWidth + "x" + mHeight);
+        if(radius <= 0)
+            return;
+
+        double sigma = GaussianBlurKernel.getSigma(radius);
+        int level = getLevel(sigma);
+
+        //the missing blur, in pixels of the level
+        double scale = 1 << (level + 1);
+        int residualRadius = GaussianBlurKernel.getRadius(Math.sqrt(sigma * sigma - (level < 0 ? 0 : getSigma(level) * getSigma(level))) / scale);
+
+        if(level < 0) {
+            if(residualRadius > 0)
+                mGaussian.blur(output, residualRadius, context);
+            return;
+        }
+
+        PixelBuffer source = mLevels[level];
+        if(residualRadius <= 0) {
+            run(source, output, 1 << (level + 1), context);
+            return;
+        }
+
+        //levels are never modified, so the missing blur is applied to a copy
+        ScratchPool pool = context.getScratchPool();
+        int w = source.getWidth();
+        int h = source.getHeight();
+        int[] pix = pool.acquire(w * h);
+        try {
+            System.arraycopy(source.getPixels(), 0, pix, 0, w * h);
+            PixelBuffer blurred = PixelBuffer.wrap(pix, w, h);
+            mGaussian.blur(blurred, residualRadius, context);
+            run(blurred, output, 1 << (level + 1), context);
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Returns the deepest level whose own blur doesn't exceed the passed sigma, or -1 if even level 0 is too blurred
+     * and the original image should be used.
+     */
+    int getLevel(double sigma) {
+        int level = -1;
+        while (level + 1 < mLevels.length && getSigma(level + 1) <= sigma)
+            level++;
+        return level;
+    }
+
+    /**
+     * Returns the sigma of the blur of a level upsampled to the original size, in pixels of the original image.
+     * Each downsampling adds a variance of 0.75 pixels of its source, and the bilinear upsampling adds
+     * a variance of 1/6 of the size of a pixel of the level.
+     */
+    static double getSigma(int level) {
+        double scale = 1 << (level + 1);
+        return Math.sqrt((scale * scale - 1) / 4 + scale * scale / 6);
+    }
+
+    /**
+     * Resamples the source into the destination.
+     *
+     * @param scale Ratio between the sizes of the destination and of the source when upsampling, or 0 to downsample to half size
+     */
+    private static void run(PixelBuffer src, PixelBuffer dst, int scale, BlurContext context) throws InterruptedException {
+        int cores = context.getNumTasks();
+        ArrayList<ResampleTask> tasks = new ArrayList<>(cores);
+        for (int i = 0; i < cores; i++)
+            tasks.add(new ResampleTask(src, dst, scale, context.getScratchPool(), cores, i));
+        context.invokeAll(tasks);
+    }
+
+    /** Downsamples a range of rows of the source to half its size, with a separable (1, 3, 3, 1) / 8 filter */
+    private static void downsample(PixelBuffer src, PixelBuffer dst, int cores, int core) {
+        int[] srcPix = src.getPixels();
+        int srcOffset = src.getOffset();
+        int srcStride = src.getStride();
+        int maxX = src.getWidth() - 1;
+        int maxY = src.getHeight() - 1;
+        int[] dstPix = dst.getPixels();
+        int dstOffset = dst.getOffset();
+        int dstStride = dst.getStride();
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+
+        for (int y = core * h / cores, endY = (core + 1) * h / cores; y < endY; y++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            int index = dstOffset + y * dstStride;
+            for (int x = 0; x < w; x++, index++) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int j = 0; j < 4; j++) {
+                    int row = srcOffset + Math.min(maxY, Math.max(0, 2 * y - 1 + j)) * srcStride;
+                    int weightY = j == 0 || j == 3 ? 1 : 3;
+                    for (int i = 0; i < 4; i++) {
+                        int pixel = srcPix[row + Math.min(maxX, Math.max(0, 2 * x - 1 + i))];
+                        int weight = weightY * (i == 0 || i == 3 ? 1 : 3);
+                        a += weight * (pixel >>> 24);
+                        r += weight * ((pixel >> 16) & 0xff);
+                        g += weight * ((pixel >> 8) & 0xff);
+                        b += weight * (pixel & 0xff);
+                    }
+                }
+                //weights sum to 64
+                dstPix[index] = ((a + 32) >> 6 << 24) | ((r + 32) >> 6 << 16) | ((g + 32) >> 6 << 8) | ((b + 32) >> 6);
+            }
+        }
+    }
+
+    /** Upsamples a range of rows of the destination bilinearly from the source, a level of the pyramid */
+    private static void upsample(PixelBuffer src, PixelBuffer dst, int scale, Scratch scratch, int cores, int core) {
+        int[] srcPix = src.getPixels();
+        int srcOffset = src.getOffset();
+        int srcStride = src.getStride();
+        int srcW = src.getWidth();
+        int srcH = src.getHeight();
+        int[] dstPix = dst.getPixels();
+        int dstOffset = dst.getOffset();
+        int dstStride = dst.getStride();
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+
+        //each pixel of the level covers (scale x scale) pixels of the destination, and its center is in the middle of them
+        double inverseScale = 1d / scale;
+        int[] x0s = scratch.ints(0, w);
+        int[] fxs = scratch.ints(1, w);
+        for (int x = 0; x < w; x++) {
+            double sx = Math.max(0, (x + 0.5) * inverseScale - 0.5);
+            x0s[x] = Math.min(srcW - 1, (int) sx);
+            fxs[x] = x0s[x] == srcW - 1 ? 0 : (int) Math.round((sx - x0s[x]) * (1 << SHIFT));
+        }
+
+        for (int y = core * h / cores, endY = (core + 1) * h / cores; y < endY; y++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            double sy = Math.max(0, (y + 0.5) * inverseScale - 0.5);
+            int y0 = Math.min(srcH - 1, (int) sy);
+            int fy = y0 == srcH - 1 ? 0 : (int) Math.round((sy - y0) * (1 << SHIFT));
+            int row0 = srcOffset + y0 * srcStride;
+            int row1 = fy == 0 ? row0 : row0 + srcStride;
+            int index = dstOffset + y * dstStride;
+
+            for (int x = 0; x < w; x++, index++) {
+                int fx = fxs[x];
+                int i0 = x0s[x];
+                int i1 = fx == 0 ? i0 : i0 + 1;
+                int p00 = srcPix[row0 + i0], p01 = srcPix[row0 + i1];
+                int p10 = srcPix[row1 + i0], p11 = srcPix[row1 + i1];
+                dstPix[index] = (lerp(p00 >>> 24, p01 >>> 24, p10 >>> 24, p11 >>> 24, fx, fy) << 24) |
+                        (lerp((p00 >> 16) & 0xff, (p01 >> 16) & 0xff, (p10 >> 16) & 0xff, (p11 >> 16) & 0xff, fx, fy) << 16) |
+                        (lerp((p00 >> 8) & 0xff, (p01 >> 8) & 0xff, (p10 >> 8) & 0xff, (p11 >> 8) & 0xff, fx, fy) << 8) |
+                        lerp(p00 & 0xff, p01 & 0xff, p10 & 0xff, p11 & 0xff, fx, fy);
+            }
+        }
+    }
+
+    /** Bilinear interpolation of a channel of 4 pixels, with fixed point weights */
+    private static int lerp(int c00, int c01, int c10, int c11, int fx, int fy) {
+        int top = (c00 << SHIFT) + (c01 - c00) * fx;
+        int bottom = (c10 << SHIFT) + (c11 - c10) * fx;
+        return ((top << SHIFT) + (bottom - top) * fy + (1 << (2 * SHIFT - 1))) >> (2 * SHIFT);
+    }
+
+
+    private static class ResampleTask implements Callable<Void> {
+        private final PixelBuffer _src;
+        private final PixelBuffer _dst;
+        private final int _scale;
+        private final ScratchPool _pool;
+        private final int _totalCores;
+        private final int _coreIndex;
+
+        ResampleTask(PixelBuffer src, PixelBuffer dst, int scale, ScratchPool pool, int totalCores, int coreIndex) {
+            _src = src;
+            _dst = dst;
+            _scale = scale;
+            _pool = pool;
+            _totalCores = totalCores;
+            _coreIndex = coreIndex;
+        }
+
+        @Override public Void call() throws Exception {
+            if(_scale > 0)
+                upsample(_src, _dst, _scale, _pool.getScratch(), _totalCores, _coreIndex);
+            else
+                downsample(_src, _dst, _totalCores, _coreIndex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Receives the passes of a separable kernel, e.g. to trace or time them.
+ * Both methods are called on the thread starting the blur: a pass ends when all its tasks are done.
+ */
+
+public interface BlurTracer {
+
+    /**
+     * Called before a pass starts.
+     *
+     * @param vertical Whether it's the vertical pass, including the transpositions around it, if enabled
+     */
+    void onPassStarted(boolean vertical);
+
+    /**
+     * Called when a pass ends, even if it was interrupted.
+     *
+     * @param vertical Whether it's the vertical pass, including the transpositions around it, if enabled
+     * @param nanos Duration of the pass, in nanoseconds
+     */
+    void onPassEnded(boolean vertical, long nanos);
+}
@@ -0,0 +1,14 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the box blur with 3x3 coefficient matrix.
+ * Changing radius will repeat the process radius times.
+ */
+
+public final class Box3x3BlurKernel extends ConvolveBlurKernel {
+
+    @Override
+    float[] getFilter(int radius){
+        return new float[] {1/3f, 1/3f, 1/3f};
+    }
+}
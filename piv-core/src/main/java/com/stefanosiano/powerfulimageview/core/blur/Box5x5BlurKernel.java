@@ -0,0 +1,14 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the box blur with 5x5 coefficient matrix.
+ * Changing radius will repeat the process radius times.
+ */
+
+public final class Box5x5BlurKernel extends ConvolveBlurKernel {
+
+    @Override
+    float[] getFilter(int radius){
+        return new float[] {0.2f, 0.2f, 0.2f, 0.2f, 0.2f};
+    }
+}
@@ -0,0 +1,19 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the box blur with a box of (2 * radius + 1) x (2 * radius + 1) pixels, through a summed area table.
+ * Its speed doesn't depend on the radius. If the same image is blurred several times, use a SummedAreaTable
+ * directly, so that it's built only once.
+ */
+
+public final class BoxBlurKernel implements BlurKernel {
+
+    @Override
+    public void blur(PixelBuffer pixels, int radius, BlurContext context) throws InterruptedException {
+
+        if(radius <= 0)
+            return;
+
+        SummedAreaTable.build(pixels, context).blur(radius, pixels, context);
+    }
+}
@@ -0,0 +1,422 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Base class that performs a separable convolution blur.
+ * Should be overridden to provide the coefficients to use, so that it can perform the box or gaussian blur.
+ * The filter is applied horizontally and then vertically, as many times as returned by getIterations().
+ *
+ * Coefficients are converted once into fixed point integers, whose sum is exactly 1 << SHIFT.
+ * Every line (row or column) is split into 4 channel arrays, padded with the edge pixels, so that
+ * the inner loop never checks bounds. Symmetric filters are applied summing the pixels that share
+ * the same coefficient first, halving the number of multiplications.
+ *
+ * In single pass mode the iterations are collapsed. Up to 3 iterations, box filters are applied through running
+ * sums without rounding between iterations, while other filters are convolved with themselves once, and the resulting
+ * kernel is applied in one pass. With more iterations the result is almost a gaussian, so it's approximated by 3 box
+ * filters with the same variance, applied through running sums: the cost doesn't depend on the radius anymore.
+ * Box filters have a fractional size ("extended" boxes), so that the variance matches exactly.
+ */
+
+public abstract class ConvolveBlurKernel extends SeparableBlurKernel {
+
+    /** Number of fractional bits of the fixed point coefficients */
+    private static final int SHIFT = 16;
+
+    /** Value added before shifting, to round the result instead of truncating it */
+    private static final int ROUND = 1 << (SHIFT - 1);
+
+    /** Number of box filters approximating the iterations in single pass mode */
+    private static final int APPROXIMATION_BOXES = 3;
+
+    /** Last coefficients computed, reused while the radius doesn't change */
+    private volatile Weights mLastWeights;
+
+    /** Last coefficients of the filter convolved with itself, reused while the radius doesn't change */
+    private volatile Weights mLastCompositeWeights;
+
+    /** Parameters of the last blur, reused while they don't change */
+    private volatile Pass mLastPass;
+
+    /** Whether the iterations should be collapsed into a single pass */
+    private volatile boolean mSinglePass;
+
+    /**
+     * Returns a 1D filter to perform the 2D blur
+     *
+     * @param radius Radius passed to the blur
+     */
+    abstract float[] getFilter(int radius);
+
+    /**
+     * Returns how many times the filter should be applied. By default it's the radius itself.
+     *
+     * @param radius Radius passed to the blur
+     */
+    int getIterations(int radius) {
+        return radius;
+    }
+
+    /**
+     * Returns whether the filter depends on the radius. If not, the coefficients are computed only once.
+     * By default it's false.
+     */
+    boolean isFilterRadiusDependent() {
+        return false;
+    }
+
+    /**
+     * Returns how far, in pixels, the blur with the passed radius spreads each pixel: a change of the image
+     * changes the blurred image only within this distance from it, so a region can be blurred again alone.
+     *
+     * @param radius Radius passed to the blur
+     */
+    public int getReach(int radius) {
+        if(radius <= 0)
+            return 0;
+        if(mSinglePass && getIterations(radius) > APPROXIMATION_BOXES) {
+            Pass pass = (Pass) getParams(radius);
+            return pass.boxPasses * (pass.boxHalf + (pass.boxAlpha > 0 ? 1 : 0));
+        }
+        return getIterations(radius) * (getFilter(radius).length / 2);
+    }
+
+    /** Returns whether the iterations are collapsed into a single pass */
+    public boolean isSinglePass() {
+        return mSinglePass;
+    }
+
+    /**
+     * Sets whether the iterations should be collapsed into a single pass.
+     * Up to 3 iterations the result is the same as applying the filter several times, except for rounding
+     * (and a few pixels on the edges, when the filter is not a box). With more iterations it's approximated
+     * by 3 box filters with the same variance, so that its cost doesn't depend on the radius.
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.mSinglePass = singlePass;
+    }
+
+    @Override
+    Object getParams(int radius) {
+        Weights weights = getWeights(radius);
+        int iterations = getIterations(radius);
+        int boxPasses = 0;
+        int boxHalf = 0;
+        double boxAlpha = 0;
+
+        if(mSinglePass && iterations > APPROXIMATION_BOXES) {
+            //each box gets a third of the variance of the filter applied iterations times
+            double variance = weights.variance * iterations / APPROXIMATION_BOXES;
+            //largest box whose variance (half * (half + 1) / 3) doesn't exceed it, extended by a fraction of a pixel
+            boxHalf = (int) ((Math.sqrt(1 + 12 * variance) - 1) / 2);
+            boxAlpha = (2 * boxHalf + 1) * (variance - boxHalf * (boxHalf + 1) / 3d) / (2 * ((boxHalf + 1) * (boxHalf + 1) - variance));
+            boxPasses = APPROXIMATION_BOXES;
+            iterations = 0;
+        }
+        else if(mSinglePass && iterations > 1) {
+            if(weights.box) {
+                boxHalf = weights.half;
+                boxPasses = iterations;
+                iterations = 0;
+            }
+            else {
+                weights = getCompositeWeights(weights, radius, iterations);
+                iterations = 1;
+            }
+        }
+
+        Pass pass = mLastPass;
+        if(pass == null || pass.weights != weights || pass.iterations != iterations || pass.boxPasses != boxPasses
+                || pass.boxHalf != boxHalf || pass.boxAlpha != boxAlpha) {
+            pass = new Pass(weights, iterations, boxPasses, boxHalf, boxAlpha);
+            mLastPass = pass;
+        }
+        return pass;
+    }
+
+    @Override
+    void runPass(PixelBuffer pixels, int radius, Object params, Scratch scratch, int cores, int core, int step) {
+        Pass pass = (Pass) params;
+        apply(pixels.getPixels(), pixels.getOffset(), pixels.getWidth(), pixels.getHeight(), pixels.getStride(), pixels.isOpaque(),
+                pass, scratch, cores, core, step);
+    }
+
+
+    /** Returns the fixed point coefficients to use for the passed radius, computing them only if needed */
+    private Weights getWeights(int radius) {
+        Weights weights = mLastWeights;
+        if(weights != null && (!isFilterRadiusDependent() || weights.radius == radius))
+            return weights;
+
+        float[] filter = getFilter(radius);
+        double[] values = new double[filter.length];
+        boolean box = true;
+        for (int i = 0; i < filter.length; i++) {
+            values[i] = filter[i];
+            box = box && filter[i] == filter[0];
+        }
+
+        weights = new Weights(values, radius, box);
+        mLastWeights = weights;
+        return weights;
+    }
+
+    /** Returns the fixed point coefficients of the filter convolved with itself iterations times */
+    private Weights getCompositeWeights(Weights weights, int radius, int iterations) {
+        Weights composite = mLastCompositeWeights;
+        if(composite != null && composite.radius == radius)
+            return composite;
+
+        double[] filter = weights.filter;
+        double[] values = {1};
+        for (int i = 0; i < iterations; i++) {
+            double[] next = new double[values.length + filter.length - 1];
+            for (int j = 0; j < values.length; j++)
+                for (int k = 0; k < filter.length; k++)
+                    next[j + k] += values[j] * filter[k];
+            values = next;
+        }
+
+        //coefficients too small to affect a fixed point sum are removed from the tails
+        int first = 0;
+        double min = 0.5 / (1 << SHIFT);
+        while (first < values.length / 2 && values[first] < min && values[values.length - 1 - first] < min)
+            first++;
+        double[] trimmed = new double[values.length - 2 * first];
+        System.arraycopy(values, first, trimmed, 0, trimmed.length);
+
+        composite = new Weights(trimmed, radius, false);
+        composite.reflectEdges = true;
+        mLastCompositeWeights = composite;
+        return composite;
+    }
+
+
+    private void apply(int[] srcPix, int offset, int w, int h, int stride, boolean opaque, Pass pass, Scratch scratch, int cores, int core, int step) {
+
+        Weights weights = pass.weights;
+        int iterations = pass.iterations;
+        int boxPasses = pass.boxPasses;
+        int half = weights.half;
+        int length = step == 1 ? w : h;
+
+        //channels of the line (row or column) currently blurred, padded by half filter on both sides
+        int[][] line = scratch.intLines(0, length + 2 * half);
+        int[][] tmp = scratch.intLines(1, length + 2 * half);
+
+        //box passes are summed without rounding, so they need floating point lines, padded by the extended box
+        int boxPadding = pass.boxHalf + 1;
+        double[] boxLine = boxPasses > 0 ? scratch.doubles(0, length + 2 * boxPadding) : null;
+        double[] boxTmp = boxPasses > 0 ? scratch.doubles(1, length + 2 * boxPadding) : null;
+
+        //horizontal filtering processes rows, vertical filtering processes columns
+        int minLine = step == 1 ? core * h / cores : core * w / cores;
+        int maxLine = step == 1 ? (core + 1) * h / cores : (core + 1) * w / cores;
+        int pixelStep = step == 1 ? 1 : stride;
+
+        //the alpha channel of opaque pixels is not blurred
+        int firstChannel = opaque ? 1 : 0;
+
+        for (int l = minLine; l < maxLine; l++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+
+            int start = step == 1 ? offset + l * stride : offset + l;
+
+            int[] a = line[0], r = line[1], g = line[2], b = line[3];
+            for (int i = half, end = half + length, index = start; i < end; i++, index += pixelStep) {
+                int pixel = srcPix[index];
+                a[i] = pixel >>> 24;
+                r[i] = (pixel >> 16) & 0xff;
+                g[i] = (pixel >> 8) & 0xff;
+                b[i] = pixel & 0xff;
+            }
+
+            if(boxPasses > 0) {
+                for (int c = firstChannel; c < 4; c++)
+                    boxBlur(line[c], half, boxLine, boxTmp, pass.boxHalf, pass.boxAlpha, length, boxPasses);
+            }
+
+            //repeating iterations times: each line is independent, so it's blurred completely before being stored back
+            for(int iteration = 0; iteration < iterations; iteration++) {
+                for (int c = firstChannel; c < 4; c++) {
+                    if(weights.reflectEdges)
+                        padReflect(line[c], half, length);
+                    else
+                        padEdges(line[c], half, length);
+                    if(weights.symmetric)
+                        convolveSymmetric(line[c], tmp[c], weights.values, half, length);
+                    else
+                        convolve(line[c], tmp[c], weights.values, half, length);
+                }
+                int[][] swap = line;
+                line = tmp;
+                tmp = swap;
+            }
+
+            a = line[0]; r = line[1]; g = line[2]; b = line[3];
+            for (int i = half, end = half + length, index = start; i < end; i++, index += pixelStep)
+                srcPix[index] = (opaque ? 0xff000000 : a[i] << 24) | (r[i] << 16) | (g[i] << 8) | b[i];
+        }
+    }
+
+    /** Fills the padding of the channel with the values on its edges */
+    private static void padEdges(int[] channel, int half, int length) {
+        int first = channel[half];
+        int last = channel[half + length - 1];
+        for (int i = 0; i < half; i++) {
+            channel[i] = first;
+            channel[half + length + i] = last;
+        }
+    }
+
+    /**
+     * Fills the padding of the channel mirroring the values near its edges (the edge value is repeated once).
+     * Repeating a 3 taps symmetric filter with edge padding is the same as applying it once after this padding.
+     */
+    private static void padReflect(int[] channel, int half, int length) {
+        for (int i = 0; i < half; i++) {
+            int mirrored = Math.min(i, length - 1);
+            channel[half - 1 - i] = channel[half + mirrored];
+            channel[half + length + i] = channel[half + length - 1 - mirrored];
+        }
+    }
+
+    /**
+     * Applies a box filter passes times through running sums, rounding only the final result.
+     * The box covers half pixels on each side, plus alpha (from 0 to 1) of the next pixel on each side.
+     * Each pass costs the same, whatever the size of the box.
+     *
+     * @param channel Channel to blur, whose values start at channelStart
+     * @param in Line used by the passes, at least length + 2 * (half + 1) long
+     * @param out Line used by the passes, at least length + 2 * (half + 1) long
+     */
+    private static void boxBlur(int[] channel, int channelStart, double[] in, double[] out, int half, double alpha, int length, int passes) {
+        int padding = half + 1;
+        double scale = 1d / (2 * half + 1 + 2 * alpha);
+        int end = padding + length;
+        for (int i = 0; i < length; i++)
+            in[padding + i] = channel[channelStart + i];
+
+        for (int pass = 0; pass < passes; pass++) {
+            double first = in[padding];
+            double last = in[end - 1];
+            for (int i = 0; i < padding; i++) {
+                in[i] = first;
+                in[end + i] = last;
+            }
+
+            double sum = 0;
+            for (int i = padding - half; i < padding + half; i++)
+                sum += in[i];
+
+            if(alpha == 0) {
+                for (int i = padding; i < end; i++) {
+                    sum += in[i + half];
+                    out[i] = sum * scale;
+                    sum -= in[i - half];
+                }
+            }
+            else {
+                for (int i = padding; i < end; i++) {
+                    sum += in[i + half];
+                    out[i] = (sum + alpha * (in[i - half - 1] + in[i + half + 1])) * scale;
+                    sum -= in[i - half];
+                }
+            }
+
+            double[] swap = in;
+            in = out;
+            out = swap;
+        }
+
+        for (int i = 0; i < length; i++)
+            channel[channelStart + i] = (int) (in[padding + i] + 0.5);
+    }
+
+    /** Applies a symmetric filter, adding the 2 pixels that share a coefficient before multiplying */
+    private static void convolveSymmetric(int[] in, int[] out, int[] weights, int half, int length) {
+        int center = weights[half];
+        for (int i = half, end = half + length; i < end; i++) {
+            int sum = center * in[i];
+            for (int j = 1; j <= half; j++)
+                sum += weights[half + j] * (in[i - j] + in[i + j]);
+            out[i] = (sum + ROUND) >> SHIFT;
+        }
+    }
+
+    /** Applies a generic filter */
+    private static void convolve(int[] in, int[] out, int[] weights, int half, int length) {
+        int filterLength = weights.length;
+        for (int i = half, end = half + length; i < end; i++) {
+            int sum = 0;
+            int first = i - half;
+            for (int j = 0; j < filterLength; j++)
+                sum += weights[j] * in[first + j];
+            out[i] = (sum + ROUND) >> SHIFT;
+        }
+    }
+
+
+    /** Fixed point coefficients of a filter */
+    private static final class Weights {
+        private final double[] filter;
+        private final int[] values;
+        private final int half;
+        private final int radius;
+        private final boolean symmetric;
+        private final boolean box;
+        private final double variance;
+        private boolean reflectEdges;
+
+        Weights(double[] filter, int radius, boolean box) {
+            this.filter = filter;
+            this.radius = radius;
+            this.box = box;
+            this.half = filter.length / 2;
+            this.values = new int[filter.length];
+
+            double filterSum = 0;
+            for (double f : filter)
+                filterSum += f;
+            if(filterSum == 0)
+                filterSum = 1;
+
+            double filterVariance = 0;
+            for (int i = 0; i < filter.length; i++)
+                filterVariance += filter[i] / filterSum * (i - half) * (i - half);
+            this.variance = filterVariance;
+
+            //coefficients are normalized, so that the image doesn't get brighter or darker
+            int sum = 0;
+            for (int i = 0; i < filter.length; i++) {
+                values[i] = (int) Math.round(filter[i] / filterSum * (1 << SHIFT));
+                sum += values[i];
+            }
+            //rounding error goes to the central coefficient, which is the biggest one
+            values[half] += (1 << SHIFT) - sum;
+
+            boolean isSymmetric = filter.length % 2 == 1;
+            for (int i = 1; i <= half && isSymmetric; i++)
+                isSymmetric = values[half - i] == values[half + i];
+            this.symmetric = isSymmetric;
+        }
+    }
+
+
+    /** Parameters of the passes of a blur */
+    private static final class Pass {
+        private final Weights weights;
+        private final int iterations;
+        private final int boxPasses;
+        private final int boxHalf;
+        private final double boxAlpha;
+
+        Pass(Weights weights, int iterations, int boxPasses, int boxHalf, double boxAlpha) {
+            this.weights = weights;
+            this.iterations = iterations;
+            this.boxPasses = boxPasses;
+            this.boxHalf = boxHalf;
+            this.boxAlpha = boxAlpha;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Performs the dual filter (Kawase) blur: the image is repeatedly downsampled to half its size with a
+ * small filter, and then upsampled back with another small filter (see Bjorge, "Bandwidth-Efficient
+ * Rendering", SIGGRAPH 2015). Each level halves the size of the image, so the whole blur costs less
+ * than 3 passes over the original image, while the strength of the blur doubles with each level.
+ * The number of levels is chosen from the radius, so the strength grows in steps, and there is no limit on the radius.
+ *
+ * Filters sample the image between pixels, as done on GPUs through bilinear filtering. Here the
+ * bilinear samples are expanded once into fixed point weights of the pixels around, one set for each
+ * position of the output pixel relative to the input one.
+ */
+
+public final class DualKawaseBlurKernel implements BlurKernel {
+
+    /** Number of fractional bits of the fixed point weights */
+    private static final int SHIFT = 16;
+
+    /** Value added before shifting, to round the result instead of truncating it */
+    private static final int ROUND = 1 << (SHIFT - 1);
+
+    /** Maximum distance of the pixels of a stencil from its base pixel */
+    private static final int STENCIL_SIZE = 2;
+
+    /** Weights of the downsampling filter, the same for all the output pixels */
+    private static final Stencil[] DOWN_STENCILS = {createDownStencil()};
+
+    /** Weights of the upsampling filter, for each position of the output pixel: (x % 2) + 2 * (y % 2) */
+    private static final Stencil[] UP_STENCILS = {createUpStencil(0, 0), createUpStencil(1, 0), createUpStencil(0, 1), createUpStencil(1, 1)};
+
+    @Override
+    public void blur(PixelBuffer pixels, int radius, BlurContext context) throws InterruptedException {
+
+        if(radius <= 0)
+            return;
+
+        int levels = getLevels(radius);
+        ArrayList<PixelBuffer> pyramid = new ArrayList<>(levels + 1);
+        pyramid.add(pixels);
+        int w = pixels.getWidth();
+        int h = pixels.getHeight();
+        ScratchPool pool = context.getScratchPool();
+        try {
+            while (pyramid.size() <= levels && (w > 1 || h > 1)) {
+                w = (w + 1) / 2;
+                h = (h + 1) / 2;
+                pyramid.add(PixelBuffer.wrap(pool.acquire(w * h), w, h));
+            }
+
+            for (int i = 1; i < pyramid.size(); i++)
+                resample(pyramid.get(i - 1), pyramid.get(i), DOWN_STENCILS, false, context);
+            for (int i = pyramid.size() - 1; i > 0; i--)
+                resample(pyramid.get(i), pyramid.get(i - 1), UP_STENCILS, true, context);
+        }
+        finally {
+            for (int i = 1; i < pyramid.size(); i++)
+                pool.release(pyramid.get(i).getPixels());
+        }
+    }
+
+    /**
+     * Returns the number of pyramid levels used to blur with the passed radius.
+     * A blur with n levels is close to a gaussian with sigma 0.9 * 2^n, so levels are chosen to match the sigma
+     * used by GaussianBlurKernel for the same radius, (radius + 1) / 3, as close as possible.
+     */
+    static int getLevels(int radius) {
+        return Math.max(1, (int) Math.round(Math.log((radius + 1) / 2.7) / Math.log(2)));
+    }
+
+    private static void resample(PixelBuffer src, PixelBuffer dst, Stencil[] stencils, boolean up, BlurContext context) throws InterruptedException {
+        int cores = context.getNumTasks();
+        ArrayList<ResampleTask> tasks = new ArrayList<>(cores);
+        for (int i = 0; i < cores; i++)
+            tasks.add(new ResampleTask(src, dst, stencils, up, cores, i));
+        context.invokeAll(tasks);
+    }
+
+
+    private static void apply(PixelBuffer src, PixelBuffer dst, Stencil[] stencils, boolean up, int cores, int core) {
+        int[] srcPix = src.getPixels();
+        int srcOffset = src.getOffset();
+        int srcStride = src.getStride();
+        int maxX = src.getWidth() - 1;
+        int maxY = src.getHeight() - 1;
+
+        int[] dstPix = dst.getPixels();
+        int dstOffset = dst.getOffset();
+        int dstStride = dst.getStride();
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+
+        //offsets of the stencil pixels in the source array, used far from the edges, where no clamping is needed
+        int[][] offsets = new int[stencils.length][];
+        for (int s = 0; s < stencils.length; s++) {
+            offsets[s] = new int[stencils[s].weights.length];
+            for (int i = 0; i < offsets[s].length; i++)
+                offsets[s][i] = stencils[s].dy[i] * srcStride + stencils[s].dx[i];
+        }
+
+        for (int y = core * h / cores, endY = (core + 1) * h / cores; y < endY; y++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            int baseY = up ? y >> 1 : y << 1;
+            int index = dstOffset + y * dstStride;
+            boolean innerRow = baseY - STENCIL_SIZE >= 0 && baseY + STENCIL_SIZE <= maxY;
+
+            for (int x = 0; x < w; x++, index++) {
+                int baseX = up ? x >> 1 : x << 1;
+                int s = up ? (x & 1) + 2 * (y & 1) : 0;
+                int[] weights = stencils[s].weights;
+
+                int a = 0, r = 0, g = 0, b = 0;
+                if(innerRow && baseX - STENCIL_SIZE >= 0 && baseX + STENCIL_SIZE <= maxX) {
+                    int[] offset = offsets[s];
+                    int base = srcOffset + baseY * srcStride + baseX;
+                    for (int i = 0; i < weights.length; i++) {
+                        int pixel = srcPix[base + offset[i]];
+                        int weight = weights[i];
+                        a += weight * (pixel >>> 24);
+                        r += weight * ((pixel >> 16) & 0xff);
+                        g += weight * ((pixel >> 8) & 0xff);
+                        b += weight * (pixel & 0xff);
+                    }
+                }
+                else {
+                    int[] dx = stencils[s].dx, dy = stencils[s].dy;
+                    for (int i = 0; i < weights.length; i++) {
+                        int sx = Math.min(maxX, Math.max(0, baseX + dx[i]));
+                        int sy = Math.min(maxY, Math.max(0, baseY + dy[i]));
+                        int pixel = srcPix[srcOffset + sy * srcStride + sx];
+                        int weight = weights[i];
+                        a += weight * (pixel >>> 24);
+                        r += weight * ((pixel >> 16) & 0xff);
+                        g += weight * ((pixel >> 8) & 0xff);
+                        b += weight * (pixel & 0xff);
+                    }
+                }
+
+                dstPix[index] = ((a + ROUND) >> SHIFT << 24) | ((r + ROUND) >> SHIFT << 16) | ((g + ROUND) >> SHIFT << 8) | ((b + ROUND) >> SHIFT);
+            }
+        }
+    }
+
+
+    /**
+     * Downsampling filter: a bilinear sample at the center of the 2x2 pixels covered by the output pixel
+     * (weight 4) and at the 4 corners of that block (weight 1 each). It expands into a 4x4 filter.
+     */
+    private static Stencil createDownStencil() {
+        double[][] weights = new double[4][4];
+        //pixel coordinates start from baseX - 1: the 2x2 block covered by the output pixel is at 1..2
+        addBilinear(weights, 2, 2, 4);
+        addBilinear(weights, 1, 1, 1);
+        addBilinear(weights, 3, 1, 1);
+        addBilinear(weights, 1, 3, 1);
+        addBilinear(weights, 3, 3, 1);
+        return new Stencil(weights, -1);
+    }
+
+    /**
+     * Upsampling filter: bilinear samples one input pixel away from the center of the output pixel along
+     * the axes (weight 1 each) and half input pixel away along the diagonals (weight 2 each).
+     *
+     * @param parityX Position of the output pixel relative to its input pixel, horizontally (0 or 1)
+     * @param parityY Position of the output pixel relative to its input pixel, vertically (0 or 1)
+     */
+    private static Stencil createUpStencil(int parityX, int parityY) {
+        double[][] weights = new double[5][5];
+        //center of the output pixel, in input coordinates starting from baseX - 2
+        double cx = 2 + 0.25 + 0.5 * parityX;
+        double cy = 2 + 0.25 + 0.5 * parityY;
+        addBilinear(weights, cx - 1, cy, 1);
+        addBilinear(weights, cx + 1, cy, 1);
+        addBilinear(weights, cx, cy - 1, 1);
+        addBilinear(weights, cx, cy + 1, 1);
+        addBilinear(weights, cx - 0.5, cy - 0.5, 2);
+        addBilinear(weights, cx + 0.5, cy - 0.5, 2);
+        addBilinear(weights, cx - 0.5, cy + 0.5, 2);
+        addBilinear(weights, cx + 0.5, cy + 0.5, 2);
+        return new Stencil(weights, -2);
+    }
+
+    /**
+     * Adds the weights of a bilinear sample to the pixels around it.
+     * Coordinates are continuous: pixel i covers [i, i + 1), so its center is at i + 0.5.
+     */
+    private static void addBilinear(double[][] weights, double x, double y, double weight) {
+        double tx = x - 0.5, ty = y - 0.5;
+        int x0 = (int) Math.floor(tx), y0 = (int) Math.floor(ty);
+        double fx = tx - x0, fy = ty - y0;
+        weights[y0][x0] += weight * (1 - fx) * (1 - fy);
+        weights[y0][x0 + 1] += weight * fx * (1 - fy);
+        weights[y0 + 1][x0] += weight * (1 - fx) * fy;
+        weights[y0 + 1][x0 + 1] += weight * fx * fy;
+    }
+
+
+    /** Fixed point weights of the input pixels contributing to an output pixel, with their offsets */
+    private static final class Stencil {
+        private final int[] dx;
+        private final int[] dy;
+        private final int[] weights;
+
+        Stencil(double[][] values, int origin) {
+            double total = 0;
+            int count = 0;
+            for (double[] row : values) {
+                for (double value : row) {
+                    total += value;
+                    count += value > 0 ? 1 : 0;
+                }
+            }
+
+            dx = new int[count];
+            dy = new int[count];
+            weights = new int[count];
+            int sum = 0, biggest = 0;
+            for (int y = 0, i = 0; y < values.length; y++) {
+                for (int x = 0; x < values[y].length; x++) {
+                    if(values[y][x] <= 0)
+                        continue;
+                    dx[i] = x + origin;
+                    dy[i] = y + origin;
+                    weights[i] = (int) Math.round(values[y][x] / total * (1 << SHIFT));
+                    sum += weights[i];
+                    biggest = weights[i] > weights[biggest] ? i : biggest;
+                    i++;
+                }
+            }
+            //rounding error goes to the biggest weight, so that the image doesn't get brighter or darker
+            weights[biggest] += (1 << SHIFT) - sum;
+        }
+    }
+
+
+    private static class ResampleTask implements Callable<Void> {
+        private final PixelBuffer _src;
+        private final PixelBuffer _dst;
+        private final Stencil[] _stencils;
+        private final boolean _up;
+        private final int _totalCores;
+        private final int _coreIndex;
+
+        ResampleTask(PixelBuffer src, PixelBuffer dst, Stencil[] stencils, boolean up, int totalCores, int coreIndex) {
+            _src = src;
+            _dst = dst;
+            _stencils = stencils;
+            _up = up;
+            _totalCores = totalCores;
+            _coreIndex = coreIndex;
+        }
+
+        @Override public Void call() throws Exception {
+            apply(_src, _dst, _stencils, _up, _totalCores, _coreIndex);
+            return null;
+        }
+
+    }
+}
@@ -0,0 +1,14 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the gaussian blur with 3x3 coefficient matrix.
+ * Changing radius will repeat the process radius times.
+ */
+
+public final class Gaussian3x3BlurKernel extends ConvolveBlurKernel {
+
+    @Override
+    float[] getFilter(int radius){
+        return new float[] {0.1968f, 0.6064f, 0.1968f};
+    }
+}
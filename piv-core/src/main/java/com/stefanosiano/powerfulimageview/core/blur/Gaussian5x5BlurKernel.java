@@ -0,0 +1,14 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the gaussian blur with 5x5 coefficient matrix.
+ * Changing radius will repeat the process radius times.
+ */
+
+public final class Gaussian5x5BlurKernel extends ConvolveBlurKernel {
+
+    @Override
+    float[] getFilter(int radius){
+        return new float[] {0.0545f, 0.2442f, 0.4026f, 0.2442f, 0.0545f};
+    }
+}
@@ -0,0 +1,73 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the gaussian blur with any kind of radius.
+ * Increasing radius will change the coefficients used and increase the radius of the blur,
+ * resulting in the image more blurry, but slower.
+ *
+ * Gaussian blurs add up: blurring with sigma s1 and then with sigma s2 equals blurring once with sigma sqrt(s1² + s2²),
+ * so a stronger blur can be reached from a weaker one with a much smaller radius (see getResidualRadius()).
+ */
+
+public final class GaussianBlurKernel extends ConvolveBlurKernel {
+
+    /** Returns the sigma of the filter of the passed radius */
+    public static double getSigma(int radius) {
+        return (radius + 1) / 3d;
+    }
+
+    /** Returns the radius whose filter is the closest to the passed sigma. It's 0 or negative if the sigma is too small for any filter */
+    public static int getRadius(double sigma) {
+        return (int) Math.round(sigma * 3 - 1);
+    }
+
+    /**
+     * Returns the radius of the blur that, applied to an image already blurred with fromSigma, blurs it with toSigma.
+     *
+     * @param fromSigma Sigma of the blur already applied to the image
+     * @param toSigma Sigma of the blur to reach. It must not be lower than fromSigma
+     * @return The radius of the missing blur. It's 0 or negative if the missing blur is too small for any filter
+     */
+    public static int getResidualRadius(double fromSigma, double toSigma) {
+        return getRadius(Math.sqrt(Math.max(0, toSigma * toSigma - fromSigma * fromSigma)));
+    }
+
+    @Override
+    float[] getFilter(int radius) {
+        float[] filter = new float[radius * 2 + 1];
+
+        float sigma = (radius * 2 + 2) / (float) 6;
+        double coeff = 1/Math.sqrt(2 * Math.PI * sigma * sigma);
+        double exponent = -1/(double) (2 * sigma * sigma);
+
+
+        float sum = 0;
+        for(int i = 0; i < filter.length; i++){
+
+            double x = i - radius;
+            float value = (float) (coeff * Math.exp(exponent * x * x));
+
+            filter[i] = value;
+            sum += value;
+        }
+
+        if(sum != 0)
+            sum = 1/sum;
+
+        for(int i = 0; i < filter.length; i++){
+            filter[i] = filter[i] * sum;
+        }
+        return filter;
+    }
+
+    /** The radius changes the filter, so it is applied only once */
+    @Override
+    int getIterations(int radius) {
+        return 1;
+    }
+
+    @Override
+    boolean isFilterRadiusDependent() {
+        return true;
+    }
+}
@@ -0,0 +1,142 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Approximates the gaussian blur with 3 successive box blurs, whose sizes are chosen to match the
+ * standard deviation of the gaussian (see http://blog.ivank.net/fastest-gaussian-blur.html).
+ * Box blurs are performed through running sums, so the cost per pixel doesn't depend on the radius,
+ * and there is no limit on the radius.
+ * The standard deviation for a radius is the same used by GaussianBlurKernel, so they give similar results.
+ */
+
+public final class GaussianFastBlurKernel extends SeparableBlurKernel {
+
+    /** Number of box blurs used to approximate the gaussian */
+    private static final int PASSES = 3;
+
+    /** Last box sizes computed, reused while the radius doesn't change */
+    private volatile Boxes mLastBoxes;
+
+    @Override
+    Object getParams(int radius) {
+        Boxes boxes = mLastBoxes;
+        if(boxes == null || boxes.radius != radius) {
+            boxes = new Boxes(radius, getBoxHalves((radius * 2 + 2) / 6d));
+            mLastBoxes = boxes;
+        }
+        return boxes.halves;
+    }
+
+    @Override
+    void runPass(PixelBuffer pixels, int radius, Object params, Scratch scratch, int cores, int core, int step) {
+        apply(pixels.getPixels(), pixels.getOffset(), pixels.getWidth(), pixels.getHeight(), pixels.getStride(), pixels.isOpaque(), (int[]) params, scratch, cores, core, step);
+    }
+
+    /**
+     * Returns the half sizes of the boxes whose successive application approximates a gaussian with the passed sigma.
+     * Boxes have odd sizes (2 * half + 1), so they are centered on the pixel.
+     */
+    static int[] getBoxHalves(double sigma) {
+        double idealWidth = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if(lowerWidth % 2 == 0)
+            lowerWidth--;
+        int upperWidth = lowerWidth + 2;
+
+        //number of boxes that should use the lower width, so that the total variance is the closest to sigma^2
+        double idealLowerCount = (12 * sigma * sigma - PASSES * lowerWidth * lowerWidth - 4 * PASSES * lowerWidth - 3 * PASSES) / (-4d * lowerWidth - 4);
+        int lowerCount = (int) Math.round(idealLowerCount);
+
+        int[] halves = new int[PASSES];
+        for (int i = 0; i < PASSES; i++)
+            halves[i] = ((i < lowerCount ? lowerWidth : upperWidth) - 1) / 2;
+        return halves;
+    }
+
+
+    private void apply(int[] srcPix, int offset, int w, int h, int stride, boolean opaque, int[] halves, Scratch scratch, int cores, int core, int step) {
+
+        int maxHalf = 0;
+        for (int half : halves)
+            maxHalf = Math.max(maxHalf, half);
+
+        int length = step == 1 ? w : h;
+
+        //channels of the line (row or column) currently blurred, padded by the biggest half box on both sides
+        int[][] line = scratch.intLines(0, length + 2 * maxHalf);
+        int[][] tmp = scratch.intLines(1, length + 2 * maxHalf);
+
+        //horizontal filtering processes rows, vertical filtering processes columns
+        int minLine = step == 1 ? core * h / cores : core * w / cores;
+        int maxLine = step == 1 ? (core + 1) * h / cores : (core + 1) * w / cores;
+        int pixelStep = step == 1 ? 1 : stride;
+
+        //the alpha channel of opaque pixels is not blurred
+        int firstChannel = opaque ? 1 : 0;
+
+        for (int l = minLine; l < maxLine; l++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+
+            int start = step == 1 ? offset + l * stride : offset + l;
+
+            int[] a = line[0], r = line[1], g = line[2], b = line[3];
+            for (int i = maxHalf, end = maxHalf + length, index = start; i < end; i++, index += pixelStep) {
+                int pixel = srcPix[index];
+                a[i] = pixel >>> 24;
+                r[i] = (pixel >> 16) & 0xff;
+                g[i] = (pixel >> 8) & 0xff;
+                b[i] = pixel & 0xff;
+            }
+
+            for (int half : halves) {
+                for (int c = firstChannel; c < 4; c++)
+                    boxBlur(line[c], tmp[c], maxHalf, length, half);
+                int[][] swap = line;
+                line = tmp;
+                tmp = swap;
+            }
+
+            a = line[0]; r = line[1]; g = line[2]; b = line[3];
+            for (int i = maxHalf, end = maxHalf + length, index = start; i < end; i++, index += pixelStep)
+                srcPix[index] = (opaque ? 0xff000000 : a[i] << 24) | (r[i] << 16) | (g[i] << 8) | b[i];
+        }
+    }
+
+    /**
+     * Applies a box blur of size 2 * half + 1 through a running sum, so that its cost doesn't depend on half.
+     * Pixels outside the line are replaced by the ones on the edges. Padding must not be less than half.
+     */
+    private static void boxBlur(int[] in, int[] out, int padding, int length, int half) {
+        int end = padding + length;
+        int first = in[padding];
+        int last = in[end - 1];
+        for (int i = 0; i < padding; i++) {
+            in[i] = first;
+            in[end + i] = last;
+        }
+
+        float scale = 1f / (2 * half + 1);
+
+        int sum = 0;
+        for (int i = padding - half; i < padding + half; i++)
+            sum += in[i];
+
+        for (int i = padding; i < end; i++) {
+            sum += in[i + half];
+            out[i] = (int) (sum * scale + 0.5f);
+            sum -= in[i - half];
+        }
+    }
+
+
+    /** Half sizes of the boxes used for a radius */
+    private static final class Boxes {
+        private final int radius;
+        private final int[] halves;
+
+        Boxes(int radius, int[] halves) {
+            this.radius = radius;
+            this.halves = halves;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.nio.IntBuffer;
+
+/**
+ * Buffer of ARGB pixels (one int per pixel, packed as 0xAARRGGBB) that blur kernels work on.
+ * Pixel (x, y) is stored at index offset + y * stride + x of the backing array.
+ * A buffer can be marked as opaque (see asOpaque()), so that kernels skip the alpha channel.
+ */
+
+public final class PixelBuffer implements PixelSource {
+
+    /** Backing array of the pixels */
+    private final int[] mPixels;
+
+    /** Index of the first pixel (0, 0) in the backing array */
+    private final int mOffset;
+
+    /** Width of the image, in pixels */
+    private final int mWidth;
+
+    /** Height of the image, in pixels */
+    private final int mHeight;
+
+    /** Number of array entries between the start of a row and the start of the next one */
+    private final int mStride;
+
+    /** Buffer the pixels were copied from, if it was not backed by an accessible array */
+    private final IntBuffer mSourceBuffer;
+
+    /** Whether all the pixels are opaque */
+    private final boolean mOpaque;
+
+    private PixelBuffer(int[] pixels, int offset, int width, int height, int stride, IntBuffer sourceBuffer, boolean opaque) {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be greater than 0: " + width + "x" + height);
+        if(stride < width)
+            throw new IllegalArgumentException("Stride (" + stride + ") must be at least the width (" + width + ")");
+        if(offset < 0 || offset + (long) stride * (height - 1) + width > pixels.length)
+            throw new IllegalArgumentException("Pixel array is too small for a " + width + "x" + height + " image with stride " + stride);
+
+        this.mPixels = pixels;
+        this.mOffset = offset;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mStride = stride;
+        this.mSourceBuffer = sourceBuffer;
+        this.mOpaque = opaque;
+    }
+
+    /**
+     * Wraps a tightly packed pixel array (stride equal to width).
+     *
+     * @param pixels Array of ARGB pixels
+     * @param width Width of the image
+     * @param height Height of the image
+     * @return The buffer that uses the passed array
+     */
+    public static PixelBuffer wrap(int[] pixels, int width, int height) {
+        return new PixelBuffer(pixels, 0, width, height, width, null, false);
+    }
+
+    /**
+     * Wraps a pixel array, or a portion of it.
+     *
+     * @param pixels Array of ARGB pixels
+     * @param offset Index of the first pixel (0, 0)
+     * @param width Width of the image
+     * @param height Height of the image
+     * @param stride Number of array entries between the start of two consecutive rows
+     * @return The buffer that uses the passed array
+     */
+    public static PixelBuffer wrap(int[] pixels, int offset, int width, int height, int stride) {
+        return new PixelBuffer(pixels, offset, width, height, stride, null, false);
+    }
+
+    /**
+     * Wraps an IntBuffer, starting from its current position.
+     * If the buffer is backed by an accessible array, the array is used directly.
+     * Otherwise (e.g. direct buffers) pixels are copied into a new array: call {@link #flush()}
+     * after blurring to write them back into the buffer.
+     *
+     * @param buffer Buffer of ARGB pixels
+     * @param width Width of the image
+     * @param height Height of the image
+     * @param stride Number of buffer entries between the start of two consecutive rows
+     * @return The buffer that uses the passed IntBuffer
+     */
+    public static PixelBuffer wrap(IntBuffer buffer, int width, int height, int stride) {
+        if(buffer.hasArray())
+            return new PixelBuffer(buffer.array(), buffer.arrayOffset() + buffer.position(), width, height, stride, null, false);
+
+        int[] pixels = new int[buffer.remaining()];
+        buffer.duplicate().get(pixels);
+        return new PixelBuffer(pixels, 0, width, height, stride, buffer, false);
+    }
+
+    /**
+     * Writes the pixels back into the IntBuffer this object was created from, if they were copied.
+     * It does nothing if the pixels are already shared with the original array or buffer.
+     */
+    public void flush() {
+        if(mSourceBuffer != null)
+            mSourceBuffer.duplicate().put(mPixels);
+    }
+
+    /**
+     * Returns a buffer over the same pixels, marked as opaque: the alpha of all the pixels must be 255 (e.g. the pixels
+     * of a bitmap without alpha). Kernels blur only the color channels of opaque buffers, and set the alpha to 255.
+     */
+    public PixelBuffer asOpaque() {
+        return mOpaque ? this : new PixelBuffer(mPixels, mOffset, mWidth, mHeight, mStride, mSourceBuffer, true);
+    }
+
+    /** Returns whether the buffer is marked as opaque, so that kernels skip the alpha channel */
+    public boolean isOpaque() {
+        return mOpaque;
+    }
+
+    /** Returns the backing array of the pixels */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /** Returns the index of the first pixel (0, 0) in the backing array */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /** Returns the width of the image */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** Returns the height of the image */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Returns the number of array entries between the start of two consecutive rows */
+    public int getStride() {
+        return mStride;
+    }
+
+    @Override
+    public void readRows(int y, int rows, int[] dst) {
+        for (int i = 0; i < rows; i++)
+            System.arraycopy(mPixels, mOffset + (y + i) * mStride, dst, i * mWidth, mWidth);
+    }
+}
@@ -0,0 +1,24 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Source of ARGB pixels (packed as 0xAARRGGBB) read a few rows at a time, e.g. an image too big to be copied
+ * into an array at once. Rows may be read by several threads at the same time.
+ */
+
+public interface PixelSource {
+
+    /** Returns the width of the image */
+    int getWidth();
+
+    /** Returns the height of the image */
+    int getHeight();
+
+    /**
+     * Reads consecutive rows of the image.
+     *
+     * @param y Index of the first row to read
+     * @param rows Number of rows to read
+     * @param dst Array the rows are written into, from its start and without gaps (stride equal to the width)
+     */
+    void readRows(int y, int rows, int[] dst);
+}
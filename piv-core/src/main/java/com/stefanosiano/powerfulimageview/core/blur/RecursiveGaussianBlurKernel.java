@@ -0,0 +1,182 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Performs the gaussian blur through the recursive (IIR) filter of Young and van Vliet
+ * ("Recursive implementation of the Gaussian filter", Signal Processing 44, 1995).
+ * Every line (row or column) is filtered by a causal pass followed by an anti-causal one: each pass
+ * uses only 3 previous outputs, so the cost per pixel doesn't depend on the radius, and there is no limit on the radius.
+ * The standard deviation for a radius is the same used by GaussianBlurKernel, so they give similar results.
+ */
+
+public final class RecursiveGaussianBlurKernel extends SeparableBlurKernel {
+
+    /** Last coefficients computed, reused while the radius doesn't change */
+    private volatile Coefficients mLastCoefficients;
+
+    @Override
+    Object getParams(int radius) {
+        return getCoefficients(radius);
+    }
+
+    @Override
+    void runPass(PixelBuffer pixels, int radius, Object params, Scratch scratch, int cores, int core, int step) {
+        apply(pixels.getPixels(), pixels.getOffset(), pixels.getWidth(), pixels.getHeight(), pixels.getStride(), pixels.isOpaque(), (Coefficients) params, scratch, cores, core, step);
+    }
+
+    /** Returns the coefficients of the filter for the passed radius, computing them only if needed */
+    private Coefficients getCoefficients(int radius) {
+        Coefficients coefficients = mLastCoefficients;
+        if(coefficients != null && coefficients.radius == radius)
+            return coefficients;
+
+        coefficients = new Coefficients(radius, (radius * 2 + 2) / 6d);
+        mLastCoefficients = coefficients;
+        return coefficients;
+    }
+
+
+    private void apply(int[] srcPix, int offset, int w, int h, int stride, boolean opaque, Coefficients coefficients, Scratch scratch, int cores, int core, int step) {
+
+        int length = step == 1 ? w : h;
+
+        //channels of the line (row or column) currently blurred
+        float[][] line = scratch.floatLines(0, length);
+
+        //horizontal filtering processes rows, vertical filtering processes columns
+        int minLine = step == 1 ? core * h / cores : core * w / cores;
+        int maxLine = step == 1 ? (core + 1) * h / cores : (core + 1) * w / cores;
+        int pixelStep = step == 1 ? 1 : stride;
+
+        for (int l = minLine; l < maxLine; l++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+
+            int start = step == 1 ? offset + l * stride : offset + l;
+
+            float[] a = line[0], r = line[1], g = line[2], b = line[3];
+            for (int i = 0, index = start; i < length; i++, index += pixelStep) {
+                int pixel = srcPix[index];
+                a[i] = pixel >>> 24;
+                r[i] = (pixel >> 16) & 0xff;
+                g[i] = (pixel >> 8) & 0xff;
+                b[i] = pixel & 0xff;
+            }
+
+            //the alpha channel of opaque pixels is not blurred
+            for (int c = opaque ? 1 : 0; c < 4; c++)
+                filter(line[c], length, coefficients);
+
+            for (int i = 0, index = start; i < length; i++, index += pixelStep)
+                srcPix[index] = (opaque ? 0xff000000 : clamp(a[i]) << 24) | (clamp(r[i]) << 16) | (clamp(g[i]) << 8) | clamp(b[i]);
+        }
+    }
+
+    /**
+     * Applies the causal and then the anti-causal pass to the channel, in place.
+     * Values before and after the line are considered the same as the ones on the edges. Before the line this means
+     * the previous outputs are the edge value itself (the gain of the filter is 1), while the anti-causal pass
+     * starts from the exact outputs of the line continued to infinity, obtained from the state of the causal pass
+     * (see Triggs and Sdika, "Boundary conditions for Young-van Vliet recursive filtering", 2006).
+     */
+    private static void filter(float[] channel, int length, Coefficients coefficients) {
+        float gain = coefficients.gain;
+        float c1 = coefficients.c1, c2 = coefficients.c2, c3 = coefficients.c3;
+        float[] m = coefficients.boundary;
+        float last = channel[length - 1];
+
+        float prev1 = channel[0], prev2 = prev1, prev3 = prev1;
+        for (int i = 0; i < length; i++) {
+            float value = gain * channel[i] + c1 * prev1 + c2 * prev2 + c3 * prev3;
+            channel[i] = value;
+            prev3 = prev2;
+            prev2 = prev1;
+            prev1 = value;
+        }
+
+        float d1 = prev1 - last, d2 = prev2 - last, d3 = prev3 - last;
+        prev1 = last + m[0] * d1 + m[1] * d2 + m[2] * d3;
+        prev2 = last + m[3] * d1 + m[4] * d2 + m[5] * d3;
+        prev3 = last + m[6] * d1 + m[7] * d2 + m[8] * d3;
+        for (int i = length - 1; i >= 0; i--) {
+            float value = gain * channel[i] + c1 * prev1 + c2 * prev2 + c3 * prev3;
+            channel[i] = value;
+            prev3 = prev2;
+            prev2 = prev1;
+            prev1 = value;
+        }
+    }
+
+    /** Rounds the value into a channel value, between 0 and 255 */
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : rounded > 255 ? 255 : rounded;
+    }
+
+
+    /** Coefficients of the recursive filter, normalized by b0 */
+    private static final class Coefficients {
+        private final int radius;
+        private final float gain;
+        private final float c1;
+        private final float c2;
+        private final float c3;
+
+        /**
+         * Row major 3x3 matrix giving the first 3 outputs after the line of the anti-causal pass, from the last
+         * 3 outputs of the causal pass (both as differences from the last value of the line)
+         */
+        private final float[] boundary;
+
+        Coefficients(int radius, double sigma) {
+            this.radius = radius;
+
+            double q = sigma >= 2.5 ? 0.98711 * sigma - 0.96330 : 3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * sigma);
+            double q2 = q * q;
+            double q3 = q2 * q;
+            double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+            double b1 = 2.44413 * q + 2.85619 * q2 + 1.26661 * q3;
+            double b2 = -(1.4281 * q2 + 1.26661 * q3);
+            double b3 = 0.422205 * q3;
+
+            this.c1 = (float) (b1 / b0);
+            this.c2 = (float) (b2 / b0);
+            this.c3 = (float) (b3 / b0);
+            //the gain makes the coefficients sum to 1, so that the image doesn't get brighter or darker
+            this.gain = 1 - c1 - c2 - c3;
+            this.boundary = getBoundary(b1 / b0, b2 / b0, b3 / b0, 1 - (b1 + b2 + b3) / b0, sigma);
+        }
+
+        /**
+         * Computes the boundary matrix continuing the causal pass after the line, where the signal is constant,
+         * and running the anti-causal pass back from where the responses vanished.
+         * Each column is the response to a unit difference in one of the last 3 outputs of the causal pass.
+         */
+        private static float[] getBoundary(double c1, double c2, double c3, double gain, double sigma) {
+            //responses decay faster than exp(-n / sigma)
+            int extension = (int) Math.ceil(20 * sigma) + 20;
+            float[] boundary = new float[9];
+            double[] causal = new double[extension + 3];
+            double[] antiCausal = new double[extension + 3];
+
+            for (int j = 0; j < 3; j++) {
+                //the 3 outputs before the extension: causal[2] is the last output of the line
+                causal[0] = j == 2 ? 1 : 0;
+                causal[1] = j == 1 ? 1 : 0;
+                causal[2] = j == 0 ? 1 : 0;
+                for (int i = 3; i < extension + 3; i++)
+                    causal[i] = c1 * causal[i - 1] + c2 * causal[i - 2] + c3 * causal[i - 3];
+
+                for (int i = extension + 2; i >= 3; i--) {
+                    double next1 = i + 1 < extension + 3 ? antiCausal[i + 1] : 0;
+                    double next2 = i + 2 < extension + 3 ? antiCausal[i + 2] : 0;
+                    double next3 = i + 3 < extension + 3 ? antiCausal[i + 3] : 0;
+                    antiCausal[i] = gain * causal[i] + c1 * next1 + c2 * next2 + c3 * next3;
+                }
+
+                for (int i = 0; i < 3; i++)
+                    boundary[i * 3 + j] = (float) antiCausal[3 + i];
+            }
+            return boundary;
+        }
+    }
+}
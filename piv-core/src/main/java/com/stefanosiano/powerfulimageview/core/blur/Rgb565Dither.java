@@ -0,0 +1,51 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Ordered (Bayer) dithering of pixels that will be stored as RGB_565, with 5 bits for red and blue and 6 for green.
+ * A blur leaves wide, smooth gradients, which 32 or 64 levels per channel turn into visible bands: dithering
+ * rounds each pixel up or down by a 4x4 pattern, so that the average of an area keeps the original color.
+ * Each channel is replaced by the 8 bit value of its 565 level, so the conversion to 565 keeps it exactly,
+ * whether it truncates or rounds. Alpha is set to opaque, as RGB_565 has no alpha.
+ */
+
+public final class Rgb565Dither {
+
+    /** 4x4 Bayer matrix, with thresholds from 0 to 15 */
+    private static final int[] BAYER = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5
+    };
+
+    private Rgb565Dither() {}
+
+    /**
+     * Dithers the pixels in place.
+     * The pattern is aligned to the whole image, so that a part of it dithered on its own matches the rest.
+     *
+     * @param pixels Pixels to dither
+     * @param x0 Horizontal position of the pixels in the image they are part of (0 if they are the whole image)
+     * @param y0 Vertical position of the pixels in the image they are part of (0 if they are the whole image)
+     */
+    public static void dither(PixelBuffer pixels, int x0, int y0) {
+        int[] pix = pixels.getPixels();
+        int w = pixels.getWidth();
+        int h = pixels.getHeight();
+        int stride = pixels.getStride();
+
+        for (int y = 0; y < h; y++) {
+            int i = pixels.getOffset() + y * stride;
+            int row = ((y + y0) & 3) << 2;
+            for (int x = 0; x < w; x++, i++) {
+                //threshold in [8, 248], so that levels are rounded to the nearest one on average
+                int d = (BAYER[row + ((x + x0) & 3)] << 4) + 8;
+                int p = pix[i];
+                int r = (((p >> 16) & 0xff) * 31 + d) / 255;
+                int g = (((p >> 8) & 0xff) * 63 + d) / 255;
+                int b = ((p & 0xff) * 31 + d) / 255;
+                pix[i] = 0xff000000 | ((r << 3 | r >> 2) << 16) | ((g << 2 | g >> 4) << 8) | (b << 3 | b >> 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Scratch buffers of a single thread, reused by all the blur tasks it runs.
+ * Each kind of buffer has a few slots, so that a task can use several buffers at once.
+ * Buffers only grow (to the next power of 2), so they can be longer than requested.
+ */
+
+final class Scratch {
+
+    /** Number of buffers of each kind */
+    private static final int SLOTS = 4;
+
+    /** Number of channels of a pixel */
+    private static final int CHANNELS = 4;
+
+    private final int[][] mInts = new int[SLOTS][];
+    private final double[][] mDoubles = new double[SLOTS][];
+    private final int[][][] mIntLines = new int[SLOTS][CHANNELS][];
+    private final float[][][] mFloatLines = new float[SLOTS][CHANNELS][];
+
+    /** Generation of the pool when the buffers were allocated */
+    private int mGeneration;
+
+    /** Drops all buffers if the pool was cleared since they were allocated */
+    void checkGeneration(int generation) {
+        if(generation == mGeneration)
+            return;
+        mGeneration = generation;
+        for (int i = 0; i < SLOTS; i++) {
+            mInts[i] = null;
+            mDoubles[i] = null;
+            for (int c = 0; c < CHANNELS; c++) {
+                mIntLines[i][c] = null;
+                mFloatLines[i][c] = null;
+            }
+        }
+    }
+
+    /** Returns an int buffer of at least the passed length */
+    int[] ints(int slot, int length) {
+        if(mInts[slot] == null || mInts[slot].length < length)
+            mInts[slot] = new int[grow(length)];
+        return mInts[slot];
+    }
+
+    /** Returns a double buffer of at least the passed length */
+    double[] doubles(int slot, int length) {
+        if(mDoubles[slot] == null || mDoubles[slot].length < length)
+            mDoubles[slot] = new double[grow(length)];
+        return mDoubles[slot];
+    }
+
+    /** Returns an int buffer for each channel of a pixel, each of at least the passed length */
+    int[][] intLines(int slot, int length) {
+        int[][] lines = mIntLines[slot];
+        for (int c = 0; c < CHANNELS; c++) {
+            if(lines[c] == null || lines[c].length < length)
+                lines[c] = new int[grow(length)];
+        }
+        return lines;
+    }
+
+    /** Returns a float buffer for each channel of a pixel, each of at least the passed length */
+    float[][] floatLines(int slot, int length) {
+        float[][] lines = mFloatLines[slot];
+        for (int c = 0; c < CHANNELS; c++) {
+            if(lines[c] == null || lines[c].length < length)
+                lines[c] = new float[grow(length)];
+        }
+        return lines;
+    }
+
+    /** Returns the power of 2 not smaller than the length, so that buffers are reallocated only a few times */
+    private static int grow(int length) {
+        int size = Integer.highestOneBit(Math.max(1, length));
+        return size == length ? length : size << 1;
+    }
+}
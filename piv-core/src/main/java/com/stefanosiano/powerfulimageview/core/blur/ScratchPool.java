@@ -0,0 +1,148 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+/**
+ * Pool of buffers reused across blurs, so that repeated blurs of images of the same size don't allocate memory.
+ *
+ * Image sized int arrays are acquired and released explicitly. They are grouped into size classes (4 classes
+ * for each power of 2), so an acquired array can be up to 25% longer than requested: always use the requested
+ * length, not the length of the array. Released arrays are retained up to a maximum number of bytes.
+ *
+ * Line sized buffers used inside blur tasks are kept by each thread instead (see getScratch()), so that tasks
+ * never contend for them. They are released when the thread dies, or dropped on next use after clear().
+ */
+
+public final class ScratchPool {
+
+    /** Default maximum number of bytes retained by released arrays */
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 16 * 1024 * 1024;
+
+    /** Minimum length of the pooled arrays: smaller requests use this size */
+    private static final int MIN_LENGTH = 64;
+
+    /** Number of size classes: 4 for each power of 2 */
+    private static final int CLASSES = 32 * 4;
+
+    /** Maximum number of released arrays kept for each size class */
+    private static final int MAX_ARRAYS_PER_CLASS = 4;
+
+    /** Released arrays, as a stack for each size class */
+    private final int[][][] mArrays = new int[CLASSES][MAX_ARRAYS_PER_CLASS][];
+
+    /** Number of released arrays for each size class */
+    private final int[] mCounts = new int[CLASSES];
+
+    /** Maximum number of bytes retained by released arrays */
+    private final long mMaxRetainedBytes;
+
+    /** Number of bytes currently retained by released arrays */
+    private long mRetainedBytes;
+
+    /** Incremented on clear(), so that threads drop their scratch buffers on next use */
+    private volatile int mGeneration;
+
+    /** Scratch buffers of each thread */
+    private final ThreadLocal<Scratch> mScratch = new ThreadLocal<Scratch>() {
+        @Override protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /** Creates a pool that retains up to DEFAULT_MAX_RETAINED_BYTES */
+    public ScratchPool() {
+        this(DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * Creates a pool of buffers.
+     *
+     * @param maxRetainedBytes Maximum number of bytes retained by released arrays. Arrays released beyond it are left to the garbage collector
+     */
+    public ScratchPool(long maxRetainedBytes) {
+        this.mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Returns an array of at least the passed length, reusing a released one if possible.
+     * Its content is undefined.
+     *
+     * @param length Minimum length of the array
+     */
+    public int[] acquire(int length) {
+        int sizeClass = getSizeClass(length);
+        synchronized (this) {
+            int count = mCounts[sizeClass];
+            if(count > 0) {
+                int[] array = mArrays[sizeClass][count - 1];
+                mArrays[sizeClass][count - 1] = null;
+                mCounts[sizeClass] = count - 1;
+                mRetainedBytes -= 4L * array.length;
+                return array;
+            }
+        }
+        return new int[getClassLength(sizeClass)];
+    }
+
+    /**
+     * Gives back an array obtained through acquire(), so that it can be reused.
+     * The array must not be used anymore by the caller.
+     *
+     * @param array Array to release. Arrays not obtained through acquire() are ignored
+     */
+    public void release(int[] array) {
+        if(array == null || array.length < MIN_LENGTH)
+            return;
+        int sizeClass = getSizeClass(array.length);
+        if(getClassLength(sizeClass) != array.length)
+            return;
+
+        synchronized (this) {
+            int count = mCounts[sizeClass];
+            if(count == MAX_ARRAYS_PER_CLASS || mRetainedBytes + 4L * array.length > mMaxRetainedBytes)
+                return;
+            mArrays[sizeClass][count] = array;
+            mCounts[sizeClass] = count + 1;
+            mRetainedBytes += 4L * array.length;
+        }
+    }
+
+    /** Releases all retained arrays, and makes all threads drop their scratch buffers on next use */
+    public synchronized void clear() {
+        for (int i = 0; i < CLASSES; i++) {
+            for (int j = 0; j < mCounts[i]; j++)
+                mArrays[i][j] = null;
+            mCounts[i] = 0;
+        }
+        mRetainedBytes = 0;
+        mGeneration++;
+    }
+
+    /** Returns the number of bytes currently retained by released arrays */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /** Returns the scratch buffers of the calling thread */
+    Scratch getScratch() {
+        Scratch scratch = mScratch.get();
+        scratch.checkGeneration(mGeneration);
+        return scratch;
+    }
+
+
+    /** Returns the size class of the passed length */
+    private static int getSizeClass(int length) {
+        if(length < MIN_LENGTH)
+            length = MIN_LENGTH;
+        //(length - 1) is in [2^k, 2^(k+1)): the 2 bits after the highest one select the class inside that range
+        int k = 31 - Integer.numberOfLeadingZeros(length - 1);
+        int sub = ((length - 1) >> (k - 2)) & 3;
+        return k * 4 + sub;
+    }
+
+    /** Returns the length of the arrays of the passed size class */
+    private static int getClassLength(int sizeClass) {
+        int k = sizeClass / 4;
+        int sub = sizeClass % 4;
+        return (4 + sub + 1) << (k - 2);
+    }
+}
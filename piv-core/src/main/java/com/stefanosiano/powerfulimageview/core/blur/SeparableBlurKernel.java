@@ -0,0 +1,317 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base class for kernels that blur the image with a horizontal pass followed by a vertical one.
+ *
+ * The vertical pass walks the pixels with a stride of a whole row, so on wide images almost every read is a
+ * cache miss, and threads working on neighbouring columns share cache lines. When transposeVertical is enabled,
+ * the image is transposed (in cache sized blocks) into a scratch buffer after the horizontal pass, then
+ * the horizontal pass is run again on it, and the result is transposed back.
+ *
+ * An image can be downsampled and blurred at once (see blur(PixelSource, ...)): the downsampling is fused with the
+ * horizontal pass, so the rows are blurred as soon as they are averaged, while still in cache.
+ */
+
+public abstract class SeparableBlurKernel implements BlurKernel {
+
+    /** Size of the square blocks the image is transposed by: 2 blocks of 32x32 pixels take 8 KB */
+    private static final int BLOCK_SIZE = 32;
+
+    /** Maximum number of rows downsampled before blurring them horizontally, so that they are still in cache */
+    private static final int CHUNK_ROWS = 8;
+
+    /** Whether the vertical pass is performed as a horizontal pass over the transposed image */
+    private volatile boolean mTransposeVertical;
+
+    /** Tasks of the last blur, reused by the next one */
+    private final AtomicReference<PassTasks> mTasks = new AtomicReference<>();
+
+    /** Tracer of the passes. Nullable */
+    private volatile BlurTracer mTracer;
+
+    /** Returns whether the vertical pass is performed as a horizontal pass over the transposed image */
+    public boolean isTransposeVertical() {
+        return mTransposeVertical;
+    }
+
+    /**
+     * Sets whether the vertical pass should be performed as a horizontal pass over the transposed image.
+     * The result is the same, but the image is read sequentially, at the cost of an additional buffer and
+     * 2 transpositions: whether it's faster depends on the image size and on the caches of the device.
+     */
+    public void setTransposeVertical(boolean transposeVertical) {
+        this.mTransposeVertical = transposeVertical;
+    }
+
+    /** Returns the tracer of the passes, or null if they are not traced */
+    public BlurTracer getTracer() {
+        return mTracer;
+    }
+
+    /** Sets the tracer receiving the horizontal and the vertical pass of every blur. If null, passes are not traced */
+    public void setTracer(BlurTracer tracer) {
+        this.mTracer = tracer;
+    }
+
+    @Override
+    public void blur(PixelBuffer pixels, int radius, BlurContext context) throws InterruptedException {
+
+        if(radius <= 0)
+            return;
+
+        runPasses(null, pixels, radius, getParams(radius), context);
+    }
+
+    /**
+     * Downsamples the source into the pixels by area averaging, and blurs them. Each pixel is the average of all
+     * the source pixels it covers, so no detail of the source is skipped, whatever the ratio between the sizes.
+     * The downsampling is fused with the horizontal pass: each task averages a few rows and blurs them right away,
+     * so the source is read only once and no intermediate image is created. Traced passes include it in the horizontal one.
+     *
+     * @param source Image to downsample. It must not be smaller than the pixels
+     * @param pixels Pixels the source is downsampled into, and then blurred
+     * @param radius Radius of the blur. If it's 0 or negative, the source is only downsampled
+     * @param context Context providing the executor, the number of threads and the buffers to use
+     * @throws InterruptedException If the thread is interrupted while blurring. Pixels are left in an undefined state
+     * @throws IllegalArgumentException If the source is smaller than the pixels, or too big to be downsampled to their size
+     */
+    public void blur(PixelSource source, PixelBuffer pixels, int radius, BlurContext context) throws InterruptedException {
+        AreaDownsampler.check(source, pixels);
+        runPasses(source, pixels, radius, radius > 0 ? getParams(radius) : null, context);
+    }
+
+    /**
+     * Returns the parameters of the passes with the passed radius, passed to runPass(). Called only with positive radii.
+     *
+     * @param radius Radius of the blur
+     */
+    abstract Object getParams(int radius);
+
+    /**
+     * Performs a part of a pass of the blur.
+     *
+     * @param pixels Pixels to blur
+     * @param radius Radius of the blur
+     * @param params Parameters of the pass computed by the kernel, as passed to runPasses()
+     * @param scratch Scratch buffers of the calling thread
+     * @param cores Number of tasks the pass is split into
+     * @param core Index of the task
+     * @param step 1 for the horizontal pass, 2 for the vertical one
+     */
+    abstract void runPass(PixelBuffer pixels, int radius, Object params, Scratch scratch, int cores, int core, int step);
+
+    /**
+     * Runs the horizontal and the vertical pass over the pixels, splitting each of them into a task for each thread.
+     * Tasks and buffers are reused across blurs, so that repeated blurs don't allocate memory.
+     *
+     * @param source Image downsampled into the pixels during the horizontal pass. If null, the pixels are blurred as they are
+     * @param pixels Pixels to blur
+     * @param radius Radius of the blur. If it's 0 or negative, the source is only downsampled
+     * @param params Parameters of the passes, passed to runPass()
+     * @param context Context providing the executor, the number of threads and the buffers to use
+     * @throws InterruptedException If the thread is interrupted while blurring
+     */
+    private void runPasses(PixelSource source, PixelBuffer pixels, int radius, Object params, BlurContext context) throws InterruptedException {
+        int cores = context.getNumTasks();
+        ScratchPool pool = context.getScratchPool();
+
+        //tasks are taken, so that a concurrent blur on the same kernel creates its own ones
+        PassTasks tasks = mTasks.getAndSet(null);
+        if(tasks == null || tasks.size() != cores)
+            tasks = new PassTasks(cores);
+
+        BlurTracer tracer = mTracer;
+        try {
+            long start = beginPass(tracer, false);
+            try {
+                context.invokeAll(tasks.set(source, pixels, null, radius, params, pool, source != null ? 3 : 1));
+            }
+            finally {
+                endPass(tracer, false, start);
+            }
+
+            if(radius <= 0)
+                return;
+
+            start = beginPass(tracer, true);
+            try {
+                runVerticalPass(pixels, radius, params, context, tasks);
+            }
+            finally {
+                endPass(tracer, true, start);
+            }
+        }
+        finally {
+            tasks.set(null, null, null, 0, null, null, 0);
+            mTasks.set(tasks);
+        }
+    }
+
+    /** Runs the vertical pass over the pixels, as a horizontal pass over the transposed image if enabled */
+    private void runVerticalPass(PixelBuffer pixels, int radius, Object params, BlurContext context, PassTasks tasks) throws InterruptedException {
+        ScratchPool pool = context.getScratchPool();
+        if(!mTransposeVertical) {
+            context.invokeAll(tasks.set(null, pixels, null, radius, params, pool, 2));
+            return;
+        }
+
+        int w = pixels.getWidth();
+        int h = pixels.getHeight();
+        int[] transposedPix = pool.acquire(w * h);
+        try {
+            PixelBuffer transposed = tasks.wrap(transposedPix, h, w, pixels.isOpaque());
+            context.invokeAll(tasks.set(null, pixels, transposed, radius, params, pool, 0));
+            context.invokeAll(tasks.set(null, transposed, null, radius, params, pool, 1));
+            context.invokeAll(tasks.set(null, transposed, pixels, radius, params, pool, 0));
+        }
+        finally {
+            pool.release(transposedPix);
+        }
+    }
+
+    /**
+     * Downsamples a range of rows of the source into the pixels, blurring them horizontally a few rows at a time.
+     * The range is the one the horizontal pass would blur, and it's split into chunks the same way the pass splits
+     * rows among tasks (core * h / cores), so that the pass blurs exactly the rows of each chunk.
+     */
+    private void downsampleAndRunPass(PixelSource source, PixelBuffer pixels, int radius, Object params, Scratch scratch, int cores, int core) {
+        int h = pixels.getHeight();
+        int chunksPerTask = Math.max(1, (h + cores - 1) / cores / CHUNK_ROWS);
+        int chunks = cores * chunksPerTask;
+
+        for (int chunk = core * chunksPerTask, end = chunk + chunksPerTask; chunk < end; chunk++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            AreaDownsampler.downsample(source, pixels, chunk * h / chunks, (chunk + 1) * h / chunks, scratch);
+            if(radius > 0)
+                runPass(pixels, radius, params, scratch, chunks, chunk, 1);
+        }
+    }
+
+    /** Notifies the tracer, if any, that a pass starts, and returns its start time */
+    private static long beginPass(BlurTracer tracer, boolean vertical) {
+        if(tracer == null)
+            return 0;
+        tracer.onPassStarted(vertical);
+        return System.nanoTime();
+    }
+
+    /** Notifies the tracer, if any, that a pass started at the passed time ended */
+    private static void endPass(BlurTracer tracer, boolean vertical, long start) {
+        if(tracer != null)
+            tracer.onPassEnded(vertical, System.nanoTime() - start);
+    }
+
+    /**
+     * Transposes a range of the source columns, which are the destination rows: each thread writes
+     * its own rows, so threads never share cache lines of the destination.
+     */
+    private static void transpose(PixelBuffer src, PixelBuffer dst, int cores, int core) {
+        int[] srcPix = src.getPixels();
+        int srcOffset = src.getOffset();
+        int srcStride = src.getStride();
+        int[] dstPix = dst.getPixels();
+        int dstOffset = dst.getOffset();
+        int dstStride = dst.getStride();
+        int w = src.getWidth();
+        int h = src.getHeight();
+
+        //ranges are aligned to blocks
+        int blocks = (w + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int minX = core * blocks / cores * BLOCK_SIZE;
+        int maxX = Math.min(w, (core + 1) * blocks / cores * BLOCK_SIZE);
+
+        for (int blockX = minX; blockX < maxX; blockX += BLOCK_SIZE) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            int endX = Math.min(maxX, blockX + BLOCK_SIZE);
+            for (int blockY = 0; blockY < h; blockY += BLOCK_SIZE) {
+                int endY = Math.min(h, blockY + BLOCK_SIZE);
+                for (int x = blockX; x < endX; x++) {
+                    int dstIndex = dstOffset + x * dstStride + blockY;
+                    int srcIndex = srcOffset + blockY * srcStride + x;
+                    for (int y = blockY; y < endY; y++, dstIndex++, srcIndex += srcStride)
+                        dstPix[dstIndex] = srcPix[srcIndex];
+                }
+            }
+        }
+    }
+
+
+    /** Tasks performing a pass, one for each thread, reused for all the passes */
+    private final class PassTasks {
+
+        /** Tasks, one for each thread */
+        private final ArrayList<PassTask> mTaskList;
+
+        /** Buffer of the last transposed image, reused while its array and size don't change */
+        private PixelBuffer mTransposed;
+
+        PassTasks(int cores) {
+            mTaskList = new ArrayList<>(cores);
+            for (int i = 0; i < cores; i++)
+                mTaskList.add(new PassTask(cores, i));
+        }
+
+        /** Returns the number of tasks */
+        int size() {
+            return mTaskList.size();
+        }
+
+        /** Sets the parameters of the next pass into all the tasks, and returns them */
+        List<PassTask> set(PixelSource source, PixelBuffer pixels, PixelBuffer target, int radius, Object params, ScratchPool pool, int step) {
+            for (int i = 0; i < mTaskList.size(); i++) {
+                PassTask task = mTaskList.get(i);
+                task._source = source;
+                task._pixels = pixels;
+                task._target = target;
+                task._radius = radius;
+                task._params = params;
+                task._pool = pool;
+                task._round = step;
+            }
+            return mTaskList;
+        }
+
+        /** Returns a buffer of the passed size over the array, reusing the last one if possible */
+        PixelBuffer wrap(int[] pixels, int w, int h, boolean opaque) {
+            if(mTransposed == null || mTransposed.getPixels() != pixels || mTransposed.getWidth() != w || mTransposed.getHeight() != h || mTransposed.isOpaque() != opaque)
+                mTransposed = opaque ? PixelBuffer.wrap(pixels, w, h).asOpaque() : PixelBuffer.wrap(pixels, w, h);
+            return mTransposed;
+        }
+    }
+
+    private final class PassTask implements Callable<Void> {
+        private final int _totalCores;
+        private final int _coreIndex;
+        private PixelSource _source;
+        private PixelBuffer _pixels;
+        private PixelBuffer _target;
+        private int _radius;
+        private Object _params;
+        private ScratchPool _pool;
+        private int _round;
+
+        PassTask(int totalCores, int coreIndex) {
+            _totalCores = totalCores;
+            _coreIndex = coreIndex;
+        }
+
+        @Override public Void call() throws Exception {
+            //round 0 transposes the pixels into the target, round 3 downsamples the source into them before the horizontal pass
+            if(_round == 0)
+                transpose(_pixels, _target, _totalCores, _coreIndex);
+            else if(_round == 3)
+                downsampleAndRunPass(_source, _pixels, _radius, _params, _pool.getScratch(), _totalCores, _coreIndex);
+            else
+                runPass(_pixels, _radius, _params, _pool.getScratch(), _totalCores, _coreIndex, _round);
+            return null;
+        }
+
+    }
+}
@@ -0,0 +1,228 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Summed area table (integral image) of an ARGB image: entry (x, y) contains the sums of the channels
+ * of all the pixels above and to the left of pixel (x, y).
+ * It's built once in linear time, and then a box blur of any radius costs the same: 4 lookups per channel and pixel.
+ * Near the edges the box is clipped to the image, so each pixel is the average of the pixels of the box inside the image.
+ *
+ * Sums are stored as ints: their differences are exact as long as the sum of a channel over the whole image
+ * fits an int, so images can have at most MAX_PIXELS pixels.
+ */
+
+public final class SummedAreaTable {
+
+    /** Maximum number of pixels of an image, so that channel sums over the whole image never overflow */
+    public static final int MAX_PIXELS = Integer.MAX_VALUE / 255;
+
+    /** Sums of the channels, 4 ints (a, r, g, b) per entry, with (width + 1) x (height + 1) entries: first row and column are 0 */
+    private final int[] mSums;
+
+    /** Width of the image */
+    private final int mWidth;
+
+    /** Height of the image */
+    private final int mHeight;
+
+    private SummedAreaTable(int width, int height) {
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mSums = new int[(width + 1) * (height + 1) * 4];
+    }
+
+    /**
+     * Builds the summed area table of the pixels.
+     *
+     * @param pixels Pixels to build the table from. They are not modified, and can be changed afterwards
+     * @param context Context providing the executor and the number of threads to use
+     * @return The table of the pixels
+     * @throws InterruptedException If the thread is interrupted while building the table
+     */
+    public static SummedAreaTable build(PixelBuffer pixels, BlurContext context) throws InterruptedException {
+        if((long) pixels.getWidth() * pixels.getHeight() > MAX_PIXELS)
+            throw new IllegalArgumentException("Image is too big for a summed area table: " + pixels.getWidth() + "x" + pixels.getHeight());
+
+        SummedAreaTable table = new SummedAreaTable(pixels.getWidth(), pixels.getHeight());
+        int cores = context.getNumTasks();
+
+        //rows are summed independently, then each row is added to the one below
+        ArrayList<BuildTask> rows = new ArrayList<>(cores);
+        ArrayList<BuildTask> columns = new ArrayList<>(cores);
+        for (int i = 0; i < cores; i++) {
+            rows.add(table.new BuildTask(pixels, cores, i, 1));
+            columns.add(table.new BuildTask(pixels, cores, i, 2));
+        }
+
+        context.invokeAll(rows);
+        context.invokeAll(columns);
+        return table;
+    }
+
+    /** Returns the width of the image */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** Returns the height of the image */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Box blurs the image into the output, with a box of (2 * radius + 1) x (2 * radius + 1) pixels.
+     *
+     * @param radius Radius of the box. If it's 0 or negative, the original image is written
+     * @param output Buffer to write the blurred image into. It must have the same size of the table
+     * @param context Context providing the executor and the number of threads to use
+     * @throws InterruptedException If the thread is interrupted while blurring. Output is left in an undefined state
+     */
+    public void blur(int radius, PixelBuffer output, BlurContext context) throws InterruptedException {
+        blur(new int[]{radius}, new PixelBuffer[]{output}, context);
+    }
+
+    /**
+     * Box blurs the image with several radii at once, each into its own output.
+     *
+     * @param radii Radii of the boxes, with (2 * radius + 1) x (2 * radius + 1) pixels
+     * @param outputs Buffers to write the blurred images into, one for each radius. They must have the same size of the table
+     * @param context Context providing the executor and the number of threads to use
+     * @throws InterruptedException If the thread is interrupted while blurring. Outputs are left in an undefined state
+     */
+    public void blur(int[] radii, PixelBuffer[] outputs, BlurContext context) throws InterruptedException {
+        if(radii.length != outputs.length)
+            throw new IllegalArgumentException("Radii (" + radii.length + ") and outputs (" + outputs.length + ") must have the same length");
+        for (PixelBuffer output : outputs) {
+            if (output.getWidth() != mWidth || output.getHeight() != mHeight)
+                throw new IllegalArgumentException("Output size " + output.getWidth() + "x" + output.getHeight() + " differs from table size " + mWidth + "x" + mHeight);
+        }
+
+        int cores = context.getNumTasks();
+        ArrayList<BlurTask> tasks = new ArrayList<>(cores);
+        for (int i = 0; i < cores; i++)
+            tasks.add(new BlurTask(radii, outputs, cores, i));
+
+        context.invokeAll(tasks);
+    }
+
+
+    private void buildRows(PixelBuffer pixels, int cores, int core) {
+        int[] srcPix = pixels.getPixels();
+        int offset = pixels.getOffset();
+        int stride = pixels.getStride();
+        int entryStride = (mWidth + 1) * 4;
+
+        for (int y = core * mHeight / cores, maxY = (core + 1) * mHeight / cores; y < maxY; y++) {
+            if(Thread.currentThread().isInterrupted())
+                return;
+            int a = 0, r = 0, g = 0, b = 0;
+            int index = offset + y * stride;
+            int entry = (y + 1) * entryStride + 4;
+            for (int x = 0; x < mWidth; x++, index++, entry += 4) {
+                int pixel = srcPix[index];
+                a += pixel >>> 24;
+                r += (pixel >> 16) & 0xff;
+                g += (pixel >> 8) & 0xff;
+                b += pixel & 0xff;
+                mSums[entry] = a;
+                mSums[entry + 1] = r;
+                mSums[entry + 2] = g;
+                mSums[entry + 3] = b;
+            }
+        }
+    }
+
+    private void buildColumns(int cores, int core) {
+        int entryStride = (mWidth + 1) * 4;
+        int minEntry = 4 + core * mWidth / cores * 4;
+        int maxEntry = 4 + (core + 1) * mWidth / cores * 4;
+
+        //rows are scanned in order, so that memory is read sequentially
+        for (int y = 2; y <= mHeight; y++) {
+            int row = y * entryStride;
+            for (int i = row + minEntry, end = row + maxEntry; i < end; i++)
+                mSums[i] += mSums[i - entryStride];
+        }
+    }
+
+    private void apply(int[] radii, PixelBuffer[] outputs, int cores, int core) {
+        int entryStride = (mWidth + 1) * 4;
+        int[] sums = mSums;
+
+        for (int o = 0; o < radii.length; o++) {
+            int radius = Math.max(0, radii[o]);
+            int[] outPix = outputs[o].getPixels();
+            int offset = outputs[o].getOffset();
+            int stride = outputs[o].getStride();
+
+            for (int y = core * mHeight / cores, maxY = (core + 1) * mHeight / cores; y < maxY; y++) {
+                if(Thread.currentThread().isInterrupted())
+                    return;
+                int top = Math.max(0, y - radius);
+                int bottom = Math.min(mHeight, y + radius + 1);
+                int topRow = top * entryStride;
+                int bottomRow = bottom * entryStride;
+                int index = offset + y * stride;
+
+                for (int x = 0; x < mWidth; x++, index++) {
+                    int left = Math.max(0, x - radius) * 4;
+                    int right = Math.min(mWidth, x + radius + 1) * 4;
+                    float scale = 1f / ((bottom - top) * ((right - left) >> 2));
+
+                    int br = bottomRow + right, bl = bottomRow + left, tr = topRow + right, tl = topRow + left;
+                    int a = (int) ((sums[br] - sums[bl] - sums[tr] + sums[tl]) * scale + 0.5f);
+                    int r = (int) ((sums[br + 1] - sums[bl + 1] - sums[tr + 1] + sums[tl + 1]) * scale + 0.5f);
+                    int g = (int) ((sums[br + 2] - sums[bl + 2] - sums[tr + 2] + sums[tl + 2]) * scale + 0.5f);
+                    int b = (int) ((sums[br + 3] - sums[bl + 3] - sums[tr + 3] + sums[tl + 3]) * scale + 0.5f);
+                    outPix[index] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+
+    private class BuildTask implements Callable<Void> {
+        private final PixelBuffer _pixels;
+        private final int _totalCores;
+        private final int _coreIndex;
+        private final int _round;
+
+        BuildTask(PixelBuffer pixels, int totalCores, int coreIndex, int round) {
+            _pixels = pixels;
+            _totalCores = totalCores;
+            _coreIndex = coreIndex;
+            _round = round;
+        }
+
+        @Override public Void call() throws Exception {
+            if(_round == 1)
+                buildRows(_pixels, _totalCores, _coreIndex);
+            else
+                buildColumns(_totalCores, _coreIndex);
+            return null;
+        }
+
+    }
+
+    private class BlurTask implements Callable<Void> {
+        private final int[] _radii;
+        private final PixelBuffer[] _outputs;
+        private final int _totalCores;
+        private final int _coreIndex;
+
+        BlurTask(int[] radii, PixelBuffer[] outputs, int totalCores, int coreIndex) {
+            _radii = radii;
+            _outputs = outputs;
+            _totalCores = totalCores;
+            _coreIndex = coreIndex;
+        }
+
+        @Override public Void call() throws Exception {
+            apply(_radii, _outputs, _totalCores, _coreIndex);
+            return null;
+        }
+
+    }
+}
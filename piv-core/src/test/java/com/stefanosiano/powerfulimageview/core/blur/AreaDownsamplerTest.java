@@ -0,0 +1,157 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AreaDownsamplerTest {
+
+    @Test
+    public void integerRatiosAverageBlocks() {
+        int[] src = {
+                0xff000000, 0xff000004, 0x00ffffff, 0x00ffffff,
+                0xff000008, 0xff00000c, 0x00ffffff, 0x00ffffff,
+                0x40102030, 0x40102030, 0x80000000, 0x00000000,
+                0x40102030, 0x40102030, 0x00000000, 0x00000000
+        };
+        int[] pix = downsample(src, 4, 4, 2, 2);
+        assertEquals(0xff000006, pix[0]);
+        assertEquals(0x00ffffff, pix[1]);
+        assertEquals(0x40102030, pix[2]);
+        assertEquals(0x20000000, pix[3]);
+    }
+
+    @Test
+    public void averagesAreRounded() {
+        //(1 + 2) / 2 = 1.5 is rounded up, (0 + 0 + 0 + 1) / 4 = 0.25 is rounded down
+        int[] pix = downsample(new int[]{0x01010101, 0x02020202}, 2, 1, 1, 1);
+        assertEquals(0x02020202, pix[0]);
+        pix = downsample(new int[]{0, 0, 0, 0x01010101}, 2, 2, 1, 1);
+        assertEquals(0, pix[0]);
+    }
+
+    @Test
+    public void nonIntegerRatiosCoverWholePixels() {
+        int srcW = 7;
+        int srcH = 5;
+        int w = 3;
+        int h = 2;
+        int[] src = new int[srcW * srcH];
+        Random random = new Random(7);
+        for (int i = 0; i < src.length; i++)
+            src[i] = random.nextInt();
+        int[] pix = downsample(src, srcW, srcH, w, h);
+
+        //columns [0, 2), [2, 4), [4, 7) and rows [0, 2), [2, 5): every source pixel is covered once
+        int[] columns = {0, 2, 4, 7};
+        int[] rows = {0, 2, 5};
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = 0;
+                    int count = 0;
+                    for (int sy = rows[y]; sy < rows[y + 1]; sy++) {
+                        for (int sx = columns[x]; sx < columns[x + 1]; sx++) {
+                            sum += (src[sy * srcW + sx] >>> shift) & 0xff;
+                            count++;
+                        }
+                    }
+                    assertEquals((sum + count / 2) / count, (pix[y * w + x] >>> shift) & 0xff);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stridedPixelsKeepTheirPadding() {
+        int[] src = new int[6 * 4];
+        for (int i = 0; i < src.length; i++)
+            src[i] = 0xff000000 | i;
+        int offset = 3;
+        int stride = 5;
+        int[] pix = new int[offset + stride * 2];
+        Arrays.fill(pix, 0x12345678);
+        PixelBuffer pixels = PixelBuffer.wrap(pix, offset, 3, 2, stride);
+        AreaDownsampler.check(PixelBuffer.wrap(src, 6, 4), pixels);
+        AreaDownsampler.downsample(PixelBuffer.wrap(src, 6, 4), pixels, 0, 2, new Scratch());
+
+        int[] expected = downsample(src, 6, 4, 3, 2);
+        for (int i = 0; i < pix.length; i++) {
+            int x = (i - offset) % stride;
+            int y = (i - offset) / stride;
+            boolean inside = i >= offset && x < 3 && y < 2;
+            assertEquals("index " + i, inside ? expected[y * 3 + x] : 0x12345678, pix[i]);
+        }
+    }
+
+    @Test
+    public void maxAreaIsAccepted() {
+        //each pixel covers at most (MAX_AREA / 2) x 2 source pixels
+        AreaDownsampler.check(new EmptySource(AreaDownsampler.MAX_AREA / 2 - 1, 1), PixelBuffer.wrap(new int[1], 1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void areasOverMaxAreaAreRejected() {
+        AreaDownsampler.check(new EmptySource(AreaDownsampler.MAX_AREA, 1), PixelBuffer.wrap(new int[1], 1, 1));
+    }
+
+    @Test
+    public void maxAreaSumsDoNotOverflow() {
+        //the biggest white source accepted for a single pixel: sums of its channels must not overflow
+        PixelSource source = new EmptySource(AreaDownsampler.MAX_AREA / 2 - 1, 1) {
+            @Override
+            public void readRows(int y, int rows, int[] dst) {
+                Arrays.fill(dst, 0, rows * getWidth(), 0xffffffff);
+            }
+        };
+        int[] pix = new int[1];
+        PixelBuffer pixels = PixelBuffer.wrap(pix, 1, 1);
+        AreaDownsampler.check(source, pixels);
+        AreaDownsampler.downsample(source, pixels, 0, 1, new Scratch());
+        assertEquals(0xffffffff, pix[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallerSourcesAreRejected() {
+        AreaDownsampler.check(PixelBuffer.wrap(new int[4], 2, 2), PixelBuffer.wrap(new int[6], 3, 2));
+    }
+
+    /** Checks and downsamples the source into new pixels */
+    private static int[] downsample(int[] src, int srcW, int srcH, int w, int h) {
+        int[] pix = new int[w * h];
+        PixelBuffer source = PixelBuffer.wrap(src, srcW, srcH);
+        PixelBuffer pixels = PixelBuffer.wrap(pix, w, h);
+        AreaDownsampler.check(source, pixels);
+        AreaDownsampler.downsample(source, pixels, 0, h, new Scratch());
+        return pix;
+    }
+
+    /** Source of the passed size that can't be read, to check sizes that would not fit an array */
+    private static class EmptySource implements PixelSource {
+        private final int mWidth;
+        private final int mHeight;
+
+        EmptySource(int width, int height) {
+            this.mWidth = width;
+            this.mHeight = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public void readRows(int y, int rows, int[] dst) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlurPyramidTest {
+
+    private static final int SIZE = 128;
+
+    @Test
+    public void levelsHalveUntilOnePixel() throws InterruptedException {
+        //50x20, 25x10, 13x5, 7x3, 4x2, 2x1, 1x1
+        BlurPyramid pyramid = BlurPyramid.build(PixelBuffer.wrap(new int[100 * 40], 100, 40), 0, BlurContext.singleThreaded());
+        assertEquals(7, pyramid.getLevels());
+        assertEquals(4L * (50 * 20 + 25 * 10 + 13 * 5 + 7 * 3 + 4 * 2 + 2 + 1), pyramid.getByteCount());
+
+        pyramid = BlurPyramid.build(PixelBuffer.wrap(new int[100 * 40], 100, 40), 3, BlurContext.singleThreaded());
+        assertEquals(3, pyramid.getLevels());
+        assertEquals(4L * (50 * 20 + 25 * 10 + 13 * 5), pyramid.getByteCount());
+    }
+
+    @Test
+    public void deepestLevelNotBlurrierThanRequestedIsSelected() throws InterruptedException {
+        BlurPyramid pyramid = BlurPyramid.build(PixelBuffer.wrap(createImage(), SIZE, SIZE), 0, BlurContext.singleThreaded());
+        int lastLevel = -1;
+        for (int radius = 1; radius < 300; radius++) {
+            double sigma = GaussianBlurKernel.getSigma(radius);
+            int level = pyramid.getLevel(sigma);
+            assertTrue("radius " + radius, level >= lastLevel);
+            assertTrue("radius " + radius, level < 0 || BlurPyramid.getSigma(level) <= sigma);
+            assertTrue("radius " + radius, level == pyramid.getLevels() - 1 || BlurPyramid.getSigma(level + 1) > sigma);
+            lastLevel = level;
+        }
+        assertEquals(-1, pyramid.getLevel(GaussianBlurKernel.getSigma(1)));
+        assertEquals(pyramid.getLevels() - 1, lastLevel);
+    }
+
+    @Test
+    public void selectedLevelIsLimitedByTheLevels() throws InterruptedException {
+        BlurPyramid pyramid = BlurPyramid.build(PixelBuffer.wrap(createImage(), SIZE, SIZE), 2, BlurContext.singleThreaded());
+        assertEquals(1, pyramid.getLevel(GaussianBlurKernel.getSigma(200)));
+        assertEquals(0, pyramid.getLevel(BlurPyramid.getSigma(0)));
+        assertEquals(-1, pyramid.getLevel(BlurPyramid.getSigma(0) - 1e-9));
+    }
+
+    @Test
+    public void smallRadiiBlurTheOriginalImage() throws InterruptedException {
+        BlurPyramid pyramid = BlurPyramid.build(PixelBuffer.wrap(createImage(), SIZE, SIZE), 0, BlurContext.singleThreaded());
+        assertEquals(-1, pyramid.getLevel(GaussianBlurKernel.getSigma(2)));
+
+        int[] expected = createImage();
+        int[] actual = createImage();
+        new GaussianBlurKernel().blur(PixelBuffer.wrap(expected, SIZE, SIZE), 2, BlurContext.singleThreaded());
+        pyramid.blur(2, PixelBuffer.wrap(actual, SIZE, SIZE), BlurContext.singleThreaded());
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void flatImagesStayFlat() throws InterruptedException {
+        int[] flat = new int[SIZE * SIZE];
+        Arrays.fill(flat, 0xff336699);
+        BlurPyramid pyramid = BlurPyramid.build(PixelBuffer.wrap(flat, SIZE, SIZE), 0, BlurContext.singleThreaded());
+        for (int radius : new int[]{1, 4, 9, 25, 80, 300}) {
+            int[] pix = flat.clone();
+            pyramid.blur(radius, PixelBuffer.wrap(pix, SIZE, SIZE), BlurContext.singleThreaded());
+            assertArrayEquals("radius " + radius, flat, pix);
+        }
+    }
+
+    /** Creates an opaque image with a 16 pixels checkerboard in red, and horizontal and vertical gradients in green and blue */
+    private static int[] createImage() {
+        int[] pix = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int red = ((x / 16 + y / 16) & 1) == 1 ? 255 : 0;
+                pix[y * SIZE + x] = 0xff000000 | red << 16 | x << 8 | y;
+            }
+        }
+        return pix;
+    }
+}
@@ -0,0 +1,115 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class ConvolveBlurKernelTest {
+
+    private static final int SIZE = 256;
+
+    @Test
+    public void singlePassUpTo3IterationsMatchesIterations() throws InterruptedException {
+        int[] expected = createImage();
+        int[] actual = createImage();
+        Box3x3BlurKernel kernel = new Box3x3BlurKernel();
+        kernel.blur(PixelBuffer.wrap(expected, SIZE, SIZE), 3, BlurContext.singleThreaded());
+        kernel.setSinglePass(true);
+        kernel.blur(PixelBuffer.wrap(actual, SIZE, SIZE), 3, BlurContext.singleThreaded());
+
+        assertTrue(getMaxDifference(expected, actual) <= 2);
+    }
+
+    @Test
+    public void singlePassBox3x3MatchesIteratedBoxes() throws InterruptedException {
+        checkAgainstIteratedBoxes(new Box3x3BlurKernel(), 1, 20, 3);
+        checkAgainstIteratedBoxes(new Box3x3BlurKernel(), 1, 60, 3);
+    }
+
+    @Test
+    public void singlePassBox5x5MatchesIteratedBoxes() throws InterruptedException {
+        checkAgainstIteratedBoxes(new Box5x5BlurKernel(), 2, 20, 3);
+        checkAgainstIteratedBoxes(new Box5x5BlurKernel(), 2, 60, 6);
+    }
+
+    @Test
+    public void singlePassReachCoversTheBoxes() {
+        Box3x3BlurKernel kernel = new Box3x3BlurKernel();
+        kernel.setSinglePass(true);
+        //3 boxes with a variance of 2/3 * 60 / 3 = 13.3 each: 5 pixels and a fraction on each side
+        assertTrue(kernel.getReach(60) == 18);
+        assertTrue(kernel.getReach(3) == 3);
+    }
+
+    /**
+     * Blurs in single pass mode an image whose columns have the same color, and compares its rows with the box
+     * filter applied iterations times in floating point: the vertical blur of a constant column does nothing.
+     * Pixels within the reach of the blur from the left and right edges are skipped, as the edges are padded
+     * differently by the approximation.
+     */
+    private static void checkAgainstIteratedBoxes(ConvolveBlurKernel kernel, int half, int radius, int maxDiff) throws InterruptedException {
+        int[] actual = createImage();
+        kernel.setSinglePass(true);
+        kernel.blur(PixelBuffer.wrap(actual, SIZE, SIZE), radius, BlurContext.singleThreaded());
+
+        int[] expected = createImage();
+        for (int shift = 0; shift < 24; shift += 8) {
+            double[] line = new double[SIZE];
+            for (int x = 0; x < SIZE; x++)
+                line[x] = (expected[x] >> shift) & 0xff;
+            for (int i = 0; i < radius; i++)
+                line = boxBlur(line, half);
+            for (int y = 0; y < SIZE; y++)
+                for (int x = 0; x < SIZE; x++)
+                    expected[y * SIZE + x] = expected[y * SIZE + x] & ~(0xff << shift) | (int) (line[x] + 0.5) << shift;
+        }
+
+        int reach = kernel.getReach(radius);
+        int max = 0;
+        for (int i = 0; i < expected.length; i++) {
+            int x = i % SIZE;
+            if(x >= reach && x < SIZE - reach)
+                max = Math.max(max, getDifference(expected[i], actual[i]));
+        }
+        assertTrue("radius " + radius + ": max difference " + max, max <= maxDiff);
+    }
+
+    /** Naive box filter, repeating the edge pixels outside the line */
+    private static double[] boxBlur(double[] line, int half) {
+        double[] out = new double[line.length];
+        for (int i = 0; i < line.length; i++) {
+            double sum = 0;
+            for (int j = -half; j <= half; j++)
+                sum += line[Math.min(Math.max(i + j, 0), line.length - 1)];
+            out[i] = sum / (2 * half + 1);
+        }
+        return out;
+    }
+
+    private static int getMaxDifference(int[] expected, int[] actual) {
+        int max = 0;
+        for (int i = 0; i < expected.length; i++)
+            max = Math.max(max, getDifference(expected[i], actual[i]));
+        return max;
+    }
+
+    /** Returns the biggest difference between the channels of the 2 pixels */
+    private static int getDifference(int expected, int actual) {
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+            max = Math.max(max, Math.abs(((expected >>> shift) & 0xff) - ((actual >>> shift) & 0xff)));
+        return max;
+    }
+
+    /** Creates an opaque image whose columns have the same color: 16 pixels stripes in red, a gradient in green and noise in blue */
+    private static int[] createImage() {
+        int[] pix = new int[SIZE * SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            int red = ((x / 16) & 1) == 1 ? 255 : 0;
+            int blue = (x * 89 + 37) & 0xff;
+            for (int y = 0; y < SIZE; y++)
+                pix[y * SIZE + x] = 0xff000000 | red << 16 | x << 8 | blue;
+        }
+        return pix;
+    }
+}
@@ -0,0 +1,77 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class RecursiveGaussianBlurKernelTest {
+
+    private static final int SIZE = 256;
+
+    @Test
+    public void radius10MatchesGaussian() throws InterruptedException {
+        checkAgainstGaussian(10, 2.1, 12, 1.2, 12);
+    }
+
+    @Test
+    public void radius25MatchesGaussian() throws InterruptedException {
+        checkAgainstGaussian(25, 0.2, 4, 0.6, 4);
+    }
+
+    @Test
+    public void radius50MatchesGaussian() throws InterruptedException {
+        checkAgainstGaussian(50, 0.1, 2, 0.2, 2);
+    }
+
+    /**
+     * Blurs the test image with both kernels and compares the channels of all the pixels, and then of the pixels
+     * of the outermost rows and columns alone, which depend on the boundary state of the recursive filter.
+     */
+    private static void checkAgainstGaussian(int radius, double maxMean, int maxDiff, double maxEdgeMean, int maxEdgeDiff) throws InterruptedException {
+        int[] expected = createImage();
+        int[] actual = createImage();
+        new GaussianBlurKernel().blur(PixelBuffer.wrap(expected, SIZE, SIZE), radius, BlurContext.singleThreaded());
+        new RecursiveGaussianBlurKernel().blur(PixelBuffer.wrap(actual, SIZE, SIZE), radius, BlurContext.singleThreaded());
+
+        long sum = 0;
+        int max = 0;
+        long edgeSum = 0;
+        int edgeMax = 0;
+        int edgeCount = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int i = y * SIZE + x;
+                boolean edge = x == 0 || y == 0 || x == SIZE - 1 || y == SIZE - 1;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((expected[i] >>> shift) & 0xff) - ((actual[i] >>> shift) & 0xff));
+                    sum += diff;
+                    max = Math.max(max, diff);
+                    if(edge) {
+                        edgeSum += diff;
+                        edgeMax = Math.max(edgeMax, diff);
+                        edgeCount++;
+                    }
+                }
+            }
+        }
+
+        double mean = (double) sum / (SIZE * SIZE * 4);
+        double edgeMean = (double) edgeSum / edgeCount;
+        assertTrue("radius " + radius + ": mean difference " + mean, mean <= maxMean);
+        assertTrue("radius " + radius + ": max difference " + max, max <= maxDiff);
+        assertTrue("radius " + radius + ": mean difference on the edges " + edgeMean, edgeMean <= maxEdgeMean);
+        assertTrue("radius " + radius + ": max difference on the edges " + edgeMax, edgeMax <= maxEdgeDiff);
+    }
+
+    /** Creates an opaque image with a 16 pixels checkerboard in red, and horizontal and vertical gradients in green and blue */
+    private static int[] createImage() {
+        int[] pix = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int red = ((x / 16 + y / 16) & 1) == 1 ? 255 : 0;
+                pix[y * SIZE + x] = 0xff000000 | red << 16 | x << 8 | y;
+            }
+        }
+        return pix;
+    }
+}
@@ -0,0 +1,68 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Rgb565DitherTest {
+
+    @Test
+    public void ditheredValuesAreExact565Levels() {
+        int[] pix = new int[256];
+        for (int i = 0; i < pix.length; i++)
+            pix[i] = 0xff000000 | i << 16 | i << 8 | i;
+        Rgb565Dither.dither(PixelBuffer.wrap(pix, 16, 16), 0, 0);
+
+        for (int p : pix) {
+            int r = (p >> 16) & 0xff;
+            int g = (p >> 8) & 0xff;
+            assertEquals(0xff000000, p & 0xff000000);
+            assertEquals(r, (r >> 3) << 3 | r >> 5);
+            assertEquals(g, (g >> 2) << 2 | g >> 6);
+        }
+    }
+
+    @Test
+    public void flatColorsKeepTheirMean() {
+        for (int c = 0; c < 256; c++) {
+            int[] pix = new int[64];
+            Arrays.fill(pix, 0xff000000 | c << 16 | c << 8 | c);
+            Rgb565Dither.dither(PixelBuffer.wrap(pix, 8, 8), 0, 0);
+            double red = 0;
+            double green = 0;
+            for (int p : pix) {
+                red += (p >> 16) & 0xff;
+                green += (p >> 8) & 0xff;
+            }
+            assertEquals(c, red / pix.length, 1);
+            assertEquals(c, green / pix.length, 1);
+        }
+    }
+
+    @Test
+    public void regionsMatchTheWholeImage() {
+        int w = 37;
+        int h = 23;
+        int[] image = new int[w * h];
+        Random random = new Random(1);
+        for (int i = 0; i < image.length; i++)
+            image[i] = 0xff000000 | random.nextInt();
+
+        int[] whole = image.clone();
+        Rgb565Dither.dither(PixelBuffer.wrap(whole, w, h), 0, 0);
+
+        //a region not aligned to the pattern, dithered on its own
+        int left = 5;
+        int top = 7;
+        int[] region = image.clone();
+        Rgb565Dither.dither(PixelBuffer.wrap(region, top * w + left, 13, 9, w), left, top);
+
+        for (int y = top; y < top + 9; y++) {
+            for (int x = left; x < left + 13; x++)
+                assertEquals("pixel " + x + "," + y, whole[y * w + x], region[y * w + x]);
+        }
+    }
+}
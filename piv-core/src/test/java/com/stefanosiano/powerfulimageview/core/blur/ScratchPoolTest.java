@@ -0,0 +1,124 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScratchPoolTest {
+
+    @Test
+    public void smallLengthsUseTheMinimumClass() {
+        ScratchPool pool = new ScratchPool();
+        assertEquals(64, pool.acquire(0).length);
+        assertEquals(64, pool.acquire(1).length);
+        assertEquals(64, pool.acquire(64).length);
+        assertEquals(80, pool.acquire(65).length);
+    }
+
+    @Test
+    public void acquiredArraysAreAtMostAQuarterLonger() {
+        ScratchPool pool = new ScratchPool();
+        for (int length = 65; length < 100000; length += 7) {
+            int arrayLength = pool.acquire(length).length;
+            assertTrue("length " + length + " got " + arrayLength, arrayLength >= length && arrayLength <= length * 5 / 4 + 1);
+        }
+    }
+
+    @Test
+    public void releasedArraysAreReused() {
+        ScratchPool pool = new ScratchPool();
+        for (int length : new int[]{0, 1, 64, 65, 1000}) {
+            int[] array = pool.acquire(length);
+            pool.release(array);
+            assertSame(array, pool.acquire(length));
+        }
+
+        //arrays of the same class are interchangeable
+        int[] array = pool.acquire(1);
+        pool.release(array);
+        assertSame(array, pool.acquire(64));
+    }
+
+    @Test
+    public void clearDropsReleasedArrays() {
+        ScratchPool pool = new ScratchPool();
+        int[] array = pool.acquire(1000);
+        pool.release(array);
+        assertEquals(4L * array.length, pool.getRetainedBytes());
+        pool.clear();
+        assertEquals(0, pool.getRetainedBytes());
+        assertNotSame(array, pool.acquire(1000));
+    }
+
+    @Test
+    public void retainedBytesAreBounded() {
+        ScratchPool pool = new ScratchPool(1024);
+        int[] first = pool.acquire(200);
+        int[] second = pool.acquire(200);
+        pool.release(first);
+        assertEquals(4L * first.length, pool.getRetainedBytes());
+        //a second array would exceed the maximum
+        pool.release(second);
+        assertEquals(4L * first.length, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void tinyImagesCanBeBlurred() throws InterruptedException {
+        BlurContext context = BlurContext.singleThreaded();
+        for (SeparableBlurKernel kernel : getSeparableKernels()) {
+            kernel.setTransposeVertical(true);
+            for (int size = 1; size <= 9; size++) {
+                int[] pix = new int[size * size];
+                Arrays.fill(pix, 0xff336699);
+                kernel.blur(PixelBuffer.wrap(pix, size, size), 3, context);
+                assertEquals(0xff336699, pix[pix.length / 2]);
+            }
+        }
+        //the smallest levels of the pyramid are only a few pixels
+        int[] pix = new int[256 * 256];
+        new DualKawaseBlurKernel().blur(PixelBuffer.wrap(pix, 256, 256), 200, context);
+    }
+
+    @Test
+    public void repeatedBlursDoNotAllocate() throws InterruptedException {
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mxBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        int w = 512;
+        int h = 384;
+        BlurContext context = BlurContext.singleThreaded();
+        PixelBuffer pixels = PixelBuffer.wrap(new int[w * h], w, h);
+        long threadId = Thread.currentThread().getId();
+
+        for (SeparableBlurKernel kernel : getSeparableKernels()) {
+            for (boolean transpose : new boolean[]{false, true}) {
+                kernel.setTransposeVertical(transpose);
+                //the first blurs fill the pool and the caches of the kernel
+                for (int i = 0; i < 3; i++)
+                    kernel.blur(pixels, 10, context);
+
+                long start = bean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < 10; i++)
+                    kernel.blur(pixels, 10, context);
+                long allocated = bean.getThreadAllocatedBytes(threadId) - start;
+                assertEquals(kernel.getClass().getSimpleName() + " (transpose " + transpose + ") allocated bytes", 0, allocated);
+            }
+        }
+    }
+
+    private static SeparableBlurKernel[] getSeparableKernels() {
+        return new SeparableBlurKernel[]{
+                new StackBlurKernel(), new GaussianBlurKernel(), new GaussianFastBlurKernel(), new RecursiveGaussianBlurKernel(),
+                new Box3x3BlurKernel(), new Box5x5BlurKernel(), new Gaussian3x3BlurKernel(), new Gaussian5x5BlurKernel()
+        };
+    }
+}
@@ -0,0 +1,143 @@
+package com.stefanosiano.powerfulimageview.core.blur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class SummedAreaTableTest {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void blurMatchesNaiveBox() throws InterruptedException {
+        int[] pix = createImage(WIDTH, HEIGHT);
+        SummedAreaTable table = SummedAreaTable.build(PixelBuffer.wrap(pix, WIDTH, HEIGHT), BlurContext.singleThreaded());
+        assertEquals(WIDTH, table.getWidth());
+        assertEquals(HEIGHT, table.getHeight());
+
+        //radius 30 is bigger than the image: every pixel is the average of the whole image
+        for (int radius : new int[]{0, 1, 2, 5, 11, 30}) {
+            int[] out = new int[WIDTH * HEIGHT];
+            table.blur(radius, PixelBuffer.wrap(out, WIDTH, HEIGHT), BlurContext.singleThreaded());
+            assertMatches("radius " + radius, naiveBox(pix, WIDTH, HEIGHT, radius), out);
+        }
+    }
+
+    @Test
+    public void multipleRadiiMatchNaiveBox() throws InterruptedException {
+        int[] pix = createImage(WIDTH, HEIGHT);
+        SummedAreaTable table = SummedAreaTable.build(PixelBuffer.wrap(pix, WIDTH, HEIGHT), BlurContext.singleThreaded());
+
+        int[] radii = {3, 0, 8, 3};
+        int[][] outs = new int[radii.length][WIDTH * HEIGHT];
+        PixelBuffer[] outputs = new PixelBuffer[radii.length];
+        for (int i = 0; i < radii.length; i++)
+            outputs[i] = PixelBuffer.wrap(outs[i], WIDTH, HEIGHT);
+        table.blur(radii, outputs, BlurContext.singleThreaded());
+
+        for (int i = 0; i < radii.length; i++)
+            assertMatches("radius " + radii[i], naiveBox(pix, WIDTH, HEIGHT, radii[i]), outs[i]);
+    }
+
+    @Test
+    public void stridedBuffersMatchNaiveBox() throws InterruptedException {
+        int offset = 5;
+        int stride = WIDTH + 9;
+        int[] pix = createImage(WIDTH, HEIGHT);
+        int[] strided = new int[offset + stride * HEIGHT];
+        //the padding must be neither read nor written
+        Arrays.fill(strided, 0x12345678);
+        for (int y = 0; y < HEIGHT; y++)
+            System.arraycopy(pix, y * WIDTH, strided, offset + y * stride, WIDTH);
+
+        SummedAreaTable table = SummedAreaTable.build(PixelBuffer.wrap(strided, offset, WIDTH, HEIGHT, stride), BlurContext.singleThreaded());
+        int[] out = new int[offset + stride * HEIGHT];
+        Arrays.fill(out, 0x12345678);
+        table.blur(4, PixelBuffer.wrap(out, offset, WIDTH, HEIGHT, stride), BlurContext.singleThreaded());
+
+        int[] expected = naiveBox(pix, WIDTH, HEIGHT, 4);
+        for (int i = 0; i < out.length; i++) {
+            int x = (i - offset) % stride;
+            int y = (i - offset) / stride;
+            boolean inside = i >= offset && x < WIDTH && y < HEIGHT;
+            if(inside)
+                assertMatches("index " + i, new int[]{expected[y * WIDTH + x]}, new int[]{out[i]});
+            else
+                assertEquals("index " + i, 0x12345678, out[i]);
+        }
+    }
+
+    @Test
+    public void severalThreadsMatchOne() throws InterruptedException {
+        int[] pix = createImage(WIDTH, HEIGHT);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BlurContext context = new BlurContext(executor, 3);
+            SummedAreaTable table = SummedAreaTable.build(PixelBuffer.wrap(pix, WIDTH, HEIGHT), context);
+            int[] out = new int[WIDTH * HEIGHT];
+            table.blur(6, PixelBuffer.wrap(out, WIDTH, HEIGHT), context);
+            assertMatches("radius 6", naiveBox(pix, WIDTH, HEIGHT, 6), out);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outputsOfAnotherSizeAreRejected() throws InterruptedException {
+        int[] pix = createImage(WIDTH, HEIGHT);
+        SummedAreaTable table = SummedAreaTable.build(PixelBuffer.wrap(pix, WIDTH, HEIGHT), BlurContext.singleThreaded());
+        table.blur(1, PixelBuffer.wrap(new int[WIDTH * HEIGHT], HEIGHT, WIDTH), BlurContext.singleThreaded());
+    }
+
+    /**
+     * Checks that each channel of the pixels differs by at most 1: the table scales sums with floats,
+     * so averages halfway between 2 integers may be rounded down.
+     */
+    private static void assertMatches(String message, int[] expected, int[] actual) {
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            for (int shift = 0; shift < 32; shift += 8)
+                assertEquals(message + ", pixel " + i, (expected[i] >>> shift) & 0xff, (actual[i] >>> shift) & 0xff, 1);
+    }
+
+    /**
+     * Box blurs the image summing each box pixel by pixel. Near the edges the box shrinks to the pixels
+     * inside the image, and each channel is their average, rounded to the nearest integer.
+     */
+    private static int[] naiveBox(int[] pix, int w, int h, int radius) {
+        int[] out = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = 0;
+                    int count = 0;
+                    for (int yy = Math.max(0, y - radius); yy <= Math.min(h - 1, y + radius); yy++) {
+                        for (int xx = Math.max(0, x - radius); xx <= Math.min(w - 1, x + radius); xx++) {
+                            sum += (pix[yy * w + xx] >>> shift) & 0xff;
+                            count++;
+                        }
+                    }
+                    pixel |= (int) Math.round((double) sum / count) << shift;
+                }
+                out[y * w + x] = pixel;
+            }
+        }
+        return out;
+    }
+
+    /** Creates an image with random colors and alpha */
+    private static int[] createImage(int w, int h) {
+        Random random = new Random(w * 31 + h);
+        int[] pix = new int[w * h];
+        for (int i = 0; i < pix.length; i++)
+            pix[i] = random.nextInt();
+        return pix;
+    }
+}
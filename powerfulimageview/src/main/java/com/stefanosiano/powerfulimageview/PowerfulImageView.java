@@ -1,17 +1,29 @@
 package com.stefanosiano.powerfulimageview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.View;
 
+import com.stefanosiano.powerfulimageview.blur.algorithms.BlurBackdrop;
+import com.stefanosiano.powerfulimageview.blur.algorithms.BlurCache;
+import com.stefanosiano.powerfulimageview.blur.algorithms.BlurKeyframes;
 import com.stefanosiano.powerfulimageview.blur.algorithms.BlurManager;
+import com.stefanosiano.powerfulimageview.blur.algorithms.BlurMetrics;
+import com.stefanosiano.powerfulimageview.blur.algorithms.BlurSource;
 import com.stefanosiano.powerfulimageview.blur.BlurOptions;
 import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
 import com.stefanosiano.powerfulimageview.progress.PivProgressGravity;
@@ -23,6 +35,9 @@ import com.stefanosiano.powerfulimageview.shape.PivShapeScaleType;
 import com.stefanosiano.powerfulimageview.shape.ShapeOptions;
 import com.stefanosiano.powerfulimageview.shape.drawers.ShapeDrawerManager;
 
+import java.io.File;
+import java.util.concurrent.Executor;
+
 /**
  * Powerful ImageView with several added features (highly customizable):
  *     -Progress indicator: it can be circular, horizontal or disabled.
@@ -71,6 +86,19 @@ public class PowerfulImageView extends ImageViewWrapper {
     private static final int DEFAULT_BLUR_NUM_THREADS = 0;
     private static final boolean DEFAULT_BLUR_STATIC = false;
     private static final int DEFAULT_BLUR_MODE = PivBlurMode.DISABLED.getValue();
+    private static final boolean DEFAULT_BLUR_SINGLE_PASS = false;
+    private static final boolean DEFAULT_BLUR_TRANSPOSE_VERTICAL = false;
+    private static final boolean DEFAULT_BLUR_ASYNC = false;
+    private static final int DEFAULT_BLUR_PYRAMID_LEVELS = 4;
+    private static final boolean DEFAULT_BLUR_INCREMENTAL = false;
+    private static final int DEFAULT_BLUR_FRAME_BUDGET = 0;
+    private static final boolean DEFAULT_BLUR_ADAPTIVE_MODE = false;
+    private static final boolean DEFAULT_BLUR_AREA_DOWNSAMPLING = false;
+    private static final boolean DEFAULT_BLUR_RGB565 = false;
+    private static final boolean DEFAULT_BLUR_DITHER = false;
+
+    /** Number of keyframes blurred to animate the blur radius, including the start and the end ones */
+    private static final int BLUR_ANIMATION_KEYFRAMES = 5;
 
     /** Helper class to manage the progress indicator and its options */
     private final ProgressDrawerManager mProgressDrawerManager;
@@ -84,9 +112,53 @@ public class PowerfulImageView extends ImageViewWrapper {
     /** Flag used to control if blurring bitmap should be checked */
     private boolean mCheckBlur = false;
 
+    /** Listener of the blurs performed in background, showing their result */
+    private final BlurManager.OnBlurredListener mOnBlurredListener = new BlurManager.OnBlurredListener() {
+        @Override
+        public void onBlurred(Bitmap bitmap) {
+            mCheckBlur = false;
+            setImageBitmap(bitmap);
+            mCheckBlur = true;
+        }
+    };
+
+    /** Keyframes of the running blur radius animation, cross-faded into the shown image while drawing */
+    private BlurKeyframes mBlurKeyframes;
+
+    /** Animator of the blur radius, running while the keyframes are shown */
+    private ValueAnimator mBlurAnimator;
+
+    /** Live blur of the content behind this view, shown instead of the image, if any */
+    private BlurBackdrop mBlurBackdrop;
+
+    /** Drawable of the blurred backdrop, drawn into the shape */
+    private BitmapDrawable mBackdropDrawable;
+
+    /** Listener of the blurred backdrop, showing it */
+    private final BlurBackdrop.OnBackdropListener mOnBackdropListener = new BlurBackdrop.OnBackdropListener() {
+        @Override
+        public void onBackdropBlurred(Bitmap bitmap) {
+            //the output bitmap is updated in place, so the drawable changes only with its size
+            if(mBackdropDrawable == null || mBackdropDrawable.getBitmap() != bitmap) {
+                mBackdropDrawable = new BitmapDrawable(getResources(), bitmap);
+                mShapeDrawerManager.changeDrawable(mBackdropDrawable);
+            }
+            invalidate();
+        }
+    };
+
     /** Flag used to control if I should try to remove the progress on drawable changed (used in constructor and on size change) */
     private boolean mShouldCheckRemoveProgress = true;
 
+    /** Source set while the view had no size, decoded as soon as it gets one */
+    private BlurSource mPendingBlurSource;
+
+    /** Start time of the SET_IMAGE stage of the running setImageBitmap(), or -1 if it already ended */
+    private long mSetImageStart = -1;
+
+    /** Bitmap decoded from the last source, decoded into by the next one if big enough */
+    private Bitmap mDecodedBitmap;
+
 
     public PowerfulImageView(Context context) {
         this(context, null);
@@ -170,6 +242,16 @@ public class PowerfulImageView extends ImageViewWrapper {
                 a.getBoolean(R.styleable.PowerfulImageView_piv_blur_use_rs_fallback, DEFAULT_BLUR_USE_RENDERSCRIPT_FALLBACK),
                 a.getInteger(R.styleable.PowerfulImageView_piv_blur_num_threads, DEFAULT_BLUR_NUM_THREADS)
         );
+        blurOptions.setSinglePass(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_single_pass, DEFAULT_BLUR_SINGLE_PASS));
+        blurOptions.setTransposeVertical(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_transpose_vertical, DEFAULT_BLUR_TRANSPOSE_VERTICAL));
+        blurOptions.setAsync(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_async, DEFAULT_BLUR_ASYNC));
+        blurOptions.setPyramidLevels(a.getInteger(R.styleable.PowerfulImageView_piv_blur_pyramid_levels, DEFAULT_BLUR_PYRAMID_LEVELS));
+        blurOptions.setIncrementalBlur(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_incremental, DEFAULT_BLUR_INCREMENTAL));
+        blurOptions.setFrameBudget(a.getInteger(R.styleable.PowerfulImageView_piv_blur_frame_budget, DEFAULT_BLUR_FRAME_BUDGET));
+        blurOptions.setAdaptiveMode(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_adaptive_mode, DEFAULT_BLUR_ADAPTIVE_MODE));
+        blurOptions.setAreaDownsampling(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_area_downsampling, DEFAULT_BLUR_AREA_DOWNSAMPLING));
+        blurOptions.setRgb565(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_rgb565, DEFAULT_BLUR_RGB565));
+        blurOptions.setDither(a.getBoolean(R.styleable.PowerfulImageView_piv_blur_dither, DEFAULT_BLUR_DITHER));
 
         int blurRadius = a.getInteger(R.styleable.PowerfulImageView_piv_blur_radius, DEFAULT_BLUR_RADIUS);
         int blurModeValue = a.getInteger(R.styleable.PowerfulImageView_piv_blur_mode, DEFAULT_BLUR_MODE);
@@ -201,12 +283,19 @@ public class PowerfulImageView extends ImageViewWrapper {
         mProgressDrawerManager.onSizeChanged(w, h);
 
         mShapeDrawerManager.onSizeChanged(w, h, getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+        if(mBlurBackdrop != null)
+            mBlurBackdrop.setBounds(mShapeDrawerManager.getShapeOptions().getImageBounds());
 
+        //the original bitmap may be replaced, so the keyframes would be outdated
+        cancelBlurAnimation(true);
         mBlurManager.onSizeChanged(mShapeDrawerManager.getMeasuredWidth(), mShapeDrawerManager.getMeasuredHeight(), getDrawable() != null ? getDrawable().getCurrent() : getDrawable());
 
         mShouldCheckRemoveProgress = false;
         blurBitmap(false);
         mShouldCheckRemoveProgress = true;
+
+        if(mPendingBlurSource != null && w > 0 && h > 0)
+            setBlurSource(mPendingBlurSource);
     }
 
     @Override
@@ -229,12 +318,41 @@ public class PowerfulImageView extends ImageViewWrapper {
         setMeasuredDimension(mShapeDrawerManager.getMeasuredWidth(), mShapeDrawerManager.getMeasuredHeight());
     }
 
+    /**
+     * Sets the bitmap, tracing and timing it in the blur metrics.
+     * The stage ends as soon as the drawable is changed, so it doesn't include rasterizing and blurring the bitmap,
+     * which are stages of their own (the blurred bitmap is then set through a nested call, timed on its own).
+     */
+    @Override
+    public void setImageBitmap(Bitmap bm) {
+        mSetImageStart = BlurManager.getBlurMetrics().begin(BlurMetrics.Stage.SET_IMAGE);
+        try {
+            super.setImageBitmap(bm);
+        } finally {
+            endSetImage();
+        }
+    }
+
+    /** Ends the SET_IMAGE stage of the running setImageBitmap(), if it didn't end yet */
+    private void endSetImage() {
+        if(mSetImageStart < 0)
+            return;
+        BlurManager.getBlurMetrics().end(BlurMetrics.Stage.SET_IMAGE, mBlurManager != null ? mBlurManager.getBlurMode() : null, mSetImageStart);
+        mSetImageStart = -1;
+    }
+
     /**
      * Method called when the drawable has been changed
      */
     @Override
     void onDrawableChanged() {
 
+        //the view's own work of setImageBitmap() ends here: the blur below is timed in its own stages
+        endSetImage();
+
+        //an image set by the app replaces the source waiting for the size of the view
+        mPendingBlurSource = null;
+
         //if the image comes from super methods and i need to blur it, I blur it
         if(blurBitmap(true)) {
             return;
@@ -244,8 +362,8 @@ public class PowerfulImageView extends ImageViewWrapper {
         if (mShouldCheckRemoveProgress && mProgressDrawerManager != null && getDrawable() != null)
             mProgressDrawerManager.changeDrawable(getDrawable().getCurrent());
 
-        //when initializing (in constructor) it gets called, but it is still null
-        if (mShapeDrawerManager != null && getDrawable() != null)
+        //when initializing (in constructor) it gets called, but it is still null. The blurred backdrop is shown instead of the image
+        if (mShapeDrawerManager != null && getDrawable() != null && mBlurBackdrop == null)
             mShapeDrawerManager.changeDrawable(getDrawable().getCurrent());
 
     }
@@ -282,6 +400,14 @@ public class PowerfulImageView extends ImageViewWrapper {
     @Override
     protected void onDraw(Canvas canvas) {
 
+        //the view is part of the target of its backdrop, and it must not blur itself
+        if(mBlurBackdrop != null && mBlurBackdrop.isCapturing())
+            return;
+
+        //cross-fade the keyframes of the blur radius animation into the shown image
+        if(mBlurKeyframes != null && mBlurAnimator != null)
+            mBlurKeyframes.drawFrame(mBlurKeyframes.getFromRadius() + (mBlurKeyframes.getToRadius() - mBlurKeyframes.getFromRadius()) * mBlurAnimator.getAnimatedFraction());
+
         //draw image shape
         mShapeDrawerManager.onDraw(canvas);
 
@@ -322,6 +448,8 @@ public class PowerfulImageView extends ImageViewWrapper {
         if(mBlurManager == null)
             return;
 
+        cancelBlurAnimation(true);
+
         mBlurManager.changeMode(blurMode, radius);
         blurBitmap(false);
     }
@@ -336,12 +464,230 @@ public class PowerfulImageView extends ImageViewWrapper {
         if(mBlurManager == null)
             return;
 
+        cancelBlurAnimation(true);
         mCheckBlur = mBlurManager.getBlurMode() != PivBlurMode.DISABLED;
 
         mBlurManager.changeRadius(radius);
         blurBitmap(false);
     }
 
+    /**
+     * Animates the blur radius, e.g. to pass from a sharp to a blurred image. The image is blurred in background
+     * with a few radii between the passed ones, and then the animation cross-fades them, so that no blur runs
+     * while animating. When the animation ends, the image is left blurred with the end radius.
+     * Setting the blur mode, the radius or the image stops the animation.
+     *
+     * If static blur option is enabled or blur is disabled, the radius is set without animating.
+     *
+     * @param from Radius at the start of the animation
+     * @param to Radius at the end of the animation
+     * @param durationMs Duration of the animation, in milliseconds. It starts when the keyframes are ready
+     */
+    public final void animateBlurRadius(int from, final int to, final long durationMs){
+        if(mBlurManager == null)
+            return;
+
+        cancelBlurAnimation(true);
+        boolean isBlurring = mBlurManager.blurKeyframes(Math.max(0, from), Math.max(0, to), BLUR_ANIMATION_KEYFRAMES, new BlurManager.OnKeyframesListener() {
+            @Override
+            public void onKeyframesBlurred(BlurKeyframes keyframes) {
+                if(keyframes != null)
+                    startBlurAnimation(keyframes, durationMs);
+                else
+                    setBlurRadius(to);
+            }
+        });
+
+        if(!isBlurring)
+            setBlurRadius(to);
+    }
+
+    /** Shows the frame bitmap of the keyframes and starts animating it */
+    private void startBlurAnimation(BlurKeyframes keyframes, long durationMs){
+        mBlurKeyframes = keyframes;
+        mCheckBlur = false;
+        setImageBitmap(keyframes.drawFrame(keyframes.getFromRadius()));
+        mCheckBlur = true;
+
+        mBlurAnimator = ValueAnimator.ofFloat(0, 1);
+        mBlurAnimator.setDuration(durationMs);
+        mBlurAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                invalidate();
+            }
+        });
+        mBlurAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mBlurAnimator = null;
+                endBlurAnimation(true, true);
+            }
+        });
+        mBlurAnimator.start();
+    }
+
+    /**
+     * Stops the blur radius animation, if any, and the blur of its keyframes.
+     *
+     * @param showBlurredBitmap Whether the last blurred bitmap should replace the animated one
+     */
+    private void cancelBlurAnimation(boolean showBlurredBitmap){
+        mBlurManager.cancelKeyframes();
+        if(mBlurAnimator != null) {
+            ValueAnimator animator = mBlurAnimator;
+            mBlurAnimator = null;
+            animator.removeAllListeners();
+            animator.cancel();
+        }
+        endBlurAnimation(false, showBlurredBitmap);
+    }
+
+    /**
+     * Releases the keyframes of the blur radius animation, if any.
+     *
+     * @param completed Whether the animation reached the end radius, so its last keyframe becomes the blurred bitmap
+     * @param showBlurredBitmap Whether the last blurred bitmap should replace the animated one
+     */
+    private void endBlurAnimation(boolean completed, boolean showBlurredBitmap){
+        BlurKeyframes keyframes = mBlurKeyframes;
+        if(keyframes == null)
+            return;
+        mBlurKeyframes = null;
+
+        mBlurManager.finishKeyframes(keyframes, completed);
+        Bitmap bitmap = mBlurManager.getCurrentBlurredBitmap();
+        if(bitmap == null)
+            bitmap = mBlurManager.getOriginalBitmap();
+        if(showBlurredBitmap && bitmap != null) {
+            mCheckBlur = false;
+            setImageBitmap(bitmap);
+            mCheckBlur = true;
+        }
+        //the frame bitmap is not shown anymore, so it can go back to the pool
+        keyframes.release();
+    }
+
+    /**
+     * Updates only a region of the blurred image, after the image changed only there (e.g. a badge or a progress
+     * drawn over it): the region is drawn and blurred again, and only the area of the view showing it is redrawn.
+     * If the region can't be blurred alone (see BlurManager.blurRegion()), the whole image is blurred again.
+     * If blur is disabled, the view is simply redrawn.
+     *
+     * @param dirty Region of the image that changed, in the coordinates of its intrinsic size
+     */
+    public final void invalidateBlurRegion(Rect dirty){
+        if(!mCheckBlur || mBlurManager == null) {
+            invalidate();
+            return;
+        }
+
+        //the keyframes were blurred from the old image
+        cancelBlurAnimation(true);
+
+        Rect region = new Rect(dirty);
+        Bitmap shownBitmap = mBlurManager.getCurrentBlurredBitmap();
+        if(!mBlurManager.blurRegion(region)) {
+            blurBitmap(false);
+            return;
+        }
+
+        //the region may have been written into a copy of the shown bitmap
+        Bitmap bitmap = mBlurManager.getCurrentBlurredBitmap();
+        if(bitmap != shownBitmap) {
+            mCheckBlur = false;
+            setImageBitmap(bitmap);
+            mCheckBlur = true;
+            return;
+        }
+
+        RectF bounds = new RectF(region);
+        mShapeDrawerManager.mapBitmapRect(bounds);
+        bounds.roundOut(region);
+        //the bitmap is filtered when scaled, so the pixels around the region change, too
+        region.inset(-1, -1);
+        invalidate(region);
+    }
+
+    /**
+     * Shows the content of a target view behind this view, blurred live ("frosted glass"), instead of the image, e.g.
+     * the list scrolling under an app bar. Before each frame is drawn, the region of the target behind the image bounds
+     * is captured at the downsampling rate, blurred with the blur mode and radius, and drawn into the shape.
+     * If blurring takes too long, frames are skipped. If async blur option is enabled, the capture is blurred in background,
+     * and frames are skipped while it's running.
+     * The backdrop is drawn with the scale type of the view, so use one that fills the view (e.g. fitXY or centerCrop).
+     *
+     * @param target View whose content behind this view is blurred. If null, the image is shown again
+     */
+    public final void setBlurBackdrop(View target){
+        if(mBlurBackdrop != null) {
+            if(mBlurBackdrop.getTarget() == target)
+                return;
+            mBlurBackdrop.release();
+            mBlurBackdrop = null;
+            mBackdropDrawable = null;
+            mShapeDrawerManager.changeDrawable(getDrawable() != null ? getDrawable().getCurrent() : null);
+            invalidate();
+        }
+        if(target == null)
+            return;
+
+        mBlurBackdrop = new BlurBackdrop(this, target, mBlurManager, mOnBackdropListener);
+        mBlurBackdrop.setBounds(mShapeDrawerManager.getShapeOptions().getImageBounds());
+        if(getWindowToken() != null)
+            mBlurBackdrop.start();
+        invalidate();
+    }
+
+    /** Returns the view whose content behind this view is blurred, or null if the image is shown */
+    public final View getBlurBackdrop(){
+        return mBlurBackdrop != null ? mBlurBackdrop.getTarget() : null;
+    }
+
+    /**
+     * Sets the listener of the settings chosen by the adaptive quality, e.g. to log them. The adaptive quality is enabled
+     * by the frame budget of the blur options: the downsampling rate, and optionally the mode, change to keep live blurs within it.
+     *
+     * @param listener Listener called on the main thread when the downsampling rate or the mode change. Nullable
+     */
+    public final void setOnBlurQualityListener(BlurManager.OnBlurQualityListener listener){
+        if(mBlurManager != null)
+            mBlurManager.setOnBlurQualityListener(listener);
+    }
+
+    /**
+     * Sets the image from a source (an uri, a resource or a file), decoding it directly near the size it's blurred at,
+     * instead of rasterizing it at full resolution: e.g. a big photo blurred at a quarter of the view size is decoded subsampled.
+     * From API 19 each source is decoded into the bitmap of the previous one, if big enough.
+     * If the view has no size yet, the source is decoded as soon as it gets one. It's decoded for the current size and
+     * downsampling rate only, so it may look coarse if the view grows or the blur is disabled later.
+     * If blur is disabled or the source can't be decoded as a bitmap (e.g. a vector drawable), it's set at full resolution,
+     * as setImageURI() or setImageResource() would do.
+     *
+     * @param source Source of the image
+     */
+    public final void setBlurSource(BlurSource source){
+        if(mBlurManager == null || mBlurManager.getBlurMode() == PivBlurMode.DISABLED) {
+            source.setInto(this);
+            return;
+        }
+
+        if(getWidth() <= 0 || getHeight() <= 0) {
+            mPendingBlurSource = source;
+            return;
+        }
+
+        mPendingBlurSource = null;
+        Bitmap bitmap = mBlurManager.decodeSource(source, mDecodedBitmap);
+        if(bitmap == null) {
+            source.setInto(this);
+            return;
+        }
+        mDecodedBitmap = bitmap;
+        //a new drawable, so that the image is rasterized and blurred again, even if the bitmap was reused
+        setImageDrawable(new BitmapDrawable(getResources(), bitmap));
+    }
+
     /**
      * Blur the image, if needed.
      * @return True if the image is blurred and will be set through setBitmap()
@@ -349,7 +695,14 @@ public class PowerfulImageView extends ImageViewWrapper {
      */
     private boolean blurBitmap(boolean changeDrawable){
 
-        if(!mCheckBlur || mBlurManager == null || getDrawable() == null)
+        if(!mCheckBlur || mBlurManager == null)
+            return false;
+
+        //the new image replaces the animated one, and the keyframes may use the old one
+        if(changeDrawable)
+            cancelBlurAnimation(false);
+
+        if(getDrawable() == null)
             return false;
 
         boolean shouldBlur = mBlurManager.shouldBlur(getDrawable().getCurrent(), changeDrawable);
@@ -359,7 +712,14 @@ public class PowerfulImageView extends ImageViewWrapper {
 
         Bitmap blurredBitmap = null;
         if(shouldBlur) {
-            blurredBitmap = mBlurManager.getLastBlurredBitmap();
+            if(mBlurManager.getBlurOptions().isAsync()) {
+                //the image is blurred in background: the last blurred bitmap is shown until the new one is ready
+                mBlurManager.blurAsync(mOnBlurredListener);
+                if(changeDrawable)
+                    blurredBitmap = mBlurManager.getCurrentBlurredBitmap();
+            }
+            else
+                blurredBitmap = mBlurManager.getLastBlurredBitmap();
 
             if(blurredBitmap != null){
                 mCheckBlur = false;
@@ -442,6 +802,60 @@ public class PowerfulImageView extends ImageViewWrapper {
         return mBlurManager.getLastBlurredBitmap();
     }
 
+    /**
+     * Box blurs the original bitmap with several radii at once. It's much faster than blurring the
+     * bitmap several times, since all radii are computed from the same summed area table, which is
+     * kept until the bitmap changes. If static blur option is enabled, the blurred bitmap will be used.
+     *
+     * Don't use this method if you didn't enable blur!
+     *
+     * @param radii Radii to blur the bitmap with
+     * @return A new bitmap for each radius, or null if there is no bitmap to blur or any problem occurs.
+     */
+    public final Bitmap[] getBlurBoxBlurredBitmaps(int... radii) {
+        return mBlurManager.getBoxBlurredBitmaps(radii);
+    }
+
+    /**
+     * Sets the executor that runs Java blur algorithms of all the views, so that blur can share the threads
+     * of the app (e.g. of an image loader). By default a pool of background priority threads is used.
+     *
+     * @param executor Executor to use. If null, the default pool is used
+     */
+    public static void setBlurExecutor(Executor executor) {
+        BlurManager.setExecutor(executor);
+    }
+
+    /**
+     * Returns the cache of the blurred bitmaps shared by all the views: the same image shown by several views,
+     * with the same size and blur options, is blurred only once. Use it to set its maximum size
+     * (setMaxSize(0) disables it) or to read its hit, miss and eviction counters.
+     */
+    public static BlurCache getBlurCache() {
+        return BlurManager.getBlurCache();
+    }
+
+    /**
+     * Returns the metrics of the blurs of all the views, e.g. to be polled by telemetry: how long rasterizing, blurring
+     * (and each pass of Java kernels), creating bitmaps and setting them take for each blur mode, the bytes of the bitmaps
+     * allocated and the renderscript fallbacks. Each stage is also traced in systrace, from API 18.
+     */
+    public static BlurMetrics getBlurMetrics() {
+        return BlurManager.getBlurMetrics();
+    }
+
+    /**
+     * Sets the directory where the results of static blurs of all the views are cached, e.g. a folder inside
+     * Context.getCacheDir(): the same images are not blurred again on next starts, but read from the disk.
+     * The cache is bounded by the passed number of bytes, deleting the least recently used files first.
+     *
+     * @param directory Directory of the cached files. If null, results of static blurs are not cached on disk
+     * @param maxSize Maximum number of bytes of the cached files
+     */
+    public static void setBlurDiskCache(File directory, long maxSize) {
+        BlurManager.setDiskCache(directory, maxSize);
+    }
+
     /**
      * Returns the original bitmap used to blur. If static blur option is enabled, this will be the
      * same as the blurred one, since the original bitmap has been released.
@@ -469,12 +883,19 @@ public class PowerfulImageView extends ImageViewWrapper {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mBlurManager.addContext(true);
+        mBlurManager.addPoolUser();
+        if(mBlurBackdrop != null)
+            mBlurBackdrop.start();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        cancelBlurAnimation(true);
+        if(mBlurBackdrop != null)
+            mBlurBackdrop.stop();
         mBlurManager.removeContext(true);
+        mBlurManager.removePoolUser();
     }
 
     /** Save the state of the view. */
@@ -23,6 +23,36 @@ public final class BlurOptions implements Parcelable {
     /** Number of threads to use to blur the image (no more than available) */
     private int mNumThreads;
 
+    /** Whether box and gaussian 3x3/5x5 Java algorithms should collapse their iterations into a single pass */
+    private boolean mSinglePass;
+
+    /** Whether the vertical pass of Java algorithms is performed over the transposed image */
+    private boolean mTransposeVertical;
+
+    /** Whether the image should be blurred in background */
+    private boolean mAsync;
+
+    /** Maximum number of levels of the pyramid used by the pyramid blur mode */
+    private int mPyramidLevels;
+
+    /** Whether a growing radius of a live gaussian blur should only add the missing blur to the last blurred image */
+    private boolean mIncrementalBlur;
+
+    /** Time in milliseconds a live blur should take, adapting the downsampling rate. If 0, the rate is fixed */
+    private int mFrameBudget;
+
+    /** Whether the adaptive quality can switch to a faster mode */
+    private boolean mAdaptiveMode;
+
+    /** Whether static blurs of bitmaps are downsampled by area averaging, fused with the blur */
+    private boolean mAreaDownsampling;
+
+    /** Whether opaque images blurred with Java algorithms are kept as RGB_565 bitmaps */
+    private boolean mRgb565;
+
+    /** Whether blurred RGB_565 bitmaps are dithered */
+    private boolean mDither;
+
     /** Listener that will update the blur manager on changes, with a weak reference to be sure to not leak memory */
     private WeakReference<BlurOptionsListener> listener;
 
@@ -46,6 +76,16 @@ public final class BlurOptions implements Parcelable {
         this.mIsStaticBlur = other.mIsStaticBlur;
         this.mUseRsFallback = other.mUseRsFallback;
         this.mNumThreads = other.mNumThreads;
+        this.mSinglePass = other.mSinglePass;
+        this.mTransposeVertical = other.mTransposeVertical;
+        this.mAsync = other.mAsync;
+        this.mPyramidLevels = other.mPyramidLevels;
+        this.mIncrementalBlur = other.mIncrementalBlur;
+        this.mFrameBudget = other.mFrameBudget;
+        this.mAdaptiveMode = other.mAdaptiveMode;
+        this.mAreaDownsampling = other.mAreaDownsampling;
+        this.mRgb565 = other.mRgb565;
+        this.mDither = other.mDither;
         this.listener = other.listener;
     }
 
@@ -127,6 +167,173 @@ public final class BlurOptions implements Parcelable {
     }
 
 
+    /**
+     * @return Whether box and gaussian 3x3/5x5 Java algorithms collapse their iterations (radius) into a single pass
+     */
+    public boolean isSinglePass() {
+        return mSinglePass;
+    }
+
+    /**
+     * @param singlePass Whether box and gaussian 3x3/5x5 Java algorithms should collapse their iterations (radius) into
+     *                   a single pass. Up to radius 3 the result is the same, except for rounding. With bigger radii it's
+     *                   approximated by 3 box blurs with the same strength, whose cost doesn't depend on the radius.
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.mSinglePass = singlePass;
+    }
+
+    /**
+     * @return Whether the vertical pass of Java algorithms is performed over the transposed image
+     */
+    public boolean isTransposeVertical() {
+        return mTransposeVertical;
+    }
+
+    /**
+     * @param transposeVertical Whether the vertical pass of separable Java algorithms (stack, gaussian, box3x3/5x5, gaussian3x3/5x5,
+     *                          gaussian_fast, gaussian_recursive) should be performed as a horizontal pass over the
+     *                          transposed image. The result is the same, while the speed depends on the device caches.
+     */
+    public void setTransposeVertical(boolean transposeVertical) {
+        this.mTransposeVertical = transposeVertical;
+    }
+
+    /**
+     * @return Whether the image is blurred in background
+     */
+    public boolean isAsync() {
+        return mAsync;
+    }
+
+    /**
+     * @param async Whether the image should be blurred in background, showing the last blurred image until the new one is ready.
+     *              Requests arriving while blurring supersede the running blur and each other, so only the latest one is performed
+     */
+    public void setAsync(boolean async) {
+        this.mAsync = async;
+    }
+
+    /**
+     * @return Maximum number of levels of the pyramid used by the pyramid blur mode. If it is 0 or negative, levels are added until the image is 1 pixel big
+     */
+    public int getPyramidLevels() {
+        return mPyramidLevels;
+    }
+
+    /**
+     * Sets the maximum number of levels of the pyramid used by the pyramid blur mode. Each level is half the size of the previous one:
+     * more levels make strong blurs cheaper, at the cost of memory (up to a third of the image, with many levels).
+     *
+     * @param pyramidLevels Maximum number of levels. If it is 0 or negative, levels are added until the image is 1 pixel big
+     */
+    public void setPyramidLevels(int pyramidLevels) {
+        this.mPyramidLevels = pyramidLevels;
+    }
+
+    /**
+     * @return Whether a growing radius of a live gaussian blur only adds the missing blur to the last blurred image
+     */
+    public boolean isIncrementalBlur() {
+        return mIncrementalBlur;
+    }
+
+    /**
+     * @param incrementalBlur Whether a growing radius of a live gaussian blur should only add the missing blur to the last blurred image,
+     *                        instead of blurring the original image again. The image is blurred from the original one when the error grows too much
+     */
+    public void setIncrementalBlur(boolean incrementalBlur) {
+        this.mIncrementalBlur = incrementalBlur;
+    }
+
+    /**
+     * @return Time in milliseconds a live blur should take, adapting the downsampling rate to it. If it is 0 or negative, the rate of the options is always used
+     */
+    public int getFrameBudget() {
+        return mFrameBudget;
+    }
+
+    /**
+     * @param frameBudget Time in milliseconds a live blur should take (e.g. 8). The time of each blur is measured, and the downsampling rate changes
+     *                    to stay within it, starting from the rate of these options. If it is 0 or negative, the rate of these options is always used.
+     *                    It is ignored if static blur is enabled
+     */
+    public void setFrameBudget(int frameBudget) {
+        this.mFrameBudget = frameBudget;
+    }
+
+    /**
+     * @return Whether the adaptive quality can switch to a faster mode, if the downsampling rate alone is not enough
+     */
+    public boolean isAdaptiveMode() {
+        return mAdaptiveMode;
+    }
+
+    /**
+     * @param adaptiveMode Whether the adaptive quality (see setFrameBudget()) can switch to a similar mode whose cost does not depend on the radius,
+     *                     if blurs exceed the budget even at the maximum downsampling rate. The mode selected by the app is restored when it selects another one
+     */
+    public void setAdaptiveMode(boolean adaptiveMode) {
+        this.mAdaptiveMode = adaptiveMode;
+    }
+
+    /**
+     * @return Whether static blurs of bitmaps are downsampled by area averaging, fused with the first pass of separable Java algorithms
+     */
+    public boolean isAreaDownsampling() {
+        return mAreaDownsampling;
+    }
+
+    /**
+     * Sets whether static blurs of bitmaps bigger than the downsampled size should be downsampled by area averaging (each pixel
+     * is the average of all the pixels it covers) and blurred at once, when using a separable Java algorithm
+     * (stack, gaussian, box3x3/5x5, gaussian3x3/5x5, gaussian_fast, gaussian_recursive). The downsampled bitmap is never created,
+     * and the bitmap is read only once, while being blurred. Other drawables, modes and live blurs are downsampled as usual.
+     * Asynchronous blurs are downsampled as usual too, since the blur would run on the main thread, while the image is set.
+     *
+     * @param areaDownsampling Whether static blurs of bitmaps should be downsampled by area averaging, fused with the blur
+     */
+    public void setAreaDownsampling(boolean areaDownsampling) {
+        this.mAreaDownsampling = areaDownsampling;
+    }
+
+    /**
+     * @return Whether opaque images blurred with Java algorithms are kept as RGB_565 bitmaps, with half the memory of ARGB_8888 ones
+     */
+    public boolean isRgb565() {
+        return mRgb565;
+    }
+
+    /**
+     * Sets whether opaque images blurred with Java algorithms should be kept as RGB_565 bitmaps: both the original bitmap
+     * and the blurred ones take half the memory of ARGB_8888 ones, at the cost of 32 levels for red and blue and 64 for green,
+     * instead of 256. The blur smooths the quantization of the original bitmap, but leaves visible bands in wide gradients,
+     * unless dithering is enabled (see setDither()). Images with transparency, and renderscript algorithms, which only blur
+     * 4 channel bitmaps, use ARGB_8888 bitmaps anyway. It applies to images set after the change.
+     *
+     * @param rgb565 Whether opaque images blurred with Java algorithms should be kept as RGB_565 bitmaps
+     */
+    public void setRgb565(boolean rgb565) {
+        this.mRgb565 = rgb565;
+    }
+
+    /**
+     * @return Whether blurred RGB_565 bitmaps are dithered
+     */
+    public boolean isDither() {
+        return mDither;
+    }
+
+    /**
+     * Sets whether blurred RGB_565 bitmaps (see setRgb565()) should be dithered with an ordered 4x4 pattern,
+     * so that the gradients left by the blur don't show bands. It costs a pass over the blurred pixels.
+     *
+     * @param dither Whether blurred RGB_565 bitmaps should be dithered
+     */
+    public void setDither(boolean dither) {
+        this.mDither = dither;
+    }
+
 
 
 
@@ -153,6 +360,16 @@ public final class BlurOptions implements Parcelable {
         dest.writeByte((byte) (mIsStaticBlur ? 1 : 0));
         dest.writeByte((byte) (mUseRsFallback ? 1 : 0));
         dest.writeInt(mNumThreads);
+        dest.writeByte((byte) (mSinglePass ? 1 : 0));
+        dest.writeByte((byte) (mTransposeVertical ? 1 : 0));
+        dest.writeByte((byte) (mAsync ? 1 : 0));
+        dest.writeInt(mPyramidLevels);
+        dest.writeByte((byte) (mIncrementalBlur ? 1 : 0));
+        dest.writeInt(mFrameBudget);
+        dest.writeByte((byte) (mAdaptiveMode ? 1 : 0));
+        dest.writeByte((byte) (mAreaDownsampling ? 1 : 0));
+        dest.writeByte((byte) (mRgb565 ? 1 : 0));
+        dest.writeByte((byte) (mDither ? 1 : 0));
     }
 
     protected BlurOptions(Parcel in) {
@@ -160,5 +377,15 @@ public final class BlurOptions implements Parcelable {
         mIsStaticBlur = in.readByte() != 0;
         mUseRsFallback = in.readByte() != 0;
         mNumThreads = in.readInt();
+        mSinglePass = in.readByte() != 0;
+        mTransposeVertical = in.readByte() != 0;
+        mAsync = in.readByte() != 0;
+        mPyramidLevels = in.readInt();
+        mIncrementalBlur = in.readByte() != 0;
+        mFrameBudget = in.readInt();
+        mAdaptiveMode = in.readByte() != 0;
+        mAreaDownsampling = in.readByte() != 0;
+        mRgb565 = in.readByte() != 0;
+        mDither = in.readByte() != 0;
     }
 }
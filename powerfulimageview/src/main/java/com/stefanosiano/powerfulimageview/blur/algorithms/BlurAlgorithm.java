@@ -20,8 +20,10 @@ interface BlurAlgorithm {
      * @param original Bitmap to blur
      * @param radius Radius of the algorithm
      * @param options Options of the blurring
-     * @return The blurred bitmap
+     * @param reusable Bitmap of a previous blur that can be overwritten with the result, if static blur is disabled
+     *                 and the pool allows writing it in place (see BitmapPool). Nullable
+     * @return The blurred bitmap. If static blur is disabled, it's the reusable bitmap or a bitmap checked out from the pool
      * @throws RenderscriptException If renderscript is used and something goes wrong with it
      */
-    Bitmap blur(Bitmap original, int radius, BlurOptions options) throws RenderscriptException;
+    Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException;
 }
@@ -0,0 +1,396 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+
+/**
+ * Live blur of the content of a target view behind another view, e.g. a list scrolling under a "frosted glass" app bar.
+ * Before each frame is drawn, the region of the target behind the view is captured at the downsampling rate of the
+ * BlurManager (adapted to the frame budget of the options, if set), and blurred with the mode and the radius of the BlurManager into the output bitmap, which the view shows.
+ *
+ * When a blur takes more than FRAME_BUDGET_MS, the next frames are skipped accordingly. When blurring in background,
+ * frames are skipped while a blur is running. Capture and output bitmaps come from the bitmap pool and are reused
+ * while their size doesn't change, so that no bitmap is allocated while the target scrolls.
+ */
+
+public final class BlurBackdrop implements ViewTreeObserver.OnPreDrawListener {
+
+    /** Time of a frame the blur may take, in milliseconds: for each budget the last blur exceeded, a frame is skipped */
+    private static final long FRAME_BUDGET_MS = 8;
+
+    /** View showing the blurred backdrop */
+    private final View mView;
+
+    /** View whose content is blurred */
+    private final View mTarget;
+
+    /** Manager providing the algorithm, the radius and the options of the blur */
+    private final BlurManager mBlurManager;
+
+    /** Listener called every time the output bitmap is updated */
+    private final OnBackdropListener mListener;
+
+    /** Handler used to deliver the results of background blurs on the main thread */
+    private final Handler mMainHandler;
+
+    /** Blur performed in background. Only one runs at a time, so it's reused */
+    private final BackdropJob mJob;
+
+    /** Region of the view filled by the backdrop, in its coordinates */
+    private final RectF mBounds;
+
+    /** Position of the view in the window, reused by every capture */
+    private final int[] mViewLocation;
+
+    /** Position of the target in the window, reused by every capture */
+    private final int[] mTargetLocation;
+
+    /** Paint replacing the output bitmap with a blurred one */
+    private final Paint mCopyPaint;
+
+    /** Bitmap the target is drawn into */
+    private Bitmap mCapture;
+
+    /** Canvas drawing into the capture bitmap */
+    private Canvas mCaptureCanvas;
+
+    /** Bitmap shown by the view */
+    private Bitmap mOutput;
+
+    /** Canvas drawing into the output bitmap */
+    private Canvas mOutputCanvas;
+
+    /** Observer the pre draw listener was added to, if started */
+    private ViewTreeObserver mObserver;
+
+    /** Whether the target is being drawn into the capture bitmap: the view must not draw itself meanwhile */
+    private boolean mIsCapturing;
+
+    /** Number of next frames to skip, since the last blur exceeded the budget */
+    private int mSkipFrames;
+
+    /** Whether a frame was drawn while the background blur was running, so its content must be captured */
+    private boolean mIsFramePending;
+
+    /** Whether the next frame only shows the last result of a background blur, so its content is already blurred */
+    private boolean mIsResultFrame;
+
+    /** Whether bitmaps were released while a background blur was running, so they are released when it ends */
+    private boolean mIsReleased;
+
+    /**
+     * Live blur of the content of a target view behind another view.
+     * It doesn't capture anything until start() is called.
+     *
+     * @param view View showing the blurred backdrop
+     * @param target View whose content behind the view is blurred
+     * @param blurManager Manager providing the algorithm, the radius and the options of the blur
+     * @param listener Listener called on the main thread every time the output bitmap is updated
+     */
+    public BlurBackdrop(View view, View target, BlurManager blurManager, OnBackdropListener listener) {
+        this.mView = view;
+        this.mTarget = target;
+        this.mBlurManager = blurManager;
+        this.mListener = listener;
+        this.mMainHandler = new Handler(Looper.getMainLooper());
+        this.mJob = new BackdropJob();
+        this.mBounds = new RectF();
+        this.mViewLocation = new int[2];
+        this.mTargetLocation = new int[2];
+        this.mCopyPaint = new Paint();
+        this.mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    /** Returns the view whose content is blurred */
+    public View getTarget() {
+        return mTarget;
+    }
+
+    /** Sets the region of the view filled by the backdrop, in its coordinates */
+    public void setBounds(RectF bounds) {
+        mBounds.set(bounds);
+    }
+
+    /** Returns whether the target is being drawn into the capture bitmap: the view must not draw itself meanwhile */
+    public boolean isCapturing() {
+        return mIsCapturing;
+    }
+
+    /** Returns the bitmap shown by the view, or null if nothing was blurred yet */
+    public Bitmap getOutput() {
+        return mOutput;
+    }
+
+    /** Starts capturing and blurring the target before each frame is drawn. Call it when the view is attached to the window */
+    public void start() {
+        if(mObserver != null)
+            return;
+        mIsReleased = false;
+        mObserver = mView.getViewTreeObserver();
+        mObserver.addOnPreDrawListener(this);
+    }
+
+    /** Stops capturing the target. A background blur still running is discarded */
+    public void stop() {
+        if(mObserver == null)
+            return;
+        //the observer may have been replaced, e.g. if the view was detached
+        ViewTreeObserver observer = mObserver.isAlive() ? mObserver : mView.getViewTreeObserver();
+        observer.removeOnPreDrawListener(this);
+        mObserver = null;
+        mSkipFrames = 0;
+        mIsFramePending = false;
+        mIsResultFrame = false;
+    }
+
+    /** Stops capturing the target and releases the bitmaps: they go back to the pool, and they must not be used anymore */
+    public void release() {
+        stop();
+        mIsReleased = true;
+        //the background blur is still reading the capture bitmap
+        if(!mJob.mIsRunning)
+            releaseBitmaps();
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        //the blur can't keep up: the content is captured when it ends
+        if(mJob.mIsRunning) {
+            mIsFramePending = true;
+            return true;
+        }
+        //the content didn't change since the last capture
+        if(mIsResultFrame) {
+            mIsResultFrame = false;
+            return true;
+        }
+        //the last frame skipped must be captured anyway, so another frame is requested
+        if(mSkipFrames > 0) {
+            mSkipFrames--;
+            mView.postInvalidate();
+            return true;
+        }
+        mBlurManager.applyQuality();
+        int generation = mBlurManager.getQualityGeneration();
+        long start = SystemClock.elapsedRealtime();
+        if(!capture())
+            return true;
+
+        BlurAlgorithm algorithm = mBlurManager.getBlurAlgorithm();
+        if(mBlurManager.getBlurOptions().isAsync()) {
+            mJob.start(algorithm, mBlurManager.getBlurMode(), mBlurManager.getRadius(), mBlurManager.getBlurOptions(), generation);
+            return true;
+        }
+
+        Bitmap result = null;
+        try {
+            //the output bitmap is not drawn until the next frame, so it can be overwritten
+            result = BlurManager.blurTraced(algorithm, mBlurManager.getBlurMode(), mCapture, mBlurManager.getRadius(), mBlurManager.getBlurOptions(), mOutput);
+        } catch (RenderscriptException e) {
+            mBlurManager.onRenderscriptError();
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        mSkipFrames = (int) (elapsed / FRAME_BUDGET_MS);
+        if(result != null)
+            mBlurManager.onBlurTimed(generation, elapsed);
+        show(result);
+        return true;
+    }
+
+    /**
+     * Draws the region of the target behind the view into the capture bitmap, scaled down by the downsampling rate.
+     *
+     * @return False if there is nothing to capture
+     */
+    private boolean capture() {
+        float rate = mBlurManager.getDownSamplingRate();
+        int width = Math.max(1, (int) (mBounds.width() / rate));
+        int height = Math.max(1, (int) (mBounds.height() / rate));
+        if(mBounds.width() <= 0 || mBounds.height() <= 0 || mTarget.getWidth() <= 0 || mTarget.getHeight() <= 0)
+            return false;
+
+        if(mCapture == null || mCapture.getWidth() != width || mCapture.getHeight() != height) {
+            releaseBitmap(mCapture);
+            mCapture = SharedBlurManager.getBitmapPool().acquire(width, height, Bitmap.Config.ARGB_8888);
+            mCaptureCanvas = new Canvas(mCapture);
+        }
+
+        mView.getLocationInWindow(mViewLocation);
+        mTarget.getLocationInWindow(mTargetLocation);
+
+        mCapture.eraseColor(Color.TRANSPARENT);
+        int saveCount = mCaptureCanvas.save();
+        mCaptureCanvas.scale(width / mBounds.width(), height / mBounds.height());
+        //the target is drawn at its position relative to the bounds. Its own scroll is applied by its parent, when drawing it
+        mCaptureCanvas.translate(mTargetLocation[0] - mViewLocation[0] - mBounds.left - mTarget.getScrollX(),
+                mTargetLocation[1] - mViewLocation[1] - mBounds.top - mTarget.getScrollY());
+        mIsCapturing = true;
+        try {
+            mTarget.draw(mCaptureCanvas);
+        } finally {
+            mIsCapturing = false;
+            mCaptureCanvas.restoreToCount(saveCount);
+        }
+        return true;
+    }
+
+    /**
+     * Shows a blurred capture through the output bitmap. The output bitmap is replaced only when its size changes,
+     * otherwise the result is copied into it and released.
+     *
+     * @param result Blurred bitmap. It may be the output or the capture bitmap itself. Nullable
+     * @return Whether the result was shown
+     */
+    private boolean show(Bitmap result) {
+        if(result == null || result.isRecycled())
+            return false;
+
+        if(result != mOutput) {
+            boolean isResized = mOutput == null || mOutput.getWidth() != result.getWidth() || mOutput.getHeight() != result.getHeight();
+            if(isResized && result != mCapture && result.isMutable()) {
+                releaseBitmap(mOutput);
+                mOutput = result;
+                mOutputCanvas = null;
+            }
+            else {
+                if(isResized) {
+                    releaseBitmap(mOutput);
+                    mOutput = SharedBlurManager.getBitmapPool().acquire(result.getWidth(), result.getHeight(), Bitmap.Config.ARGB_8888);
+                    mOutputCanvas = null;
+                }
+                if(mOutputCanvas == null)
+                    mOutputCanvas = new Canvas(mOutput);
+                mOutputCanvas.drawBitmap(result, 0, 0, mCopyPaint);
+                if(result != mCapture)
+                    releaseBitmap(result);
+            }
+        }
+        mListener.onBackdropBlurred(mOutput);
+        return true;
+    }
+
+    /** Called on the main thread when the background blur ends, even if it failed */
+    private void onJobEnded(Bitmap result, boolean renderscriptFailed) {
+        if(renderscriptFailed)
+            mBlurManager.onRenderscriptError();
+
+        //stopped meanwhile: the result is not shown
+        if(mObserver == null) {
+            if(result != null && result != mCapture && result != mOutput)
+                releaseBitmap(result);
+            if(mIsReleased)
+                releaseBitmaps();
+            return;
+        }
+
+        //showing the result draws a new frame: its content must be captured only if it changed meanwhile
+        boolean isShown = show(result);
+        mIsResultFrame = isShown && !mIsFramePending;
+        if(!isShown && mIsFramePending)
+            mView.postInvalidate();
+        mIsFramePending = false;
+    }
+
+    /** Releases the capture and the output bitmaps */
+    private void releaseBitmaps() {
+        releaseBitmap(mCapture);
+        releaseBitmap(mOutput);
+        mCapture = null;
+        mCaptureCanvas = null;
+        mOutput = null;
+        mOutputCanvas = null;
+    }
+
+    /** Releases a bitmap: bitmaps of the pool go back to it, while the others are recycled */
+    private static void releaseBitmap(Bitmap bitmap) {
+        if(bitmap != null && !SharedBlurManager.getBitmapPool().release(bitmap))
+            bitmap.recycle();
+    }
+
+
+    /** Listener of the blurred backdrop */
+    public interface OnBackdropListener {
+
+        /**
+         * Called on the main thread every time the backdrop has been blurred. The output bitmap is usually
+         * the same: it changes only when the size of the view or the downsampling rate changes.
+         *
+         * @param bitmap The output bitmap, containing the blurred backdrop
+         */
+        void onBackdropBlurred(Bitmap bitmap);
+    }
+
+    /** Blur of the capture bitmap performed in background. The capture is not changed while it's running */
+    private final class BackdropJob implements Runnable {
+        private BlurAlgorithm mAlgorithm;
+        private PivBlurMode mMode;
+        private int mRadius;
+        private BlurOptions mOptions;
+
+        /** Whether the job is running. Used on main thread only */
+        private boolean mIsRunning;
+
+        /** Generation of the settings of the adaptive quality when the capture was taken */
+        private int mGeneration;
+
+        private Bitmap mResult;
+        private boolean mRenderscriptFailed;
+
+        /** Time of the blur, in milliseconds */
+        private long mTime;
+
+        /** Delivers the result on the main thread */
+        private final Runnable mOnEnded = new Runnable() {
+            @Override
+            public void run() {
+                Bitmap result = mResult;
+                boolean renderscriptFailed = mRenderscriptFailed;
+                mResult = null;
+                mAlgorithm = null;
+                mIsRunning = false;
+                if(result != null)
+                    mBlurManager.onBlurTimed(mGeneration, mTime);
+                onJobEnded(result, renderscriptFailed);
+            }
+        };
+
+        /** Starts blurring the capture bitmap in background */
+        void start(BlurAlgorithm algorithm, PivBlurMode mode, int radius, BlurOptions options, int generation) {
+            mAlgorithm = algorithm;
+            mMode = mode;
+            mRadius = radius;
+            mOptions = options;
+            mGeneration = generation;
+            mRenderscriptFailed = false;
+            mIsRunning = true;
+            SharedBlurManager.getExecutor().execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                //the output bitmap is shown meanwhile, so the result goes into a bitmap of the pool
+                mResult = BlurManager.blurTraced(mAlgorithm, mMode, mCapture, mRadius, mOptions, null);
+                mTime = SystemClock.elapsedRealtime() - start;
+            } catch (RenderscriptException e) {
+                mRenderscriptFailed = true;
+            } finally {
+                mMainHandler.post(mOnEnded);
+            }
+        }
+    }
+}
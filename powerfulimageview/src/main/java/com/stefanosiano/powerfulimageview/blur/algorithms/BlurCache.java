@@ -0,0 +1,309 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache of blurred bitmaps shared by all instances of BlurManager, so that the same image shown by several views
+ * (e.g. the same cover in a feed) is blurred only once.
+ *
+ * Bitmaps are identified by their source bitmap, the size they were downsampled to, the blur mode, the radius,
+ * the downsampling rate, their config and the options that change their pixels. The cache is bounded by the number of bytes of its bitmaps: the least recently used ones
+ * are evicted first. Each bitmap checked out from the cache is reference counted, and it's recycled only when it's
+ * evicted and all its owners released it, so a bitmap still shown by a view is never recycled.
+ *
+ * If a bitmap is requested while another thread is blurring the same source with the same parameters,
+ * the request waits for that blur instead of starting a new one.
+ */
+
+public final class BlurCache {
+
+    /** Default maximum number of bytes of the cached bitmaps */
+    public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    /** Cached bitmaps, in least recently used order */
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Entries of the bitmaps checked out from the cache or still cached */
+    private final IdentityHashMap<Bitmap, Entry> mBitmaps = new IdentityHashMap<>();
+
+    /** Blurs currently running for a missing key, so that identical requests wait for them */
+    private final HashMap<Key, Thread> mFlights = new HashMap<>();
+
+    /** Maximum number of bytes of the cached bitmaps */
+    private long mMaxSize;
+
+    /** Number of bytes of the cached bitmaps */
+    private long mSize;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    BlurCache(long maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    /** Returns the maximum number of bytes of the cached bitmaps */
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of the cached bitmaps, evicting the least recently used ones if needed.
+     *
+     * @param maxSize Maximum number of bytes. If it's 0, blurred bitmaps are not cached anymore
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.mMaxSize = Math.max(0, maxSize);
+        trimToSize(mMaxSize);
+    }
+
+    /** Returns the number of bytes of the cached bitmaps */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /** Returns the number of requests that found their bitmap in the cache */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /** Returns the number of requests that didn't find their bitmap in the cache, and had to blur it */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /** Returns the number of bitmaps evicted from the cache */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /** Evicts all the cached bitmaps. Bitmaps checked out are recycled only when all their owners release them */
+    public synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    /** Returns whether blurred bitmaps are cached */
+    synchronized boolean isEnabled() {
+        return mMaxSize > 0;
+    }
+
+    /** Returns whether the bitmap of the key is cached, without changing its position in the least recently used order */
+    synchronized boolean contains(Key key) {
+        return mEntries.containsKey(key);
+    }
+
+    /**
+     * Checks out the bitmap of the key, if cached. If another thread is blurring it, waits for it to finish.
+     * If null is returned, the caller must blur the bitmap and then call put(), even if the blur failed, so that
+     * the requests waiting for it go on.
+     *
+     * @return The cached bitmap, whose owners include the caller now, or null if it's not cached
+     * @throws InterruptedException If the thread is interrupted while waiting for another thread
+     */
+    synchronized Bitmap acquire(Key key) throws InterruptedException {
+        while (true) {
+            Entry entry = mEntries.get(key);
+            if(entry != null && !entry.mBitmap.isRecycled()) {
+                entry.mReferences++;
+                mHitCount++;
+                return entry.mBitmap;
+            }
+            //someone may have recycled it anyway
+            if(entry != null)
+                evict(key, entry);
+
+            //the thread blurring the bitmap never waits for itself
+            Thread owner = mFlights.get(key);
+            if(owner == null || owner == Thread.currentThread()) {
+                mFlights.put(key, Thread.currentThread());
+                mMissCount++;
+                return null;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Caches the bitmap blurred after acquire() returned null, and wakes up the requests waiting for it.
+     * The caller remains one of its owners, and must release it when it's not needed anymore.
+     *
+     * @param key Key of the bitmap
+     * @param bitmap Blurred bitmap. If null (the blur failed or was interrupted), nothing is cached
+     */
+    synchronized void put(Key key, Bitmap bitmap) {
+        mFlights.remove(key);
+        notifyAll();
+        if(bitmap == null || bitmap.isRecycled() || mBitmaps.containsKey(bitmap))
+            return;
+
+        Entry entry = new Entry(bitmap);
+        Entry old = mEntries.put(key, entry);
+        if(old != null) {
+            mSize -= old.mBytes;
+            old.mEvicted = true;
+            if(old.mReferences == 0)
+                recycle(old);
+        }
+        mBitmaps.put(bitmap, entry);
+        mSize += entry.mBytes;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Removes an owner from a bitmap checked out from the cache. Other bitmaps are ignored.
+     *
+     * @return True if the bitmap was checked out from the cache, false otherwise
+     */
+    synchronized boolean release(Bitmap bitmap) {
+        Entry entry = bitmap == null ? null : mBitmaps.get(bitmap);
+        if(entry == null)
+            return false;
+        entry.mReferences--;
+        if(entry.mReferences <= 0 && entry.mEvicted)
+            recycle(entry);
+        return true;
+    }
+
+    /** Evicts the least recently used bitmaps, until their size is not more than the passed one */
+    private void trimToSize(long maxSize) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            mSize -= entry.mBytes;
+            mEvictionCount++;
+            entry.mEvicted = true;
+            if(entry.mReferences == 0)
+                recycle(entry);
+        }
+    }
+
+    private void evict(Key key, Entry entry) {
+        mEntries.remove(key);
+        mSize -= entry.mBytes;
+        mEvictionCount++;
+        entry.mEvicted = true;
+        if(entry.mReferences == 0)
+            recycle(entry);
+    }
+
+    private void recycle(Entry entry) {
+        mBitmaps.remove(entry.mBitmap);
+        entry.mBitmap.recycle();
+    }
+
+
+    /** Cached bitmap with its owners */
+    private static final class Entry {
+        private final Bitmap mBitmap;
+        private final long mBytes;
+
+        /** Number of owners of the bitmap, other than the cache itself */
+        private int mReferences;
+
+        /** Whether the bitmap is not cached anymore, so it's recycled when its owners release it */
+        private boolean mEvicted;
+
+        Entry(Bitmap bitmap) {
+            this.mBitmap = bitmap;
+            this.mBytes = (long) bitmap.getRowBytes() * bitmap.getHeight();
+            this.mReferences = 1;
+        }
+    }
+
+    /**
+     * Identity of a blurred bitmap. The source bitmap is weakly referenced, so that the cache doesn't keep it alive,
+     * and its generation id is used too, so that a source whose pixels changed is blurred again.
+     * The config of the result and all the options that change its pixels are part of the key, so that views with
+     * different options never share their results.
+     */
+    static final class Key {
+        private final WeakReference<Object> source;
+        private final int sourceHash;
+        private final int generationId;
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+        private final PivBlurMode mode;
+        private final int radius;
+        private final float downSamplingRate;
+        private final boolean singlePass;
+        private final int pyramidLevels;
+        private final boolean areaDownsampling;
+        private final boolean rgb565;
+        private final boolean dither;
+
+        /**
+         * Creates the key of the source bitmap blurred with the passed parameters.
+         *
+         * @param config Config of the blurred bitmap
+         * @param downSamplingRate Downsampling rate actually used, which can differ from the one of the options
+         */
+        Key(Bitmap source, int width, int height, Bitmap.Config config, PivBlurMode mode, int radius, float downSamplingRate, BlurOptions options) {
+            this(source, source.getGenerationId(), width, height, config, mode, radius, downSamplingRate, options);
+        }
+
+        /** Creates the key of a source identified by the passed object and generation id */
+        Key(Object source, int generationId, int width, int height, Bitmap.Config config, PivBlurMode mode, int radius, float downSamplingRate, BlurOptions options) {
+            this.source = new WeakReference<>(source);
+            this.sourceHash = System.identityHashCode(source);
+            this.generationId = generationId;
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            this.mode = mode;
+            this.radius = radius;
+            this.downSamplingRate = downSamplingRate;
+            this.singlePass = options.isSinglePass();
+            this.pyramidLevels = options.getPyramidLevels();
+            this.areaDownsampling = options.isAreaDownsampling();
+            this.rgb565 = options.isRgb565();
+            this.dither = options.isDither();
+        }
+
+        /** Returns the parameters of the blur, without the source bitmap */
+        String getDescription() {
+            return width + "x" + height + "_" + config.name() + "_" + mode.name() + "_" + radius + "_" + downSamplingRate +
+                    (singlePass ? "_s" : "") + "_p" + pyramidLevels + (areaDownsampling ? "_a" : "") + (rgb565 ? "_565" : "") + (dither ? "_d" : "");
+        }
+
+        @Override public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            Object bitmap = source.get();
+            return bitmap != null && bitmap == key.source.get() && generationId == key.generationId &&
+                    width == key.width && height == key.height && config == key.config && mode == key.mode && radius == key.radius &&
+                    Float.compare(downSamplingRate, key.downSamplingRate) == 0 && singlePass == key.singlePass &&
+                    pyramidLevels == key.pyramidLevels && areaDownsampling == key.areaDownsampling && rgb565 == key.rgb565 && dither == key.dither;
+        }
+
+        @Override public int hashCode() {
+            int result = sourceHash;
+            result = 31 * result + generationId;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + config.hashCode();
+            result = 31 * result + mode.hashCode();
+            result = 31 * result + radius;
+            result = 31 * result + Float.floatToIntBits(downSamplingRate);
+            result = 31 * result + (singlePass ? 1 : 0);
+            result = 31 * result + pyramidLevels;
+            result = 31 * result + (areaDownsampling ? 1 : 0);
+            result = 31 * result + (rgb565 ? 1 : 0);
+            return 31 * result + (dither ? 1 : 0);
+        }
+    }
+}
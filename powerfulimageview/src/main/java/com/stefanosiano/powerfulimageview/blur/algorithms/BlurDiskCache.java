@@ -0,0 +1,246 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.stefanosiano.powerfulimageview.core.blur.ScratchPool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of the results of static blurs on disk, so that the same images are not blurred again after the process dies.
+ *
+ * Each bitmap is saved into its own file, as a header followed by the raw pixels: it's memory mapped and copied
+ * straight into the bitmap, without decoding it. Files are written into a temporary file and then renamed,
+ * so a file is never read while it's being written, even by another process.
+ * The cache is bounded by the number of bytes of its files: the least recently used ones are deleted first.
+ *
+ * Since the cache outlives the bitmaps, files are identified by a hash of the pixels of the image to blur.
+ */
+
+final class BlurDiskCache {
+
+    /** Extension of the cached files */
+    private static final String EXTENSION = ".pivb";
+
+    /** Extension of the files being written */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** First int of every file: "PIVB" */
+    private static final int MAGIC = 0x50495642;
+
+    /** Version of the file format */
+    private static final int VERSION = 1;
+
+    /** Size of the header: magic, version, width and height */
+    private static final int HEADER_SIZE = 16;
+
+    /** Directory of the cached files */
+    private final File mDirectory;
+
+    /** Maximum number of bytes of the cached files */
+    private final long mMaxSize;
+
+    /** Size of the cached files, in least recently used order. Loaded on first use */
+    private LinkedHashMap<String, Long> mFiles;
+
+    /** Number of bytes of the cached files */
+    private long mSize;
+
+    BlurDiskCache(File directory, long maxSize) {
+        this.mDirectory = directory;
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the name of the file of the original bitmap blurred with the parameters of the key.
+     * The pixels of the bitmap are hashed, so it must be called before the blur changes them.
+     */
+    static String getFileName(BlurCache.Key key, Bitmap original) {
+        int w = original.getWidth();
+        int h = original.getHeight();
+        ScratchPool pool = SharedBlurManager.getScratchPool();
+        int[] pix = pool.acquire(w * h);
+        try {
+            original.getPixels(pix, 0, w, 0, 0, w, h);
+            //64 bit FNV-1a over the pixels
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < w * h; i++)
+                hash = (hash ^ pix[i]) * 0x100000001b3L;
+            return Long.toHexString(hash) + "_" + key.getDescription() + EXTENSION;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Returns a new bitmap with the content of the file, or null if it's not cached or it can't be read.
+     *
+     * @param name Name of the file, as returned by getFileName()
+     */
+    Bitmap get(String name) {
+        synchronized (this) {
+            //the access moves the file to the end of the least recently used order
+            if(getFiles().get(name) == null)
+                return null;
+        }
+
+        File file = new File(mDirectory, name);
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int w = buffer.getInt(8);
+            int h = buffer.getInt(12);
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || w <= 0 || h <= 0 || channel.size() != HEADER_SIZE + 4L * w * h)
+                throw new IOException("Invalid blur cache file " + name);
+
+            Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            buffer.position(HEADER_SIZE);
+            bitmap.copyPixelsFromBuffer(buffer);
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        } catch (Exception e) {
+            Log.w(BlurDiskCache.class.getSimpleName(), e.getLocalizedMessage() == null ? e.toString() : e.getLocalizedMessage());
+            remove(name);
+            return null;
+        } finally {
+            close(randomAccessFile);
+        }
+    }
+
+    /**
+     * Saves the bitmap into the file. Its pixels are copied immediately, so the bitmap can be recycled as soon as
+     * this method returns, while the file is written on the executor.
+     *
+     * @param name Name of the file, as returned by getFileName()
+     * @param bitmap Bitmap to save. Only ARGB_8888 bitmaps are saved
+     * @param executor Executor used to write the file
+     */
+    void put(final String name, Bitmap bitmap, Executor executor) {
+        if(bitmap == null || bitmap.isRecycled() || bitmap.getConfig() != Bitmap.Config.ARGB_8888)
+            return;
+
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * w * h);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(w).putInt(h);
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.rewind();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(name, buffer);
+            }
+        });
+    }
+
+    /** Writes the buffer into a temporary file, then renames it into the cached file */
+    private void write(String name, ByteBuffer buffer) {
+        if(!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            return;
+
+        File temp = new File(mDirectory, name + "." + Thread.currentThread().getId() + TEMP_EXTENSION);
+        File file = new File(mDirectory, name);
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(temp);
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            stream.getFD().sync();
+            close(stream);
+            stream = null;
+            if(!temp.renameTo(file))
+                throw new IOException("Cannot rename " + temp.getName());
+
+            synchronized (this) {
+                Long old = getFiles().put(name, file.length());
+                mSize += file.length() - (old == null ? 0 : old);
+                trimToSize(mMaxSize);
+            }
+        } catch (IOException e) {
+            Log.w(BlurDiskCache.class.getSimpleName(), e.getLocalizedMessage());
+            close(stream);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    /** Deletes a file that can't be read */
+    private synchronized void remove(String name) {
+        Long size = getFiles().remove(name);
+        if(size != null)
+            mSize -= size;
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, name).delete();
+    }
+
+    /** Deletes the least recently used files, until their size is not more than the passed one */
+    private void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Long>> iterator = getFiles().entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> file = iterator.next();
+            mSize -= file.getValue();
+            iterator.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, file.getKey()).delete();
+        }
+    }
+
+    /** Returns the cached files, loading them from the directory on first use, ordered by their last use */
+    private LinkedHashMap<String, Long> getFiles() {
+        if(mFiles != null)
+            return mFiles;
+
+        mFiles = new LinkedHashMap<>(16, 0.75f, true);
+        File[] files = mDirectory.listFiles();
+        if(files == null)
+            return mFiles;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : m1 == m2 ? 0 : 1;
+            }
+        });
+        for (File file : files) {
+            //temporary files left by a process that died while writing them
+            if(file.getName().endsWith(TEMP_EXTENSION))
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            else if(file.getName().endsWith(EXTENSION)) {
+                mFiles.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trimToSize(mMaxSize);
+        return mFiles;
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if(closeable != null)
+                closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+/**
+ * Keyframes of an animation of the blur radius: the original bitmap blurred with a few radii between the start
+ * and the end one. Each frame of the animation cross-fades the two keyframes around its radius into a frame bitmap,
+ * so that no blur runs while animating.
+ *
+ * Keyframes and the frame bitmap are checked out from the pool of the blurred bitmaps, and go back to it on release().
+ */
+
+public final class BlurKeyframes {
+
+    /** Radii of the keyframes, from the start of the animation to its end */
+    private final int[] mRadii;
+
+    /** Blurred bitmaps of the keyframes. A radius of 0 uses the original bitmap itself */
+    private final Bitmap[] mBitmaps;
+
+    /** Original bitmap the keyframes were blurred from */
+    private final Bitmap mOriginal;
+
+    /** Bitmap the keyframes are cross-faded into */
+    private Bitmap mFrame;
+
+    /** Canvas drawing into the frame bitmap */
+    private Canvas mCanvas;
+
+    /** Paint replacing the frame with the first keyframe */
+    private final Paint mSrcPaint;
+
+    /** Paint adding the second keyframe to the frame */
+    private final Paint mAddPaint;
+
+    /** Radius last drawn into the frame, to avoid drawing it again */
+    private float mLastRadius;
+
+    BlurKeyframes(Bitmap original, int[] radii, Bitmap[] bitmaps) {
+        this.mOriginal = original;
+        this.mRadii = radii;
+        this.mBitmaps = bitmaps;
+        this.mSrcPaint = new Paint();
+        this.mSrcPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        //premultiplied colors are added, so the two keyframes weighted by their alpha give their exact linear interpolation
+        this.mAddPaint = new Paint();
+        this.mAddPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.ADD));
+        this.mLastRadius = Float.NaN;
+    }
+
+    /** Returns the radius at the start of the animation */
+    public int getFromRadius() {
+        return mRadii[0];
+    }
+
+    /** Returns the radius at the end of the animation */
+    public int getToRadius() {
+        return mRadii[mRadii.length - 1];
+    }
+
+    /** Returns the original bitmap the keyframes were blurred from */
+    public Bitmap getOriginal() {
+        return mOriginal;
+    }
+
+    /**
+     * Returns the bitmap the keyframes are cross-faded into. It's always the same bitmap, so it can be shown
+     * once and then only redrawn: its content is updated by drawFrame().
+     */
+    public Bitmap getFrame() {
+        if(mFrame == null) {
+            mFrame = SharedBlurManager.getBitmapPool().acquire(mOriginal.getWidth(), mOriginal.getHeight(), Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mFrame);
+        }
+        return mFrame;
+    }
+
+    /**
+     * Cross-fades into the frame bitmap the two keyframes around the passed radius. No object is created,
+     * so it can be called while drawing.
+     *
+     * @param radius Radius of the frame, between the start and the end radius
+     * @return The frame bitmap
+     */
+    public Bitmap drawFrame(float radius) {
+        Bitmap frame = getFrame();
+        if(radius == mLastRadius)
+            return frame;
+        mLastRadius = radius;
+
+        //keyframes go from the start to the end radius, which can be lower than the start one
+        float sign = mRadii[mRadii.length - 1] >= mRadii[0] ? 1 : -1;
+        int index = 0;
+        while (index < mRadii.length - 2 && sign * radius > sign * mRadii[index + 1])
+            index++;
+
+        float fraction = mRadii.length == 1 ? 0 : (radius - mRadii[index]) / (mRadii[index + 1] - mRadii[index]);
+        fraction = Math.max(0, Math.min(1, fraction));
+        int alpha = Math.round(fraction * 255);
+
+        //the original bitmap may have been recycled meanwhile, e.g. if the downsampling rate changed
+        if(mBitmaps[index].isRecycled() || (alpha > 0 && mBitmaps[index + 1].isRecycled()))
+            return frame;
+
+        mSrcPaint.setAlpha(255 - alpha);
+        mCanvas.drawBitmap(mBitmaps[index], 0, 0, mSrcPaint);
+        if(alpha > 0) {
+            mAddPaint.setAlpha(alpha);
+            mCanvas.drawBitmap(mBitmaps[index + 1], 0, 0, mAddPaint);
+        }
+        return frame;
+    }
+
+    /**
+     * Removes the keyframe of the end radius from the keyframes, leaving it to the caller, which becomes its owner.
+     * If the end radius is 0, the original bitmap is returned.
+     */
+    Bitmap detachLast() {
+        Bitmap bitmap = mBitmaps[mBitmaps.length - 1];
+        mBitmaps[mBitmaps.length - 1] = null;
+        return bitmap;
+    }
+
+    /** Releases the keyframes and the frame bitmap: they go back to the pool, and they must not be used anymore */
+    public void release() {
+        for (int i = 0; i < mBitmaps.length; i++) {
+            release(mBitmaps[i]);
+            mBitmaps[i] = null;
+        }
+        release(mFrame);
+        mFrame = null;
+        mCanvas = null;
+    }
+
+    private void release(Bitmap bitmap) {
+        if(bitmap != null && bitmap != mOriginal && !SharedBlurManager.getBitmapPool().release(bitmap))
+            bitmap.recycle();
+    }
+}
@@ -3,10 +3,17 @@ package com.stefanosiano.powerfulimageview.blur.algorithms;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.graphics.drawable.VectorDrawableCompat;
 import android.support.v8.renderscript.RenderScript;
 import android.util.Log;
@@ -14,8 +21,11 @@ import android.widget.ImageView;
 
 import com.stefanosiano.powerfulimageview.blur.BlurOptions;
 import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianBlurKernel;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
 
 /**
  * Manager class for blurring. Used to manage and blur the image.
@@ -23,6 +33,12 @@ import java.lang.ref.WeakReference;
 
 public final class BlurManager implements BlurOptions.BlurOptionsListener {
 
+    /** Maximum relative error of the sigma of an incremental blur. Over it, the image is blurred from the original one */
+    private static final double MAX_INCREMENTAL_SIGMA_ERROR = 0.03;
+
+    /** Maximum number of consecutive incremental blurs, since each one rounds the pixels again */
+    private static final int MAX_INCREMENTAL_BLURS = 8;
+
     /** Drawable of the imageview to blur */
     private Drawable mDrawable;
 
@@ -32,6 +48,12 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
     /** Last blurred bitmap */
     private Bitmap mBlurredBitmap;
 
+    /** Whether the view is counted among the users of the shared pools (see addPoolUser()) */
+    private boolean mIsPoolUser;
+
+    /** Whether the original bitmap was blurred with the current radius while downsampling it (see blurDownsampled()) */
+    private boolean mIsOriginalBlurred;
+
     /** Options to use to blur bitmap */
     private BlurOptions mBlurOptions;
 
@@ -60,6 +82,12 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
     private GaussianRenderscriptBlurAlgorithm mGaussianRenderscriptBlurAlgorithm;
     private StackBlurAlgorithm mStackBlurAlgorithm;
     private StackRenderscriptBlurAlgorithm mStackRenderscriptBlurAlgorithm;
+    private GaussianFastBlurAlgorithm mGaussianFastBlurAlgorithm;
+    private GaussianFastRenderscriptBlurAlgorithm mGaussianFastRenderscriptBlurAlgorithm;
+    private RecursiveGaussianBlurAlgorithm mRecursiveGaussianBlurAlgorithm;
+    private BoxBlurAlgorithm mBoxBlurAlgorithm;
+    private DualKawaseBlurAlgorithm mDualKawaseBlurAlgorithm;
+    private PyramidBlurAlgorithm mPyramidBlurAlgorithm;
     private DummyBlurAlgorithm mDummyBlurAlgorithm;
 
     /** Selected algorithm to blur the image */
@@ -83,6 +111,54 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
     //Using a weakRefence to be sure to not leak memory
     private final WeakReference<ImageView> mView;
 
+    /** Handler used to deliver the results of background blurs on the main thread */
+    private final Handler mMainHandler;
+
+    /** Blur running in background, if any */
+    private BlurJob mRunningJob;
+
+    /** Whether a background blur was requested while another one was running: only the latest request is kept */
+    private boolean mIsAsyncPending;
+
+    /** Listener of the last background blur requested */
+    private OnBlurredListener mAsyncListener;
+
+    /** Keyframes of a blur radius animation being blurred in background, if any */
+    private KeyframesJob mKeyframesJob;
+
+    /** Radii of the keyframes requested while another background job was running, if any: only the latest request is kept */
+    private int[] mPendingKeyframes;
+
+    /** Listener of the last keyframes requested */
+    private OnKeyframesListener mKeyframesListener;
+
+    /** Last bitmap blurred on the UI thread with gaussian blur, whose blur is tracked to grow it incrementally */
+    private Bitmap mIncrementalBitmap;
+
+    /** Generation id of the tracked bitmap, to know if it was overwritten since */
+    private int mIncrementalGenerationId;
+
+    /** Original bitmap the tracked bitmap was blurred from */
+    private Bitmap mIncrementalOriginal;
+
+    /** Variance (sigma²) of the blur of the tracked bitmap */
+    private double mIncrementalVariance;
+
+    /** Number of incremental blurs applied to the tracked bitmap since it was blurred from the original one */
+    private int mIncrementalBlurs;
+
+    /** Adaptive quality of the live blurs, used if a frame budget is set */
+    private final BlurQualityController mQualityController;
+
+    /** Mode selected by the app, if the adaptive quality replaced it with a faster one */
+    private PivBlurMode mAdaptedMode;
+
+    /** Downsampling rate of the original bitmap */
+    private float mOriginalRate;
+
+    /** Listener of the settings chosen by the adaptive quality */
+    private OnBlurQualityListener mQualityListener;
+
     /**
      * Manager class for blur. Used to initialize and blur the image with the right algorithm.
      *
@@ -101,6 +177,8 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         mLastSizeY = 0;
         mIsRenderscriptManaged = false;
         mIsAlreadyBlurred = false;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mQualityController = new BlurQualityController();
     }
 
     /**
@@ -112,13 +190,30 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         Drawable mLastDrawable = mDrawable;
         Bitmap lastOriginalBitmap = mOriginalBitmap;
         this.mDrawable = drawable;
+        this.mIsOriginalBlurred = false;
         this.mOriginalBitmap = getOriginalBitmapFromDrawable(mLastDrawable, drawable);
 
         if(lastOriginalBitmap != mOriginalBitmap) {
             mIsAlreadyBlurred = false;
-            if(lastOriginalBitmap != null)
-                lastOriginalBitmap.recycle();
+            if(mBlurredBitmap == lastOriginalBitmap)
+                mBlurredBitmap = null;
+            setIncrementalBitmap(null, 0, 0);
+            recycleOriginalBitmap(lastOriginalBitmap);
+            //the summed area table and the pyramid of the old bitmap are useless now. Releasing them waits for a running
+            //blur of the old bitmap, which has just been cancelled, so it stops soon
+            if(mBoxBlurAlgorithm != null)
+                mBoxBlurAlgorithm.release();
+            if(mPyramidBlurAlgorithm != null)
+                mPyramidBlurAlgorithm.release();
             mLastRadius = -1;
+
+            //the original bitmap is already the result of the static blur
+            if(mIsOriginalBlurred) {
+                releaseBlurredBitmap();
+                mBlurredBitmap = mOriginalBitmap;
+                mLastRadius = mRadius;
+                mIsAlreadyBlurred = true;
+            }
         }
     }
 
@@ -130,18 +225,37 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
      */
     public final void changeMode(PivBlurMode blurMode, int radius){
 
+        //the mode selected by the app stays replaced by the faster one, until the app selects another mode
+        if(mAdaptedMode != null && blurMode != mMode) {
+            if(blurMode == mAdaptedMode)
+                blurMode = mMode;
+            else {
+                mAdaptedMode = null;
+                mQualityController.clearFastMode();
+            }
+        }
+
         //If there's no change, I don't do anything
         if(blurMode == mMode && radius == mRadius)
             return;
 
+        //otherwise i need to blur the image again
+        setMode(blurMode);
+        mRadius = radius;
+    }
+
+    /** Switches to the algorithm of the passed mode, so that the image will be blurred again */
+    private void setMode(PivBlurMode blurMode){
         removeContext(true);
         mMode = blurMode;
         addContext(true);
 
-        //otherwise i need to blur the image again
         updateAlgorithms(blurMode);
         mLastRadius = -1;
-        mRadius = radius;
+
+        //renderscript can't blur RGB_565 bitmaps, so the drawable is rasterized again as ARGB_8888
+        if(mOriginalBitmap != null && mOriginalBitmap.getConfig() == Bitmap.Config.RGB_565 && blurMode.isUsesRenderscript())
+            changeDrawable(mDrawable);
     }
 
     /**
@@ -162,6 +276,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
      */
     public void blur(int radius){
         mRadius = radius;
+        applyQuality();
 
         if(mOriginalBitmap == null || mOriginalBitmap.isRecycled())
             return;
@@ -176,22 +291,33 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
 
         this.mLastRadius = radius;
 
-        if(mBlurredBitmap != null && mOriginalBitmap != mBlurredBitmap)
-            mBlurredBitmap.recycle();
+        //the last blurred bitmap is still shown, so it's released only after the new one is ready: algorithms can overwrite it, if no one else owns it
+        Bitmap reusable = mBlurredBitmap != mOriginalBitmap ? mBlurredBitmap : null;
 
         Bitmap bitmap;
         addContext(false);
         try {
             if(radius == 0)
                 bitmap = mOriginalBitmap;
-            else
-                bitmap = mBlurAlgorithm.blur(mOriginalBitmap, mRadius, mBlurOptions);
+            else {
+                bitmap = blurIncrementally(radius);
+                if(bitmap == null) {
+                    BlurCache.Key key = getCacheKey(radius);
+                    //a bitmap found in the cache doesn't tell how long a blur takes
+                    boolean isTimed = key == null || !SharedBlurManager.getBlurCache().contains(key);
+                    long start = SystemClock.elapsedRealtime();
+                    bitmap = blurCached(key, mBlurAlgorithm, mMode, mOriginalBitmap, mRadius, mBlurOptions, reusable);
+                    if(isTimed && bitmap != null)
+                        onBlurTimed(mQualityController.getGeneration(), SystemClock.elapsedRealtime() - start);
+                }
+            }
             mIsAlreadyBlurred = true;
 
         } catch (RenderscriptException e){
             //Something wrong occurred with renderscript: fallback to java or nothing, based on option...
 
             //changing mode to fallback one if enabled
+            SharedBlurManager.getBlurMetrics().onRenderscriptFallback(mMode);
             mMode = mBlurOptions.isUseRsFallback() ? mMode.getFallbackMode() : PivBlurMode.DISABLED;
 
             Log.w(BlurManager.class.getSimpleName(), e.getLocalizedMessage() + "\nFalling back to another blurring method: " + mMode.name());
@@ -199,7 +325,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
             updateAlgorithms(mMode);
 
             try {
-                bitmap = mBlurAlgorithm.blur(mOriginalBitmap, mRadius, mBlurOptions);
+                bitmap = blurCached(getCacheKey(radius), mBlurAlgorithm, mMode, mOriginalBitmap, mRadius, mBlurOptions, reusable);
                 mIsAlreadyBlurred = true;
             } catch (RenderscriptException e1){
                 bitmap = null;
@@ -207,11 +333,552 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
 
         }
         removeContext(false);
-        if (mBlurOptions.isStaticBlur()) {
-            mOriginalBitmap = bitmap == null ? mOriginalBitmap : bitmap;
+        if (mBlurOptions.isStaticBlur() && bitmap != null) {
+            setStaticBlurResult(bitmap);
         }
+        if(bitmap != null && bitmap != mBlurredBitmap)
+            releaseBlurredBitmap();
         mBlurredBitmap = bitmap == null ? mBlurredBitmap : bitmap;
 
+        //a bitmap blurred from the original one is tracked from scratch
+        if(bitmap != null && !isIncrementalBitmap(bitmap))
+            setIncrementalBitmap(isIncrementalBlurEnabled() && bitmap != mOriginalBitmap ? bitmap : null, GaussianBlurKernel.getSigma(radius), 0);
+    }
+
+    /**
+     * Blurs the last blurred bitmap with the missing blur only, if the radius of a live gaussian blur grew:
+     * a gaussian blur of sigma sqrt(s2² - s1²) over the last result, blurred with s1, equals the blur of the original
+     * bitmap with s2, and its radius is much smaller. The radius of the missing blur and the pixels are rounded every time,
+     * so the image is blurred from the original one when the accumulated error grows too much.
+     *
+     * @param radius Radius of the blur to reach
+     * @return The blurred bitmap, or null if the image must be blurred from the original bitmap
+     */
+    private Bitmap blurIncrementally(int radius) throws RenderscriptException {
+        if(!isIncrementalBlurEnabled() || mBlurredBitmap == null || !isIncrementalBitmap(mBlurredBitmap) || mIncrementalBlurs >= MAX_INCREMENTAL_BLURS)
+            return null;
+
+        double sigma = GaussianBlurKernel.getSigma(radius);
+        double blurredSigma = Math.sqrt(mIncrementalVariance);
+        if(sigma <= blurredSigma)
+            return null;
+
+        //the missing blur may be too small for any filter: the error is accepted until it grows too much
+        int residualRadius = GaussianBlurKernel.getResidualRadius(blurredSigma, sigma);
+        double residualSigma = residualRadius > 0 ? GaussianBlurKernel.getSigma(residualRadius) : 0;
+        double variance = mIncrementalVariance + residualSigma * residualSigma;
+        if(Math.abs(Math.sqrt(variance) - sigma) > sigma * MAX_INCREMENTAL_SIGMA_ERROR)
+            return null;
+
+        Bitmap bitmap = mBlurredBitmap;
+        if(residualRadius > 0)
+            bitmap = blurTraced(mBlurAlgorithm, mMode, mBlurredBitmap, residualRadius, mBlurOptions, null);
+        if(bitmap != null)
+            setIncrementalBitmap(bitmap, Math.sqrt(variance), mIncrementalBlurs + 1);
+        return bitmap;
+    }
+
+    /** Returns whether the bitmap can grow incrementally with the current mode and options */
+    private boolean isIncrementalBlurEnabled() {
+        return mMode == PivBlurMode.GAUSSIAN && mBlurOptions.isIncrementalBlur() && !mBlurOptions.isStaticBlur();
+    }
+
+    /** Returns whether the bitmap is the tracked one, still unchanged and blurred from the current original bitmap */
+    private boolean isIncrementalBitmap(Bitmap bitmap) {
+        return bitmap == mIncrementalBitmap && !bitmap.isRecycled() && bitmap.getGenerationId() == mIncrementalGenerationId && mIncrementalOriginal == mOriginalBitmap;
+    }
+
+    /**
+     * Tracks the blur of a bitmap, to grow it incrementally on next blurs.
+     *
+     * @param bitmap Bitmap to track. If null, no bitmap is tracked
+     * @param sigma Sigma of the blur of the bitmap
+     * @param blurs Number of incremental blurs applied to the bitmap
+     */
+    private void setIncrementalBitmap(Bitmap bitmap, double sigma, int blurs) {
+        mIncrementalBitmap = bitmap;
+        mIncrementalGenerationId = bitmap == null ? 0 : bitmap.getGenerationId();
+        mIncrementalOriginal = bitmap == null ? null : mOriginalBitmap;
+        mIncrementalVariance = sigma * sigma;
+        mIncrementalBlurs = blurs;
+    }
+
+    /**
+     * Updates only a region of the image, after the drawable changed only there (e.g. a badge or a progress drawn over it).
+     * The region is drawn again into the original bitmap and, if the algorithm can blur a region alone (stack and
+     * convolution algorithms using Java code), only the area of the last blurred bitmap it affects is blurred again.
+     * Otherwise the image must be blurred again. If static blur is enabled (the original bitmap is not kept) or a background
+     * job is using the original bitmap, the whole drawable is drawn again, too.
+     *
+     * @param dirty Region of the drawable that changed, in the coordinates of its intrinsic size.
+     *              It's set to the region of the last blurred bitmap that changed, in its pixels
+     * @return True if the last blurred bitmap was updated, false if the image must be blurred again
+     */
+    public boolean blurRegion(Rect dirty){
+        if(mDrawable == null || mOriginalBitmap == null || mOriginalBitmap.isRecycled())
+            return false;
+
+        int w = mOriginalBitmap.getWidth();
+        int h = mOriginalBitmap.getHeight();
+        int intrinsicWidth = mDrawable.getIntrinsicWidth();
+        int intrinsicHeight = mDrawable.getIntrinsicHeight();
+        if(mBlurOptions.isStaticBlur() || mRunningJob != null || mKeyframesJob != null || !mOriginalBitmap.isMutable() || intrinsicWidth <= 0 || intrinsicHeight <= 0) {
+            reloadDrawable();
+            return false;
+        }
+
+        //the drawable is scaled into the original bitmap, and filtering spreads its pixels a bit
+        float scaleX = w / (float) intrinsicWidth;
+        float scaleY = h / (float) intrinsicHeight;
+        dirty.set((int) Math.floor(dirty.left * scaleX) - 1, (int) Math.floor(dirty.top * scaleY) - 1,
+                (int) Math.ceil(dirty.right * scaleX) + 1, (int) Math.ceil(dirty.bottom * scaleY) + 1);
+        if(!dirty.intersect(0, 0, w, h))
+            return true;
+
+        Canvas canvas = new Canvas(mOriginalBitmap);
+        canvas.clipRect(dirty);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        mDrawable.setBounds(0, 0, w, h);
+        mDrawable.draw(canvas);
+
+        //the summed area table and the pyramid of the old pixels are useless now
+        if(mBoxBlurAlgorithm != null)
+            mBoxBlurAlgorithm.release();
+        if(mPyramidBlurAlgorithm != null)
+            mPyramidBlurAlgorithm.release();
+        setIncrementalBitmap(null, 0, 0);
+
+        //the original bitmap is shown as is
+        if(mBlurredBitmap == mOriginalBitmap)
+            return true;
+
+        Bitmap blurred = getCurrentBlurredBitmap();
+        if(blurred == null || mLastRadius <= 0 || !(mBlurAlgorithm instanceof JavaBlurAlgorithm) || ((JavaBlurAlgorithm) mBlurAlgorithm).getReach(mLastRadius) < 0) {
+            mLastRadius = -1;
+            return false;
+        }
+
+        //the blurred bitmap may be shared (e.g. by the cache), so the region is written into a copy of it
+        BitmapPool pool = SharedBlurManager.getBitmapPool();
+        Bitmap target = blurred;
+        Bitmap.Config config = blurred.getConfig() == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if(!pool.canWriteInPlace(blurred, w, h, config)) {
+            target = pool.acquire(w, h, config);
+            target.eraseColor(Color.TRANSPARENT);
+            new Canvas(target).drawBitmap(blurred, 0, 0, null);
+        }
+
+        boolean isBlurred;
+        synchronized (mBlurAlgorithm) {
+            isBlurred = ((JavaBlurAlgorithm) mBlurAlgorithm).blurRegion(mOriginalBitmap, target, dirty, mLastRadius, mBlurOptions);
+        }
+
+        if(!isBlurred) {
+            if(target != blurred)
+                releaseBitmap(target);
+            mLastRadius = -1;
+            return false;
+        }
+        if(target != blurred) {
+            releaseBlurredBitmap();
+            mBlurredBitmap = target;
+        }
+        return true;
+    }
+
+    /** Draws the whole drawable again into a new original bitmap, so that the image will be blurred from scratch */
+    private void reloadDrawable(){
+        Drawable drawable = mDrawable;
+        mDrawable = null;
+        changeDrawable(drawable);
+    }
+
+    /**
+     * Blurs the image in background, if needed. The result is delivered on the main thread to the listener,
+     * and the last blurred bitmap can be shown until then.
+     * A request arriving while a blur is running cancels it: if several requests arrive meanwhile,
+     * only the latest one is performed, when the running blur stops.
+     *
+     * @param listener Listener called on the main thread with the blurred bitmap. It's not called if the blur fails or is superseded
+     */
+    public void blurAsync(OnBlurredListener listener){
+        mAsyncListener = listener;
+
+        if(mRunningJob != null) {
+            //the running blur is already the latest request
+            if(!mRunningJob.isCancelled() && mRunningJob.mOriginal == mOriginalBitmap && mRunningJob.mRadius == mRadius) {
+                mIsAsyncPending = false;
+                return;
+            }
+            mRunningJob.cancel();
+            mIsAsyncPending = true;
+            return;
+        }
+        startAsyncBlur();
+    }
+
+    /** Starts blurring the image in background with the current options, if needed */
+    private void startAsyncBlur(){
+        mIsAsyncPending = false;
+
+        if(mOriginalBitmap == null || mOriginalBitmap.isRecycled())
+            return;
+
+        //keyframes use the same algorithm: the blur starts when they stop
+        if(mKeyframesJob != null) {
+            mKeyframesJob.cancel();
+            mIsAsyncPending = true;
+            return;
+        }
+
+        applyQuality();
+
+        //if I already blurred the image with this radius, I don't do anything
+        if(mLastRadius == mRadius && mBlurredBitmap != null)
+            return;
+
+        if(mIsAlreadyBlurred && mBlurOptions.isStaticBlur())
+            return;
+
+        addContext(false);
+        mRunningJob = new BlurJob(getCacheKey(mRadius), mOriginalBitmap, mBlurAlgorithm, mRadius, mBlurOptions);
+        SharedBlurManager.getExecutor().execute(mRunningJob);
+    }
+
+    /** Called on the main thread when a background blur ends, even if it was cancelled or it failed */
+    private void onAsyncBlurEnded(BlurJob job){
+        mRunningJob = null;
+        removeContext(false);
+
+        if(job.mTime >= 0 && !job.isCancelled())
+            onBlurTimed(job.mGeneration, job.mTime);
+
+        Bitmap result = job.mResult;
+        boolean isCurrent = job.mOriginal == mOriginalBitmap && !job.mRecycleOriginal;
+
+        //static blur consumes the original bitmap, so its result is kept even if superseded
+        if(result != null && isCurrent && (job.mStaticBlur || !job.isCancelled())) {
+            mLastRadius = job.mRadius;
+            mIsAlreadyBlurred = true;
+            if(job.mStaticBlur)
+                setStaticBlurResult(result);
+            if(result != mBlurredBitmap)
+                releaseBlurredBitmap();
+            mBlurredBitmap = result;
+            if(mAsyncListener != null)
+                mAsyncListener.onBlurred(result);
+        }
+        else if(result != null && result != job.mOriginal)
+            releaseBitmap(result);
+
+        onJobEnded(job);
+
+        if(job.mRenderscriptFailed) {
+            onRenderscriptError();
+            mIsAsyncPending = true;
+        }
+
+        if(mPendingKeyframes != null)
+            startKeyframes();
+        else if(mIsAsyncPending)
+            startAsyncBlur();
+    }
+
+    /**
+     * Blurs the original bitmap in background with a few radii from the start to the end radius, to animate the radius
+     * by cross-fading them (see BlurKeyframes). A background blur still running is cancelled, since the end of the
+     * animation sets the radius anyway. If several requests arrive while a background job is running, only the latest
+     * one is performed, when the job stops.
+     *
+     * @param from Radius at the start of the animation
+     * @param to Radius at the end of the animation
+     * @param count Number of keyframes, including the start and the end ones. It's limited by the number of radii between them
+     * @param listener Listener called on the main thread with the keyframes, or with null if the blur failed. It's not called if the request is cancelled
+     * @return False if there is no image to blur, blur is disabled or static (the original bitmap is not kept), true otherwise
+     */
+    public boolean blurKeyframes(int from, int to, int count, OnKeyframesListener listener){
+        cancelKeyframes();
+        if(mOriginalBitmap == null || mOriginalBitmap.isRecycled() || mMode == PivBlurMode.DISABLED || mBlurOptions.isStaticBlur())
+            return false;
+
+        int steps = Math.min(Math.max(1, count) - 1, Math.abs(to - from));
+        mPendingKeyframes = new int[steps + 1];
+        mPendingKeyframes[0] = from;
+        for (int i = 1; i <= steps; i++)
+            mPendingKeyframes[i] = from + Math.round((to - from) * i / (float) steps);
+        mKeyframesListener = listener;
+
+        mIsAsyncPending = false;
+        if(mRunningJob != null)
+            mRunningJob.cancel();
+        else if(mKeyframesJob == null)
+            startKeyframes();
+        return true;
+    }
+
+    /** Cancels the keyframes requested, if they are not ready yet */
+    public void cancelKeyframes(){
+        mPendingKeyframes = null;
+        if(mKeyframesJob != null)
+            mKeyframesJob.cancel();
+    }
+
+    /**
+     * Ends an animation of the blur radius. If it was completed, the keyframe of the end radius becomes the last
+     * blurred bitmap, so that the radius is not blurred again. The caller must release the keyframes afterwards,
+     * when they are not shown anymore.
+     *
+     * @param keyframes Keyframes of the animation
+     * @param completed Whether the animation reached the end radius
+     */
+    public void finishKeyframes(BlurKeyframes keyframes, boolean completed){
+        if(!completed || keyframes.getOriginal() != mOriginalBitmap || mOriginalBitmap.isRecycled())
+            return;
+
+        Bitmap bitmap = keyframes.detachLast();
+        if(bitmap != mBlurredBitmap)
+            releaseBlurredBitmap();
+        mBlurredBitmap = bitmap;
+        mRadius = keyframes.getToRadius();
+        mLastRadius = mRadius;
+        mIsAlreadyBlurred = true;
+    }
+
+    /** Starts blurring the keyframes requested in background */
+    private void startKeyframes(){
+        int[] radii = mPendingKeyframes;
+        mPendingKeyframes = null;
+        if(radii == null || mOriginalBitmap == null || mOriginalBitmap.isRecycled())
+            return;
+
+        mKeyframesJob = new KeyframesJob(mOriginalBitmap, mBlurAlgorithm, radii, mBlurOptions, mKeyframesListener);
+        SharedBlurManager.getExecutor().execute(mKeyframesJob);
+    }
+
+    /** Called on the main thread when the keyframes are blurred, even if they were cancelled or the blur failed */
+    private void onKeyframesEnded(KeyframesJob job){
+        mKeyframesJob = null;
+
+        boolean isCurrent = job.mOriginal == mOriginalBitmap && !job.mRecycleOriginal && !job.isCancelled();
+        boolean isComplete = true;
+        for (Bitmap bitmap : job.mBitmaps)
+            isComplete = isComplete && bitmap != null && !bitmap.isRecycled();
+
+        BlurKeyframes keyframes = new BlurKeyframes(job.mOriginal, job.mRadii, job.mBitmaps);
+        if(!isCurrent || !isComplete)
+            keyframes.release();
+        onJobEnded(job);
+
+        if(job.mRenderscriptFailed)
+            onRenderscriptError();
+
+        if(isCurrent)
+            job.mListener.onKeyframesBlurred(isComplete ? keyframes : null);
+
+        if(mPendingKeyframes != null)
+            startKeyframes();
+        else if(mIsAsyncPending)
+            startAsyncBlur();
+    }
+
+    /**
+     * Applies the settings chosen by the adaptive quality, if they changed since the last blur: the original bitmap
+     * is drawn again with the new downsampling rate, and the mode may be replaced by a faster one.
+     */
+    void applyQuality(){
+        if(!isAdaptiveQuality())
+            return;
+
+        if(mQualityController.isFastMode() && mAdaptedMode == null) {
+            PivBlurMode fastMode = BlurQualityController.getFastMode(mMode);
+            if(fastMode != mMode) {
+                mAdaptedMode = mMode;
+                setMode(fastMode);
+            }
+        }
+        if(mDrawable != null && mOriginalRate != getDownSamplingRate())
+            changeDrawable(mDrawable);
+    }
+
+    /**
+     * Adds the time of a live blur to the adaptive quality, if enabled, and notifies the listener if its settings changed.
+     *
+     * @param generation Generation of the settings of the adaptive quality when the blur started
+     * @param timeMs Time of the blur, in milliseconds
+     */
+    void onBlurTimed(int generation, long timeMs) {
+        if(!isAdaptiveQuality() || !mQualityController.addSample(generation, timeMs, mBlurOptions.getFrameBudget(), mBlurOptions.isAdaptiveMode()))
+            return;
+
+        if(mQualityListener != null) {
+            PivBlurMode mode = mAdaptedMode == null && mQualityController.isFastMode() ? BlurQualityController.getFastMode(mMode) : mMode;
+            mQualityListener.onBlurQualityChanged(getDownSamplingRate(), mode, timeMs);
+        }
+    }
+
+    /** Returns the generation of the settings of the adaptive quality, to pass to onBlurTimed() when a blur ends */
+    int getQualityGeneration() {
+        return mQualityController.getGeneration();
+    }
+
+    /** Returns whether the adaptive quality is enabled: static blurs are never live */
+    private boolean isAdaptiveQuality() {
+        return mBlurOptions.getFrameBudget() > 0 && !mBlurOptions.isStaticBlur();
+    }
+
+    /** Returns the downsampling rate to use: the one chosen by the adaptive quality, if enabled, or the one of the options */
+    float getDownSamplingRate() {
+        return isAdaptiveQuality() ? mQualityController.getRate(mBlurOptions.getDownSamplingRate()) : mBlurOptions.getDownSamplingRate();
+    }
+
+    /**
+     * Sets the listener of the settings chosen by the adaptive quality (see BlurOptions.setFrameBudget()), e.g. to log them.
+     *
+     * @param listener Listener called on the main thread when the downsampling rate or the mode change. Nullable
+     */
+    public void setOnBlurQualityListener(OnBlurQualityListener listener){
+        mQualityListener = listener;
+    }
+
+    /** Called on the main thread when renderscript failed while blurring in background: the mode falls back to Java code or is disabled, based on option */
+    void onRenderscriptError() {
+        SharedBlurManager.getBlurMetrics().onRenderscriptFallback(mMode);
+        mMode = mBlurOptions.isUseRsFallback() ? mMode.getFallbackMode() : PivBlurMode.DISABLED;
+        Log.w(BlurManager.class.getSimpleName(), "Renderscript error while blurring\nFalling back to another blurring method: " + mMode.name());
+        updateAlgorithms(mMode);
+    }
+
+    /** Called on the main thread when a background job ends: its original bitmap is recycled if it was replaced meanwhile */
+    private void onJobEnded(Job job) {
+        if(!job.mRecycleOriginal || job.mOriginal.isRecycled())
+            return;
+        if(mRunningJob != null && mRunningJob.mOriginal == job.mOriginal)
+            mRunningJob.mRecycleOriginal = true;
+        else if(mKeyframesJob != null && mKeyframesJob.mOriginal == job.mOriginal)
+            mKeyframesJob.mRecycleOriginal = true;
+        else
+            releaseBitmap(job.mOriginal);
+    }
+
+    /** Recycles an original bitmap that is not used anymore, or leaves it to the background jobs that are using it */
+    private void recycleOriginalBitmap(Bitmap original) {
+        if(original == null)
+            return;
+        boolean isUsed = false;
+        if(mRunningJob != null && mRunningJob.mOriginal == original) {
+            mRunningJob.mRecycleOriginal = true;
+            mRunningJob.cancel();
+            isUsed = true;
+        }
+        if(mKeyframesJob != null && mKeyframesJob.mOriginal == original) {
+            mKeyframesJob.mRecycleOriginal = true;
+            mKeyframesJob.cancel();
+            isUsed = true;
+        }
+        if(!isUsed)
+            releaseBitmap(original);
+    }
+
+    /** Replaces the original bitmap with the result of a static blur, releasing the original one if the blur didn't consume it */
+    private void setStaticBlurResult(Bitmap bitmap) {
+        //e.g. a bitmap found in the cache
+        if(bitmap != mOriginalBitmap && !mOriginalBitmap.isRecycled()) {
+            if(mBlurredBitmap == mOriginalBitmap)
+                mBlurredBitmap = null;
+            recycleOriginalBitmap(mOriginalBitmap);
+        }
+        mOriginalBitmap = bitmap;
+    }
+
+    /**
+     * Returns the key of the shared cache identifying the image blurred with the passed radius, or null if it shouldn't
+     * be cached: only images coming from a bitmap are cached, since the bitmap identifies them.
+     */
+    private BlurCache.Key getCacheKey(int radius) {
+        if(radius == 0 || mMode == PivBlurMode.DISABLED || !(mDrawable instanceof BitmapDrawable) || mOriginalBitmap == null || !SharedBlurManager.getBlurCache().isEnabled())
+            return null;
+        Bitmap source = ((BitmapDrawable) mDrawable).getBitmap();
+        if(source == null)
+            return null;
+        //results have the config of the original bitmap if it's RGB_565 (see JavaBlurAlgorithm.createResult())
+        Bitmap.Config config = mOriginalBitmap.getConfig() == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        return new BlurCache.Key(source, mOriginalBitmap.getWidth(), mOriginalBitmap.getHeight(), config, mMode, radius, getDownSamplingRate(), mBlurOptions);
+    }
+
+    /**
+     * Blurs the original bitmap through the shared cache: if the same image was already blurred with the same parameters,
+     * or another thread is blurring it, the cached bitmap is returned. Otherwise the image is blurred and cached.
+     *
+     * @param key Key of the image in the cache. If null, the image is blurred without using the cache
+     * @return The blurred bitmap, or null if the thread was interrupted
+     */
+    private static Bitmap blurCached(BlurCache.Key key, BlurAlgorithm algorithm, PivBlurMode mode, Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+        if(key == null)
+            return blurTraced(algorithm, mode, original, radius, options, reusable);
+
+        BlurCache cache = SharedBlurManager.getBlurCache();
+        Bitmap bitmap;
+        try {
+            bitmap = cache.acquire(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if(bitmap != null)
+            return bitmap;
+
+        //static blurs are cached on disk too, if enabled: the name of the file hashes the pixels, so it's computed before blurring them
+        BlurDiskCache diskCache = options.isStaticBlur() ? SharedBlurManager.getDiskCache() : null;
+        String fileName = diskCache == null ? null : BlurDiskCache.getFileName(key, original);
+        try {
+            if(fileName != null)
+                bitmap = diskCache.get(fileName);
+            if(bitmap == null) {
+                bitmap = blurTraced(algorithm, mode, original, radius, options, reusable);
+                if(fileName != null && bitmap != null)
+                    diskCache.put(fileName, bitmap, SharedBlurManager.getExecutor());
+            }
+        } finally {
+            //the original bitmap is owned by the manager, so it's cached only if static blur consumed it
+            boolean cacheable = bitmap != null && (bitmap != original || options.isStaticBlur());
+            //the cache owns the bitmap now, so it never goes back to the pool
+            if(cacheable)
+                SharedBlurManager.getBitmapPool().detach(bitmap);
+            cache.put(key, cacheable ? bitmap : null);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Blurs the bitmap with the algorithm, tracing and timing the blur in the metrics of its mode.
+     * Algorithms keep state between blurs (e.g. the pyramid), so they never blur on two threads at once.
+     */
+    static Bitmap blurTraced(BlurAlgorithm algorithm, PivBlurMode mode, Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+        synchronized (algorithm) {
+            BlurMetrics metrics = SharedBlurManager.getBlurMetrics();
+            long start = metrics.begin(BlurMetrics.Stage.BLUR);
+            try {
+                return algorithm.blur(original, radius, options, reusable);
+            } finally {
+                metrics.end(BlurMetrics.Stage.BLUR, mode, start);
+            }
+        }
+    }
+
+    /** Releases a bitmap not needed anymore: bitmaps of the cache or of the pool go back to them, while the others are recycled */
+    private static void releaseBitmap(Bitmap bitmap) {
+        if(!SharedBlurManager.getBlurCache().release(bitmap) && !SharedBlurManager.getBitmapPool().release(bitmap))
+            bitmap.recycle();
+    }
+
+    /**
+     * Releases the last blurred bitmap, if it's not the original one: bitmaps of the cache or of the pool go back to them,
+     * while the others are recycled.
+     */
+    private void releaseBlurredBitmap() {
+        if(mBlurredBitmap != null && mBlurredBitmap != mOriginalBitmap)
+            releaseBitmap(mBlurredBitmap);
+        mBlurredBitmap = null;
     }
 
 
@@ -248,7 +915,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case STACK:
@@ -267,7 +934,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case GAUSSIAN5X5:
@@ -286,7 +953,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case GAUSSIAN3X3:
@@ -305,7 +972,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case BOX5X5:
@@ -324,7 +991,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case BOX3X3:
@@ -344,7 +1011,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 }
                 //if renderscript is null, there was a problem getting it: let's use java or dummy
                 else
-                    updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
+                    fallBackFrom(blurMode);
                 break;
 
             case GAUSSIAN:
@@ -353,6 +1020,49 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 mBlurAlgorithm = mGaussianBlurAlgorithm;
                 break;
 
+            case GAUSSIAN_FAST_RS:
+                renderScript = SharedBlurManager.getRenderScriptContext();
+                if(renderScript != null) {
+                    if (mGaussianFastRenderscriptBlurAlgorithm == null)
+                        mGaussianFastRenderscriptBlurAlgorithm = new GaussianFastRenderscriptBlurAlgorithm();
+                    mBlurAlgorithm = mGaussianFastRenderscriptBlurAlgorithm;
+                    mBlurAlgorithm.setRenderscript(renderScript);
+                }
+                //if renderscript is null, there was a problem getting it: let's use java or dummy
+                else
+                    fallBackFrom(blurMode);
+                break;
+
+            case GAUSSIAN_FAST:
+                if(mGaussianFastBlurAlgorithm == null)
+                    mGaussianFastBlurAlgorithm = new GaussianFastBlurAlgorithm();
+                mBlurAlgorithm = mGaussianFastBlurAlgorithm;
+                break;
+
+            case GAUSSIAN_RECURSIVE:
+                if(mRecursiveGaussianBlurAlgorithm == null)
+                    mRecursiveGaussianBlurAlgorithm = new RecursiveGaussianBlurAlgorithm();
+                mBlurAlgorithm = mRecursiveGaussianBlurAlgorithm;
+                break;
+
+            case BOX:
+                if(mBoxBlurAlgorithm == null)
+                    mBoxBlurAlgorithm = new BoxBlurAlgorithm();
+                mBlurAlgorithm = mBoxBlurAlgorithm;
+                break;
+
+            case DUAL_KAWASE:
+                if(mDualKawaseBlurAlgorithm == null)
+                    mDualKawaseBlurAlgorithm = new DualKawaseBlurAlgorithm();
+                mBlurAlgorithm = mDualKawaseBlurAlgorithm;
+                break;
+
+            case PYRAMID:
+                if(mPyramidBlurAlgorithm == null)
+                    mPyramidBlurAlgorithm = new PyramidBlurAlgorithm();
+                mBlurAlgorithm = mPyramidBlurAlgorithm;
+                break;
+
 
             default:
             case DISABLED:
@@ -361,6 +1071,16 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
                 mBlurAlgorithm = mDummyBlurAlgorithm;
                 break;
         }
+
+        //a fallback already set the algorithm of its own mode
+        if(mMode == blurMode && mBlurAlgorithm instanceof JavaBlurAlgorithm)
+            ((JavaBlurAlgorithm) mBlurAlgorithm).setTracer(SharedBlurManager.getBlurMetrics().getPassTracer(blurMode));
+    }
+
+    /** Falls back from a renderscript mode whose context is not available to Java code, or to no blur, based on option */
+    private void fallBackFrom(PivBlurMode blurMode){
+        SharedBlurManager.getBlurMetrics().onRenderscriptFallback(blurMode);
+        updateAlgorithms(mBlurOptions.isUseRsFallback() ? blurMode.getFallbackMode() : PivBlurMode.DISABLED);
     }
 
     /**
@@ -381,6 +1101,141 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         return mBlurredBitmap != null ? mBlurredBitmap : mOriginalBitmap;
     }
 
+    /**
+     * @return The last blurred bitmap, without blurring the image again, or null if there is none.
+     * When blurring in background, it's the bitmap to show until the new one is ready.
+     */
+    public Bitmap getCurrentBlurredBitmap(){
+        return mBlurredBitmap != null && !mBlurredBitmap.isRecycled() ? mBlurredBitmap : null;
+    }
+
+    /**
+     * Box blurs the original bitmap with several radii at once, building its summed area table only once.
+     * The table is kept for next calls (and for box blur mode) until the original bitmap changes.
+     * If static blur option is enabled and the bitmap was already blurred, the blurred bitmap will be used.
+     *
+     * @param radii Radii to blur the bitmap with
+     * @return A new bitmap for each radius, or null if there is no bitmap to blur or any problem occurs.
+     */
+    public Bitmap[] getBoxBlurredBitmaps(int... radii){
+        if(mOriginalBitmap == null || mOriginalBitmap.isRecycled())
+            return null;
+
+        if(mBoxBlurAlgorithm == null)
+            mBoxBlurAlgorithm = new BoxBlurAlgorithm();
+        //same lock of the blurs running in the background, which may use the table too
+        synchronized (mBoxBlurAlgorithm) {
+            return mBoxBlurAlgorithm.blur(mOriginalBitmap, radii, mBlurOptions);
+        }
+    }
+
+    /**
+     * Sets the executor that runs the tasks of Java algorithms of all instances, so that blur can share the
+     * threads of the app (e.g. of an image loader). Tasks are run on the thread that starts the blur, too.
+     *
+     * @param executor Executor to use. If null, the default pool of background threads is used
+     */
+    public static void setExecutor(Executor executor){
+        SharedBlurManager.setExecutor(executor);
+    }
+
+    /**
+     * Returns the cache of the blurred bitmaps shared by all instances, to configure its maximum size
+     * or read its counters.
+     */
+    public static BlurCache getBlurCache(){
+        return SharedBlurManager.getBlurCache();
+    }
+
+    /**
+     * Returns the metrics of the blurs of all instances: durations of each stage for each mode, bytes of bitmaps allocated
+     * and renderscript fallbacks.
+     */
+    public static BlurMetrics getBlurMetrics(){
+        return SharedBlurManager.getBlurMetrics();
+    }
+
+    /**
+     * Sets the directory where the results of static blurs of all instances are cached, so that they are not blurred
+     * again after the process dies. Files are written on the executor of Java algorithms.
+     *
+     * @param directory Directory of the cached files. If null, results of static blurs are not cached on disk
+     * @param maxSize Maximum number of bytes of the cached files
+     */
+    public static void setDiskCache(File directory, long maxSize){
+        SharedBlurManager.setDiskCache(directory == null || maxSize <= 0 ? null : new BlurDiskCache(directory, maxSize));
+    }
+
+    /**
+     * Decodes a source subsampled near the size its bitmap is blurred at, which depends on the size of the view and on
+     * the downsampling rate, instead of at full resolution.
+     *
+     * @param source Source to decode
+     * @param reusable Bitmap of a previous decode to decode the source into, if big enough. Nullable
+     * @return The decoded bitmap, or null if the view has no size yet or the source can't be decoded
+     */
+    public Bitmap decodeSource(BlurSource source, Bitmap reusable) {
+        if(mWidth <= 0 || mHeight <= 0)
+            return null;
+
+        BlurMetrics metrics = SharedBlurManager.getBlurMetrics();
+        long start = metrics.begin(BlurMetrics.Stage.DECODE);
+        try {
+            if(!source.readSize())
+                return null;
+
+            //same size the drawable is rasterized at by getOriginalBitmapFromDrawable()
+            float ratio = (float) source.getWidth() / (float) source.getHeight();
+            float rate = getDownSamplingRate();
+            int minWidth = Math.max((int) (Math.max(mWidth, mHeight * ratio) / rate), 1);
+            int minHeight = Math.max((int) (Math.max(mHeight, mWidth / ratio) / rate), 1);
+            return source.decode(minWidth, minHeight, reusable);
+        } finally {
+            metrics.end(BlurMetrics.Stage.DECODE, mMode, start);
+        }
+    }
+
+    /**
+     * Returns the config to rasterize the drawable with: RGB_565 if enabled by the options and the drawable is opaque,
+     * unless it's blurred with renderscript, whose intrinsics only take 4 channel bitmaps. ARGB_8888 otherwise.
+     */
+    private Bitmap.Config getOriginalConfig(Drawable drawable) {
+        if(mBlurOptions.isRgb565() && mMode != PivBlurMode.DISABLED && !mMode.isUsesRenderscript() && drawable.getOpacity() == PixelFormat.OPAQUE)
+            return Bitmap.Config.RGB_565;
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Downsamples the bitmap of the drawable by area averaging and blurs it at once, if enabled by the options.
+     * A static blur would only blur the downsampled bitmap and throw it away, so it's not created at all: the separable
+     * Java kernel averages the rows of the bitmap and blurs them in the same pass. Live blurs keep the downsampled bitmap,
+     * since they blur it again at every change, and asynchronous blurs too, since this runs on the main thread.
+     *
+     * @return The bitmap blurred with the current radius, or null if the drawable should be rasterized as usual
+     */
+    private Bitmap blurDownsampled(Drawable drawable, int sizeX, int sizeY) {
+        if(!mBlurOptions.isAreaDownsampling() || !mBlurOptions.isStaticBlur() || mBlurOptions.isAsync() ||
+                !(drawable instanceof BitmapDrawable) || !(mBlurAlgorithm instanceof JavaBlurAlgorithm))
+            return null;
+
+        //only bitmaps bigger than the downsampled size are worth it, and only configs whose pixels can always be read
+        Bitmap source = ((BitmapDrawable) drawable).getBitmap();
+        if(source == null || source.isRecycled() || source.getWidth() < sizeX || source.getHeight() < sizeY ||
+                (source.getWidth() == sizeX && source.getHeight() == sizeY) ||
+                (source.getConfig() != Bitmap.Config.ARGB_8888 && source.getConfig() != Bitmap.Config.RGB_565))
+            return null;
+
+        synchronized (mBlurAlgorithm) {
+            BlurMetrics metrics = SharedBlurManager.getBlurMetrics();
+            long start = metrics.begin(BlurMetrics.Stage.BLUR);
+            try {
+                return ((JavaBlurAlgorithm) mBlurAlgorithm).blurDownsampled(source, sizeX, sizeY, getOriginalConfig(drawable), mRadius, mBlurOptions);
+            } finally {
+                metrics.end(BlurMetrics.Stage.BLUR, mMode, start);
+            }
+        }
+    }
+
     /**
      * @return Returns the bitmap of the drawable, downsampled if needed
      */
@@ -395,8 +1250,9 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         float ratio = (float) drawable.getIntrinsicWidth() / (float) drawable.getIntrinsicHeight();
         int sizeX;
         int sizeY;
-        int maxWidth = (int) (Math.max(mWidth, mHeight * ratio) / mBlurOptions.getDownSamplingRate());
-        int maxHeight = (int) (Math.max(mHeight, mWidth / ratio) / mBlurOptions.getDownSamplingRate());
+        mOriginalRate = getDownSamplingRate();
+        int maxWidth = (int) (Math.max(mWidth, mHeight * ratio) / mOriginalRate);
+        int maxHeight = (int) (Math.max(mHeight, mWidth / ratio) / mOriginalRate);
 
         if (drawable.getIntrinsicWidth() > maxWidth && maxWidth > 0 && drawable.getIntrinsicHeight() > maxHeight && maxHeight > 0) {
             sizeX = maxWidth;
@@ -412,34 +1268,50 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
             sizeY = maxHeight;
         }
 
+        Bitmap.Config config = getOriginalConfig(drawable);
+
         //if i already decoded the bitmap i reuse it
-        if (sizeX > 0 && sizeY > 0 && mOriginalBitmap != null && !mOriginalBitmap.isRecycled() && mLastSizeX == sizeX && mLastSizeY == sizeY && mLastDrawable == drawable)
+        if (sizeX > 0 && sizeY > 0 && mOriginalBitmap != null && !mOriginalBitmap.isRecycled() && mLastSizeX == sizeX && mLastSizeY == sizeY && mLastDrawable == drawable &&
+                mOriginalBitmap.getConfig() == config)
             return mOriginalBitmap;
 
         mLastSizeX = sizeX;
         mLastSizeY = sizeY;
 
+        bitmap = blurDownsampled(drawable, sizeX, sizeY);
+        if(bitmap != null) {
+            mIsOriginalBlurred = true;
+            return bitmap;
+        }
 
+        BlurMetrics metrics = SharedBlurManager.getBlurMetrics();
+        long start = metrics.begin(BlurMetrics.Stage.RASTERIZE);
         try {
 
             if (drawable instanceof BitmapDrawable) {
-                bitmap = Bitmap.createBitmap(sizeX, sizeY, Bitmap.Config.ARGB_8888);
+                bitmap = metrics.createBitmap(sizeX, sizeY, config, mMode);
             } else if (drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
-                bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888); // Single color bitmap will be created of 1x1 pixel
+                bitmap = metrics.createBitmap(1, 1, config, mMode); // Single color bitmap will be created of 1x1 pixel
             } else if (drawable instanceof ColorDrawable) {
-                bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+                bitmap = metrics.createBitmap(1, 1, config, mMode);
             } else {
 
-                bitmap = Bitmap.createBitmap(sizeX, sizeY, Bitmap.Config.ARGB_8888);
+                bitmap = metrics.createBitmap(sizeX, sizeY, config, mMode);
             }
             Canvas canvas = new Canvas(bitmap);
             drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
             drawable.draw(canvas);
 
+            //an opaque drawable covers the whole bitmap, so Java algorithms can skip the alpha channel
+            if (drawable.getOpacity() == PixelFormat.OPAQUE)
+                bitmap.setHasAlpha(false);
+
             return bitmap;
         } catch (Exception e) {
             e.printStackTrace();
             return mOriginalBitmap;
+        } finally {
+            metrics.end(BlurMetrics.Stage.RASTERIZE, mMode, start);
         }
 
     }
@@ -465,6 +1337,22 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         }
     }
 
+    /** Counts the view among the users of the shared pools of buffers and bitmaps, while it's attached to the window */
+    public void addPoolUser(){
+        if(mIsPoolUser)
+            return;
+        mIsPoolUser = true;
+        SharedBlurManager.addPoolUser();
+    }
+
+    /** Stops counting the view among the users of the shared pools, so that their memory is released when no view uses them */
+    public void removePoolUser(){
+        if(!mIsPoolUser)
+            return;
+        mIsPoolUser = false;
+        SharedBlurManager.removePoolUser();
+    }
+
     /**
      * Removes the context from the renderscript manager, if needed.
      * If the blur is static renderscript context is managed by the manager itself, to release it as soon as possible.
@@ -497,7 +1385,9 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         //If staticBlur is true, i release original bitmap and swap it with the blurred one, if it exists
         if(mBlurOptions.isStaticBlur()) {
             if (mBlurredBitmap != null && mBlurredBitmap != mOriginalBitmap) {
-                mOriginalBitmap.recycle();
+                recycleOriginalBitmap(mOriginalBitmap);
+                //the blurred bitmap becomes the original one, so it will never go back to the pool
+                SharedBlurManager.getBitmapPool().detach(mBlurredBitmap);
                 mOriginalBitmap = mBlurredBitmap;
                 mBlurredBitmap = null;
             }
@@ -521,6 +1411,11 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
     }
 
 
+    /** Returns the algorithm of the selected mode */
+    BlurAlgorithm getBlurAlgorithm() {
+        return mBlurAlgorithm;
+    }
+
     /** Returns the selected mode used for blurring */
     public PivBlurMode getBlurMode() {
         return mMode;
@@ -549,7 +1444,7 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
     public Bundle saveInstanceState() {
         Bundle bundle = new Bundle();
         bundle.putParcelable("blur_options", mBlurOptions);
-        bundle.putInt("blur_mode", mMode.getValue());
+        bundle.putInt("blur_mode", mAdaptedMode != null ? mAdaptedMode.getValue() : mMode.getValue());
         bundle.putInt("blur_radius", mRadius);
         return bundle;
     }
@@ -568,4 +1463,194 @@ public final class BlurManager implements BlurOptions.BlurOptionsListener {
         changeMode(blurMode, mRadius);
     }
 
+
+    /** Listener of the blurs performed in background */
+    public interface OnBlurredListener {
+
+        /**
+         * Called on the main thread when the image has been blurred in background
+         *
+         * @param bitmap The blurred bitmap
+         */
+        void onBlurred(Bitmap bitmap);
+    }
+
+    /** Listener of the keyframes of a blur radius animation */
+    public interface OnKeyframesListener {
+
+        /**
+         * Called on the main thread when the keyframes have been blurred in background
+         *
+         * @param keyframes The keyframes, or null if the blur failed
+         */
+        void onKeyframesBlurred(BlurKeyframes keyframes);
+    }
+
+    /** Listener of the settings chosen by the adaptive quality */
+    public interface OnBlurQualityListener {
+
+        /**
+         * Called on the main thread when the adaptive quality changes its settings. They are used from the next blur
+         *
+         * @param downSamplingRate Downsampling rate to use
+         * @param mode Mode to use
+         * @param blurTimeMs Time of the last blur, which caused the change, in milliseconds
+         */
+        void onBlurQualityChanged(float downSamplingRate, PivBlurMode mode, long blurTimeMs);
+    }
+
+    /** Job performed in background on the original bitmap. When it ends, onEnded() is called on the main thread */
+    private abstract class Job implements Runnable {
+        final Bitmap mOriginal;
+
+        /** Thread running the job, interrupted when the job is cancelled */
+        private Thread mThread;
+        private boolean mCancelled;
+
+        /** Whether the original bitmap was replaced while running, so it must be recycled when the job ends. Used on main thread only */
+        boolean mRecycleOriginal;
+
+        Job(Bitmap original) {
+            this.mOriginal = original;
+        }
+
+        @Override
+        public void run() {
+            boolean isStarted;
+            synchronized (this) {
+                isStarted = !mCancelled;
+                if(isStarted)
+                    mThread = Thread.currentThread();
+            }
+
+            try {
+                if(isStarted)
+                    execute();
+            } finally {
+                synchronized (this) {
+                    mThread = null;
+                    //the interruption must not affect the next tasks of the thread
+                    Thread.interrupted();
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onEnded();
+                    }
+                });
+            }
+        }
+
+        /** Performs the job on the background thread */
+        abstract void execute();
+
+        /** Called on the main thread when the job ends, even if it was cancelled or never started */
+        abstract void onEnded();
+
+        /** Cancels the job: if it's running, its thread is interrupted, so that Java algorithms stop between rows */
+        synchronized void cancel() {
+            mCancelled = true;
+            if(mThread != null)
+                mThread.interrupt();
+        }
+
+        synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /** Blur performed in background. Its result is delivered to onAsyncBlurEnded() on the main thread */
+    private final class BlurJob extends Job {
+        private final BlurCache.Key mKey;
+        private final BlurAlgorithm mAlgorithm;
+        private final int mRadius;
+        private final BlurOptions mOptions;
+        private final boolean mStaticBlur;
+
+        /** Generation of the settings of the adaptive quality when the job was created */
+        private final int mGeneration;
+
+        /** Mode of the algorithm, for the metrics */
+        private final PivBlurMode mMode;
+
+        private Bitmap mResult;
+        private boolean mRenderscriptFailed;
+
+        /** Time of the blur in milliseconds, or -1 if it wasn't blurred (e.g. it was found in the cache) */
+        private long mTime;
+
+        BlurJob(BlurCache.Key key, Bitmap original, BlurAlgorithm algorithm, int radius, BlurOptions options) {
+            super(original);
+            this.mKey = key;
+            this.mAlgorithm = algorithm;
+            this.mRadius = radius;
+            this.mOptions = options;
+            this.mStaticBlur = options.isStaticBlur();
+            this.mGeneration = mQualityController.getGeneration();
+            this.mMode = BlurManager.this.mMode;
+            this.mTime = -1;
+        }
+
+        @Override
+        void execute() {
+            try {
+                boolean isTimed = mRadius != 0 && (mKey == null || !SharedBlurManager.getBlurCache().contains(mKey));
+                long start = SystemClock.elapsedRealtime();
+                mResult = mRadius == 0 ? mOriginal : blurCached(mKey, mAlgorithm, mMode, mOriginal, mRadius, mOptions, null);
+                if(isTimed && mResult != null)
+                    mTime = SystemClock.elapsedRealtime() - start;
+            } catch (RenderscriptException e) {
+                mRenderscriptFailed = true;
+            }
+        }
+
+        @Override
+        void onEnded() {
+            onAsyncBlurEnded(this);
+        }
+    }
+
+    /** Keyframes blurred in background. They are delivered to onKeyframesEnded() on the main thread */
+    private final class KeyframesJob extends Job {
+        private final BlurAlgorithm mAlgorithm;
+        private final int[] mRadii;
+        private final BlurOptions mOptions;
+        private final OnKeyframesListener mListener;
+
+        /** Mode of the algorithm, for the metrics */
+        private final PivBlurMode mMode;
+
+        /** Blurred keyframes. A radius of 0 uses the original bitmap, and keyframes not blurred are null */
+        private final Bitmap[] mBitmaps;
+        private boolean mRenderscriptFailed;
+
+        KeyframesJob(Bitmap original, BlurAlgorithm algorithm, int[] radii, BlurOptions options, OnKeyframesListener listener) {
+            super(original);
+            this.mAlgorithm = algorithm;
+            this.mRadii = radii;
+            this.mOptions = options;
+            this.mListener = listener;
+            this.mBitmaps = new Bitmap[radii.length];
+            this.mMode = BlurManager.this.mMode;
+        }
+
+        @Override
+        void execute() {
+            try {
+                for (int i = 0; i < mRadii.length && !isCancelled(); i++) {
+                    if(mRadii[i] == 0)
+                        mBitmaps[i] = mOriginal;
+                    else
+                        mBitmaps[i] = blurTraced(mAlgorithm, mMode, mOriginal, mRadii[i], mOptions, null);
+                }
+            } catch (RenderscriptException e) {
+                mRenderscriptFailed = true;
+            }
+        }
+
+        @Override
+        void onEnded() {
+            onKeyframesEnded(this);
+        }
+    }
 }
@@ -31,7 +31,7 @@ final class Box3x3RenderscriptBlurAlgorithm implements BlurAlgorithm {
     }
 
     @Override
-    public Bitmap blur(Bitmap original, int radius, BlurOptions options) throws RenderscriptException {
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
 
         RenderScript rs = renderscript.get();
         if(rs == null)
@@ -59,7 +59,7 @@ final class Box3x3RenderscriptBlurAlgorithm implements BlurAlgorithm {
 
 
         if(!options.isStaticBlur()) {
-            Bitmap bitmap = Bitmap.createBitmap(original.getWidth(), original.getHeight(), Bitmap.Config.ARGB_8888);
+            Bitmap bitmap = SharedBlurManager.getBitmapPool().getOutput(original, reusable);
             output.copyTo(bitmap);
             output.destroy();
             return bitmap;
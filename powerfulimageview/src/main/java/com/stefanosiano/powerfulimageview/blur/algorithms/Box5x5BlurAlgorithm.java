@@ -1,14 +1,15 @@
 package com.stefanosiano.powerfulimageview.blur.algorithms;
 
+import com.stefanosiano.powerfulimageview.core.blur.Box5x5BlurKernel;
+
 /**
  * Class that performs the box blur with 5x5 coefficient matrix.
  * Changing radius will repeat the process radius times.
  */
 
-final class Box5x5BlurAlgorithm extends ConvolveBaseBlurAlgorithm {
+final class Box5x5BlurAlgorithm extends ConvolveBlurAlgorithm {
 
-    @Override
-    protected float[] getFilter(){
-        return new float[] {0.2f, 0.2f, 0.2f, 0.2f, 0.2f};
+    Box5x5BlurAlgorithm() {
+        super(new Box5x5BlurKernel());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import com.stefanosiano.powerfulimageview.core.blur.DualKawaseBlurKernel;
+
+/**
+ * Class that performs the dual filter (Kawase) blur using Java code: the image is downsampled and upsampled
+ * back through a pyramid, whose number of levels depends on the radius.
+ * Its speed barely depends on the radius, so it's good for strong live blurs ("frosted glass").
+ */
+
+final class DualKawaseBlurAlgorithm extends JavaBlurAlgorithm {
+
+    DualKawaseBlurAlgorithm() {
+        super(new DualKawaseBlurKernel());
+    }
+}
@@ -17,7 +17,7 @@ final class DummyBlurAlgorithm implements BlurAlgorithm {
     }
 
     @Override
-    public Bitmap blur(Bitmap original, int radius, BlurOptions options) {
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) {
 
         return original;
     }
@@ -1,14 +1,15 @@
 package com.stefanosiano.powerfulimageview.blur.algorithms;
 
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian3x3BlurKernel;
+
 /**
  * Class that performs the gaussian blur with 3x3 coefficient matrix.
  * Changing radius will repeat the process radius times.
  */
 
-final class Gaussian3x3BlurAlgorithm extends ConvolveBaseBlurAlgorithm {
+final class Gaussian3x3BlurAlgorithm extends ConvolveBlurAlgorithm {
 
-    @Override
-    protected float[] getFilter(){
-        return new float[] {0.1968f, 0.6064f, 0.1968f};
+    Gaussian3x3BlurAlgorithm() {
+        super(new Gaussian3x3BlurKernel());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.support.v8.renderscript.RenderScript;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.core.blur.GaussianBlurKernel;
+
+
+/**
+ * Class that performs the gaussian blur using renderscript when the radius is supported by its intrinsic,
+ * and the Java approximation with 3 box blurs for bigger radii.
+ * The sigma of the intrinsic (0.4 * radius + 0.6) grows faster than the one of the box blurs ((radius + 1) / 3),
+ * so the radius passed to the intrinsic is scaled to match it: the blur gets stronger smoothly as the radius grows,
+ * without a jump where the algorithm changes, and it's as strong as the one of the Java fallback (gaussian_fast).
+ */
+final class GaussianFastRenderscriptBlurAlgorithm implements BlurAlgorithm {
+
+    /** Maximum radius supported by the renderscript intrinsic blur */
+    private static final float MAX_RENDERSCRIPT_RADIUS = 25;
+
+    private final GaussianRenderscriptBlurAlgorithm mRenderscriptAlgorithm = new GaussianRenderscriptBlurAlgorithm();
+    private final GaussianFastBlurAlgorithm mJavaAlgorithm = new GaussianFastBlurAlgorithm();
+
+    @Override
+    public void setRenderscript(RenderScript renderscript) {
+        mRenderscriptAlgorithm.setRenderscript(renderscript);
+    }
+
+    @Override
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+        float renderscriptRadius = getRenderscriptRadius(radius);
+        if(renderscriptRadius > 0 && renderscriptRadius <= MAX_RENDERSCRIPT_RADIUS)
+            return mRenderscriptAlgorithm.blur(original, renderscriptRadius, options, reusable);
+        return mJavaAlgorithm.blur(original, radius, options, reusable);
+    }
+
+    /**
+     * Returns the radius of the intrinsic whose sigma matches the one of the box blurs of the passed radius.
+     * Intrinsic radii up to 25 cover radii up to 30.
+     */
+    private static float getRenderscriptRadius(int radius) {
+        return (float) ((GaussianBlurKernel.getSigma(radius) - 0.6) / 0.4);
+    }
+}
@@ -0,0 +1,85 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.support.v8.renderscript.RenderScript;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.BlurPyramid;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.ScratchPool;
+
+/**
+ * Class that performs a blur close to the gaussian one using Java code, through a pyramid of downsampled images.
+ * The pyramid is built once per original bitmap and kept until the bitmap changes, so that changing the radius
+ * (e.g. through a SeekBar) only costs a small blur of a small image and an upsampling.
+ */
+
+final class PyramidBlurAlgorithm implements BlurAlgorithm {
+
+    /** Pyramid of the last blurred bitmap */
+    private BlurPyramid mPyramid;
+
+    /** Bitmap the pyramid was built from */
+    private Bitmap mPyramidBitmap;
+
+    /** Generation id of the bitmap when the pyramid was built, to know if its pixels changed */
+    private int mPyramidGenerationId;
+
+    /** Maximum number of levels of the pyramid, as requested by the options when it was built */
+    private int mPyramidMaxLevels;
+
+    @Override
+    public void setRenderscript(RenderScript renderscript) {
+
+    }
+
+    @Override
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+
+        BlurContext context = SharedBlurManager.getBlurContext(options.getNumThreads());
+        ScratchPool pool = context.getScratchPool();
+        int w = original.getWidth();
+        int h = original.getHeight();
+        int[] pix = pool.acquire(w * h);
+
+        try {
+            original.getPixels(pix, 0, w, 0, 0, w, h);
+            PixelBuffer pixels = PixelBuffer.wrap(pix, w, h);
+            getPyramid(original, pixels, options.getPyramidLevels(), context).blur(radius, pixels, context);
+
+            //on static blur the original bitmap is blurred only once, so the pyramid is not needed anymore
+            if(options.isStaticBlur())
+                release();
+
+            return JavaBlurAlgorithm.createResult(original, pix, options, reusable);
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Releases the pyramid, if any. It will be built again on next blur.
+     * It holds the lock of the algorithm, which running blurs hold too (see BlurManager.blurTraced()).
+     */
+    synchronized void release() {
+        mPyramid = null;
+        mPyramidBitmap = null;
+    }
+
+    /** Returns the pyramid of the bitmap, whose pixels are passed, building it only if the bitmap, its pixels or the levels changed */
+    private BlurPyramid getPyramid(Bitmap original, PixelBuffer pixels, int maxLevels, BlurContext context) throws InterruptedException {
+        BlurPyramid pyramid = mPyramid;
+        if(pyramid != null && mPyramidBitmap == original && mPyramidGenerationId == original.getGenerationId() && mPyramidMaxLevels == maxLevels)
+            return pyramid;
+
+        pyramid = BlurPyramid.build(pixels, maxLevels, context);
+        mPyramid = pyramid;
+        mPyramidBitmap = original;
+        mPyramidGenerationId = original.getGenerationId();
+        mPyramidMaxLevels = maxLevels;
+        return pyramid;
+    }
+}
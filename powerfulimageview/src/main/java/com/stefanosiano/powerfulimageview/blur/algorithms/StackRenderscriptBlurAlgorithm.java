@@ -24,7 +24,7 @@ final class StackRenderscriptBlurAlgorithm implements BlurAlgorithm {
     }
 
     @Override
-    public Bitmap blur(Bitmap original, int radius, BlurOptions options) throws RenderscriptException {
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
 
         RenderScript rs = renderscript.get();
         if(rs == null)
@@ -62,7 +62,7 @@ final class StackRenderscriptBlurAlgorithm implements BlurAlgorithm {
 
 
         if(!options.isStaticBlur()) {
-            Bitmap bitmap = Bitmap.createBitmap(original.getWidth(), original.getHeight(), Bitmap.Config.ARGB_8888);
+            Bitmap bitmap = SharedBlurManager.getBitmapPool().getOutput(original, reusable);
             inAllocation.copyTo(bitmap);
             inAllocation.destroy();
             rows.destroy();
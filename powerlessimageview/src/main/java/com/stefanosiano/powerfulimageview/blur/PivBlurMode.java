@@ -15,7 +15,13 @@ public enum PivBlurMode {
     BOX5X5(9, DISABLED, false),
     BOX5X5_RS(10, BOX5X5, true),
     STACK(11, DISABLED, false),
-    STACK_RS(12, STACK, true);
+    STACK_RS(12, STACK, true),
+    GAUSSIAN_FAST(13, DISABLED, false),
+    GAUSSIAN_FAST_RS(14, GAUSSIAN_FAST, true),
+    GAUSSIAN_RECURSIVE(15, DISABLED, false),
+    BOX(16, DISABLED, false),
+    DUAL_KAWASE(17, DISABLED, false),
+    PYRAMID(18, DISABLED, false);
 
 
     private final int value;
@@ -39,6 +45,18 @@ public enum PivBlurMode {
     /** Returns the mode associated to the passed value, or disabled if the value is invalid */
     public static PivBlurMode fromValue(int value){
         switch (value){
+            case 18:
+                return PYRAMID;
+            case 17:
+                return DUAL_KAWASE;
+            case 16:
+                return BOX;
+            case 15:
+                return GAUSSIAN_RECURSIVE;
+            case 14:
+                return GAUSSIAN_FAST_RS;
+            case 13:
+                return GAUSSIAN_FAST;
             case 12:
                 return STACK_RS;
             case 11:
@@ -0,0 +1,185 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Pool of the bitmaps resulting from non static blurs, so that blurring again with another radius
+ * doesn't create a new bitmap every time.
+ *
+ * Bitmaps are grouped by width, height and config, and each one checked out from the pool is reference counted:
+ * it goes back to the pool only when all its owners released it. Only bitmaps created by the pool are ever
+ * recycled by it, and only when they are not checked out, so a bitmap still shown by a view is never recycled.
+ */
+
+final class BitmapPool {
+
+    /** Default maximum number of bytes retained by the bitmaps not checked out */
+    static final long DEFAULT_MAX_RETAINED_BYTES = 8 * 1024 * 1024;
+
+    /** Maximum number of bitmaps not checked out kept for each size and config */
+    private static final int MAX_BITMAPS_PER_KEY = 2;
+
+    /** Bitmaps not checked out, for each size and config */
+    private final HashMap<Key, ArrayList<Bitmap>> mFreeBitmaps = new HashMap<>();
+
+    /** Number of owners of each bitmap checked out */
+    private final IdentityHashMap<Bitmap, Integer> mReferences = new IdentityHashMap<>();
+
+    /** Maximum number of bytes retained by the bitmaps not checked out */
+    private final long mMaxRetainedBytes;
+
+    /** Number of bytes currently retained by the bitmaps not checked out */
+    private long mRetainedBytes;
+
+    BitmapPool(long maxRetainedBytes) {
+        this.mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Checks out a mutable bitmap with the passed size and config, reusing a released one if possible.
+     * Its content is undefined. The caller is its first owner, and must release it when it's not needed anymore.
+     */
+    synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        ArrayList<Bitmap> bitmaps = mFreeBitmaps.get(new Key(width, height, config));
+        Bitmap bitmap = null;
+        while (bitmaps != null && !bitmaps.isEmpty() && bitmap == null) {
+            bitmap = bitmaps.remove(bitmaps.size() - 1);
+            mRetainedBytes -= getBytes(bitmap);
+            //someone may have recycled it anyway
+            if(bitmap.isRecycled())
+                bitmap = null;
+        }
+
+        if(bitmap == null)
+            bitmap = SharedBlurManager.getBlurMetrics().createBitmap(width, height, config, null);
+        mReferences.put(bitmap, 1);
+        return bitmap;
+    }
+
+    /**
+     * Returns the bitmap to write the result of a non static blur of the original into: the reusable bitmap
+     * itself, if it can be written in place, or a bitmap checked out from the pool.
+     * The output is RGB_565 if the original is, ARGB_8888 otherwise.
+     *
+     * @param original Bitmap being blurred
+     * @param reusable Bitmap that can be overwritten (nullable)
+     */
+    Bitmap getOutput(Bitmap original, Bitmap reusable) {
+        Bitmap.Config config = original.getConfig() == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if(canWriteInPlace(reusable, original.getWidth(), original.getHeight(), config) && reusable != original)
+            return reusable;
+        return acquire(original.getWidth(), original.getHeight(), config);
+    }
+
+    /**
+     * Returns whether the bitmap can be overwritten in place with a result of the passed size and config:
+     * it must be checked out from the pool with a single owner, and match the size and config.
+     */
+    synchronized boolean canWriteInPlace(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return false;
+        Integer references = mReferences.get(bitmap);
+        return references != null && references == 1 &&
+                bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+    }
+
+    /** Returns whether the bitmap is currently checked out from the pool */
+    synchronized boolean isOwned(Bitmap bitmap) {
+        return bitmap != null && mReferences.containsKey(bitmap);
+    }
+
+    /** Adds an owner to a bitmap checked out from the pool. Other bitmaps are ignored */
+    synchronized void retain(Bitmap bitmap) {
+        Integer references = bitmap == null ? null : mReferences.get(bitmap);
+        if(references != null)
+            mReferences.put(bitmap, references + 1);
+    }
+
+    /**
+     * Removes an owner from a bitmap checked out from the pool: when it has no more owners it goes back to the pool,
+     * or it's recycled if the pool is full. Other bitmaps are ignored.
+     *
+     * @return True if the bitmap was checked out from the pool, false otherwise
+     */
+    synchronized boolean release(Bitmap bitmap) {
+        Integer references = bitmap == null ? null : mReferences.get(bitmap);
+        if(references == null)
+            return false;
+        if(references > 1) {
+            mReferences.put(bitmap, references - 1);
+            return true;
+        }
+
+        mReferences.remove(bitmap);
+        if(bitmap.isRecycled())
+            return true;
+
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bitmaps = mFreeBitmaps.get(key);
+        if(bitmaps == null) {
+            bitmaps = new ArrayList<>(MAX_BITMAPS_PER_KEY);
+            mFreeBitmaps.put(key, bitmaps);
+        }
+
+        long bytes = getBytes(bitmap);
+        if(bitmaps.size() < MAX_BITMAPS_PER_KEY && mRetainedBytes + bytes <= mMaxRetainedBytes) {
+            bitmaps.add(bitmap);
+            mRetainedBytes += bytes;
+        }
+        else
+            bitmap.recycle();
+        return true;
+    }
+
+    /**
+     * Removes a bitmap checked out from the pool, leaving it to the caller, which becomes its only owner:
+     * it will never go back to the pool, and the caller can recycle it. Other bitmaps are ignored.
+     */
+    synchronized void detach(Bitmap bitmap) {
+        if(bitmap != null)
+            mReferences.remove(bitmap);
+    }
+
+    /** Recycles all the bitmaps not checked out. Bitmaps checked out are left to their owners */
+    synchronized void clear() {
+        for (ArrayList<Bitmap> bitmaps : mFreeBitmaps.values()) {
+            for (Bitmap bitmap : bitmaps)
+                bitmap.recycle();
+        }
+        mFreeBitmaps.clear();
+        mRetainedBytes = 0;
+    }
+
+    private static long getBytes(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+
+    /** Size and config of a bitmap */
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+
+        Key(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override public boolean equals(Object o) {
+            if(!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return width == key.width && height == key.height && config == key.config;
+        }
+
+        @Override public int hashCode() {
+            return (width * 31 + height) * 31 + (config == null ? 0 : config.hashCode());
+        }
+    }
+}
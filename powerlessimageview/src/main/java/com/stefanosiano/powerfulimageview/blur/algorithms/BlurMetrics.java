@@ -0,0 +1,384 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Trace;
+
+import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+import com.stefanosiano.powerfulimageview.core.blur.BlurTracer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of the blurs of all instances of BlurManager: how long each stage of the pipeline takes, for each blur mode,
+ * how many bytes of bitmaps are allocated and how many times renderscript fell back to Java code.
+ *
+ * Each stage is wrapped in a section of android.os.Trace (from API 18), so it shows in systrace, and its duration is
+ * added to a histogram of its mode. Histograms are lock free, since stages run on any thread, and they have 4 buckets
+ * for each power of 2 of microseconds: percentiles are accurate within 25%. Use getSnapshot() to read them.
+ */
+
+public final class BlurMetrics {
+
+    /** Number of buckets of each power of 2 of microseconds */
+    private static final int BUCKETS_PER_POWER = 4;
+
+    /** Number of buckets of a histogram: durations over about 18 minutes go into the last one */
+    private static final int BUCKETS = 30 * BUCKETS_PER_POWER;
+
+    /** Index of the histograms of all the modes together */
+    private static final int ALL_MODES = PivBlurMode.values().length;
+
+    /** Histograms of each mode (plus all the modes together) and stage */
+    private final Histogram[][] mHistograms;
+
+    /** Tracers of the passes of the kernels of each mode */
+    private final PassTracer[] mPassTracers;
+
+    /** Number of fallbacks from renderscript to Java code (or to no blur) of each mode */
+    private final AtomicLongArray mFallbacks;
+
+    /** Number of bitmaps allocated */
+    private final AtomicLong mBitmapsAllocated;
+
+    /** Number of bytes of the bitmaps allocated */
+    private final AtomicLong mBytesAllocated;
+
+    BlurMetrics() {
+        PivBlurMode[] modes = PivBlurMode.values();
+        mHistograms = new Histogram[modes.length + 1][Stage.values().length];
+        for (Histogram[] histograms : mHistograms)
+            for (int i = 0; i < histograms.length; i++)
+                histograms[i] = new Histogram();
+        mPassTracers = new PassTracer[modes.length];
+        for (int i = 0; i < modes.length; i++)
+            mPassTracers[i] = new PassTracer(modes[i]);
+        mFallbacks = new AtomicLongArray(modes.length);
+        mBitmapsAllocated = new AtomicLong();
+        mBytesAllocated = new AtomicLong();
+    }
+
+    /**
+     * Begins a stage: a trace section is opened on the calling thread. It must be followed by end() on the same thread.
+     *
+     * @param stage Stage that begins
+     * @return The start time of the stage, to pass to end()
+     */
+    public long begin(Stage stage) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection(stage.mSectionName);
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a stage started by begin() on the same thread: its trace section is closed, and its duration is added to the metrics.
+     *
+     * @param stage Stage that ends
+     * @param mode Mode the stage belongs to. If null, it's added only to the metrics of all the modes
+     * @param start Start time returned by begin()
+     */
+    public void end(Stage stage, PivBlurMode mode, long start) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.endSection();
+        record(stage, mode, System.nanoTime() - start);
+    }
+
+    /** Adds the duration of a stage to the histograms of its mode, if any, and of all the modes */
+    private void record(Stage stage, PivBlurMode mode, long nanos) {
+        long micros = nanos / 1000;
+        if(mode != null)
+            mHistograms[mode.ordinal()][stage.ordinal()].record(micros);
+        mHistograms[ALL_MODES][stage.ordinal()].record(micros);
+    }
+
+    /**
+     * Creates a bitmap as a stage, counting its bytes.
+     *
+     * @param mode Mode the bitmap is created for. If null, it's added only to the metrics of all the modes
+     */
+    Bitmap createBitmap(int width, int height, Bitmap.Config config, PivBlurMode mode) {
+        long start = begin(Stage.BITMAP_CREATION);
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        } finally {
+            end(Stage.BITMAP_CREATION, mode, start);
+        }
+        onBitmapAllocated(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Creates an immutable bitmap with the passed pixels and config as a stage, counting its bytes.
+     *
+     * @param mode Mode the bitmap is created for. If null, it's added only to the metrics of all the modes
+     */
+    Bitmap createBitmap(int[] pixels, int width, int height, Bitmap.Config config, PivBlurMode mode) {
+        long start = begin(Stage.BITMAP_CREATION);
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, config);
+        } finally {
+            end(Stage.BITMAP_CREATION, mode, start);
+        }
+        onBitmapAllocated(bitmap);
+        return bitmap;
+    }
+
+    private void onBitmapAllocated(Bitmap bitmap) {
+        mBitmapsAllocated.incrementAndGet();
+        mBytesAllocated.addAndGet((long) bitmap.getRowBytes() * bitmap.getHeight());
+    }
+
+    /** Counts a fallback of the passed mode from renderscript to Java code (or to no blur) */
+    void onRenderscriptFallback(PivBlurMode mode) {
+        mFallbacks.incrementAndGet(mode.ordinal());
+    }
+
+    /** Returns the tracer of the passes of the Java kernels of the passed mode */
+    BlurTracer getPassTracer(PivBlurMode mode) {
+        return mPassTracers[mode.ordinal()];
+    }
+
+    /** Returns a copy of the current metrics. Stages running meanwhile may be partially included */
+    public Snapshot getSnapshot() {
+        PivBlurMode[] modes = PivBlurMode.values();
+        Stats[][] stats = new Stats[mHistograms.length][];
+        for (int i = 0; i < mHistograms.length; i++) {
+            stats[i] = new Stats[mHistograms[i].length];
+            for (int j = 0; j < mHistograms[i].length; j++)
+                stats[i][j] = mHistograms[i][j].getStats();
+        }
+        long[] fallbacks = new long[modes.length];
+        for (int i = 0; i < modes.length; i++)
+            fallbacks[i] = mFallbacks.get(i);
+        return new Snapshot(stats, fallbacks, mBitmapsAllocated.get(), mBytesAllocated.get());
+    }
+
+    /** Clears all the metrics. Stages running meanwhile may be partially counted */
+    public void reset() {
+        for (Histogram[] histograms : mHistograms)
+            for (Histogram histogram : histograms)
+                histogram.reset();
+        for (int i = 0; i < mFallbacks.length(); i++)
+            mFallbacks.set(i, 0);
+        mBitmapsAllocated.set(0);
+        mBytesAllocated.set(0);
+    }
+
+    /** Returns the index of the bucket of a duration */
+    private static int getBucket(long micros) {
+        if(micros < BUCKETS_PER_POWER)
+            return (int) Math.max(0, micros);
+        //the highest bit is the power, and the 2 bits below it are the bucket within the power
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        int bucket = (power - 1) * BUCKETS_PER_POWER + (int) ((micros >> (power - 2)) & (BUCKETS_PER_POWER - 1));
+        return Math.min(BUCKETS - 1, bucket);
+    }
+
+    /** Returns the lowest duration of a bucket, in microseconds */
+    private static long getBucketStart(int bucket) {
+        if(bucket < BUCKETS_PER_POWER)
+            return bucket;
+        int power = bucket / BUCKETS_PER_POWER + 1;
+        return (long) (BUCKETS_PER_POWER + bucket % BUCKETS_PER_POWER) << (power - 2);
+    }
+
+
+    /** Stages of the blur pipeline */
+    public enum Stage {
+        /** Drawing the drawable into the original bitmap, downsampled */
+        RASTERIZE("PIV rasterize"),
+        /** Decoding a blur source, subsampled */
+        DECODE("PIV decode"),
+        /** Blurring a bitmap with the algorithm of the mode */
+        BLUR("PIV blur"),
+        /** Horizontal pass of a Java kernel */
+        HORIZONTAL_PASS("PIV horizontal pass"),
+        /** Vertical pass of a Java kernel, including the transpositions around it, if enabled */
+        VERTICAL_PASS("PIV vertical pass"),
+        /** Allocating a bitmap (original, blurred or from the pool) */
+        BITMAP_CREATION("PIV create bitmap"),
+        /** Setting a bitmap into the view, without rasterizing and blurring it */
+        SET_IMAGE("PIV setImageBitmap");
+
+        /** Name of the trace section */
+        private final String mSectionName;
+
+        Stage(String sectionName) {
+            this.mSectionName = sectionName;
+        }
+    }
+
+    /** Copy of the metrics at a point in time */
+    public static final class Snapshot {
+        private final Stats[][] mStats;
+        private final long[] mFallbacks;
+        private final long mBitmapsAllocated;
+        private final long mBytesAllocated;
+
+        private Snapshot(Stats[][] stats, long[] fallbacks, long bitmapsAllocated, long bytesAllocated) {
+            this.mStats = stats;
+            this.mFallbacks = fallbacks;
+            this.mBitmapsAllocated = bitmapsAllocated;
+            this.mBytesAllocated = bytesAllocated;
+        }
+
+        /**
+         * Returns the statistics of a stage.
+         *
+         * @param mode Mode to return the statistics of. If null, the statistics of all the modes together are returned
+         * @param stage Stage to return the statistics of
+         */
+        public Stats getStats(PivBlurMode mode, Stage stage) {
+            return mStats[mode == null ? ALL_MODES : mode.ordinal()][stage.ordinal()];
+        }
+
+        /**
+         * Returns the number of times renderscript failed and the mode fell back to Java code (or to no blur).
+         *
+         * @param mode Mode that failed. If null, the fallbacks of all the modes are returned
+         */
+        public long getRenderscriptFallbacks(PivBlurMode mode) {
+            if(mode != null)
+                return mFallbacks[mode.ordinal()];
+            long fallbacks = 0;
+            for (long count : mFallbacks)
+                fallbacks += count;
+            return fallbacks;
+        }
+
+        /** Returns the number of bitmaps allocated for blurring (bitmaps reused from the pool are not counted) */
+        public long getBitmapsAllocated() {
+            return mBitmapsAllocated;
+        }
+
+        /** Returns the number of bytes of the bitmaps allocated for blurring */
+        public long getBytesAllocated() {
+            return mBytesAllocated;
+        }
+    }
+
+    /** Statistics of the durations of a stage */
+    public static final class Stats {
+
+        /** Statistics of a stage that never ran, shared by all of them */
+        private static final Stats EMPTY = new Stats(0, 0, 0, null);
+
+        private final long mCount;
+        private final long mTotalMicros;
+        private final long mMaxMicros;
+
+        /** Number of durations of each bucket. Null if the stage never ran */
+        private final long[] mBuckets;
+
+        private Stats(long count, long totalMicros, long maxMicros, long[] buckets) {
+            this.mCount = count;
+            this.mTotalMicros = totalMicros;
+            this.mMaxMicros = maxMicros;
+            this.mBuckets = buckets;
+        }
+
+        /** Returns the number of times the stage ran */
+        public long getCount() {
+            return mCount;
+        }
+
+        /** Returns the total duration of the stage, in microseconds */
+        public long getTotalMicros() {
+            return mTotalMicros;
+        }
+
+        /** Returns the average duration of the stage, in microseconds, or 0 if it never ran */
+        public long getAverageMicros() {
+            return mCount == 0 ? 0 : mTotalMicros / mCount;
+        }
+
+        /** Returns the longest duration of the stage, in microseconds */
+        public long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        /**
+         * Returns the duration, in microseconds, that the passed percentage of the runs of the stage didn't exceed.
+         * It's the end of the bucket of the histogram containing it, so it's up to 25% higher, but never higher than the longest duration.
+         *
+         * @param percentile Percentage of the runs, between 0 and 100 (e.g. 50 for the median, 99 for the 99th percentile)
+         * @return The percentile, in microseconds, or 0 if the stage never ran
+         */
+        public long getPercentileMicros(double percentile) {
+            if(mBuckets == null)
+                return 0;
+            //buckets may be a bit off the count, since they are read one by one while other threads add durations
+            long total = 0;
+            for (long count : mBuckets)
+                total += count;
+            long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if(seen >= rank && seen > 0)
+                    return Math.min(mMaxMicros, getBucketStart(i + 1) - 1);
+            }
+            return mMaxMicros;
+        }
+    }
+
+    /** Histogram of the durations of a stage, updated without locks */
+    private static final class Histogram {
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalMicros = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        void record(long micros) {
+            mBuckets.incrementAndGet(getBucket(micros));
+            mTotalMicros.addAndGet(micros);
+            long max = mMaxMicros.get();
+            while (micros > max && !mMaxMicros.compareAndSet(max, micros))
+                max = mMaxMicros.get();
+            mCount.incrementAndGet();
+        }
+
+        Stats getStats() {
+            long count = mCount.get();
+            if(count == 0)
+                return Stats.EMPTY;
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = mBuckets.get(i);
+            return new Stats(count, mTotalMicros.get(), mMaxMicros.get(), buckets);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++)
+                mBuckets.set(i, 0);
+            mCount.set(0);
+            mTotalMicros.set(0);
+            mMaxMicros.set(0);
+        }
+    }
+
+    /** Traces the passes of the Java kernels of a mode, as stages */
+    private final class PassTracer implements BlurTracer {
+        private final PivBlurMode mMode;
+
+        PassTracer(PivBlurMode mode) {
+            this.mMode = mode;
+        }
+
+        @Override
+        public void onPassStarted(boolean vertical) {
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                Trace.beginSection(vertical ? Stage.VERTICAL_PASS.mSectionName : Stage.HORIZONTAL_PASS.mSectionName);
+        }
+
+        @Override
+        public void onPassEnded(boolean vertical, long nanos) {
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                Trace.endSection();
+            record(vertical ? Stage.VERTICAL_PASS : Stage.HORIZONTAL_PASS, mMode, nanos);
+        }
+    }
+}
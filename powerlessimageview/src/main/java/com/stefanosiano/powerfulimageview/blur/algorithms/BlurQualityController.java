@@ -0,0 +1,153 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+
+/**
+ * Adaptive quality of the live blurs of a manager: it measures the time of each blur and changes the downsampling rate,
+ * starting from the rate of the options, to keep it within a budget.
+ *
+ * Times are smoothed over the last blurs, and each step halves or doubles the number of pixels to blur.
+ * A coarser rate is chosen as soon as the smoothed time exceeds the budget, while a finer one only if the blur
+ * would still be well within it: the gap between the two thresholds keeps the rate from oscillating.
+ * If the rate can't grow anymore and the mode can be changed, a mode whose cost doesn't depend on the radius
+ * is used, until the app selects another mode.
+ *
+ * Used on the main thread only.
+ */
+
+final class BlurQualityController {
+
+    /** Factor the downsampling rate changes by at each step: it halves or doubles the number of pixels */
+    private static final float RATE_STEP = (float) Math.sqrt(2);
+
+    /** Maximum downsampling rate, unless the options start from a higher one */
+    private static final float MAX_RATE = 16;
+
+    /** Weight of the last blur in the smoothed time */
+    private static final double SMOOTHING = 0.25;
+
+    /** Fraction of the budget that a blur with twice the pixels must stay within, to choose a finer rate */
+    private static final double FINER_RATIO = 0.7;
+
+    /** Number of blurs measured with the same settings before changing them again */
+    private static final int MIN_SAMPLES = 3;
+
+    /** Downsampling rate of the options the adaptation started from */
+    private float mBaseRate;
+
+    /** Downsampling rate to use */
+    private float mRate;
+
+    /** Whether the fast mode should be used */
+    private boolean mIsFastMode;
+
+    /** Smoothed time of the blurs with the current settings, in milliseconds */
+    private double mTime;
+
+    /** Number of blurs measured with the current settings */
+    private int mSamples;
+
+    /** Incremented every time the settings change, to ignore the blurs started with the previous ones */
+    private int mGeneration;
+
+    /**
+     * Returns the downsampling rate to use. If the rate of the options changed, the adaptation starts again from it.
+     *
+     * @param baseRate Downsampling rate of the options
+     */
+    float getRate(float baseRate) {
+        if(baseRate != mBaseRate) {
+            mBaseRate = baseRate;
+            mRate = baseRate;
+            onChanged();
+        }
+        return mRate;
+    }
+
+    /** Returns whether the fast mode should be used */
+    boolean isFastMode() {
+        return mIsFastMode;
+    }
+
+    /** Stops using the fast mode, e.g. because the app selected another mode */
+    void clearFastMode() {
+        if(!mIsFastMode)
+            return;
+        mIsFastMode = false;
+        onChanged();
+    }
+
+    /** Returns the generation of the current settings, to pass to addSample() when the blur ends */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Adds the time of a blur, changing the settings if needed.
+     *
+     * @param generation Generation of the settings the blur started with. Blurs started with previous settings are ignored
+     * @param timeMs Time of the blur, in milliseconds
+     * @param budgetMs Time a blur should take, in milliseconds
+     * @param canChangeMode Whether the fast mode can be used, when the rate can't grow anymore
+     * @return True if the settings changed
+     */
+    boolean addSample(int generation, long timeMs, int budgetMs, boolean canChangeMode) {
+        if(generation != mGeneration)
+            return false;
+        mTime = mSamples == 0 ? timeMs : mTime + (timeMs - mTime) * SMOOTHING;
+        mSamples++;
+        if(mSamples < MIN_SAMPLES)
+            return false;
+
+        if(mTime > budgetMs) {
+            float maxRate = Math.max(MAX_RATE, mBaseRate);
+            if(mRate < maxRate)
+                mRate = Math.min(maxRate, mRate * RATE_STEP);
+            else if(canChangeMode && !mIsFastMode)
+                mIsFastMode = true;
+            else
+                return false;
+        }
+        //the time is about proportional to the number of pixels
+        else if(mTime * 2 < budgetMs * FINER_RATIO && mRate > 1)
+            mRate = Math.max(1, mRate / RATE_STEP);
+        else
+            return false;
+
+        onChanged();
+        return true;
+    }
+
+    private void onChanged() {
+        mGeneration++;
+        mSamples = 0;
+        mTime = 0;
+    }
+
+    /**
+     * Returns a mode similar to the passed one, whose cost doesn't depend on the radius.
+     * Modes already independent of the radius are returned as they are.
+     */
+    static PivBlurMode getFastMode(PivBlurMode mode) {
+        switch (mode) {
+            case GAUSSIAN5X5:
+            case GAUSSIAN3X3:
+            case GAUSSIAN:
+            case BOX3X3:
+            case BOX5X5:
+            case STACK:
+                return PivBlurMode.GAUSSIAN_FAST;
+
+            case GAUSSIAN5X5_RS:
+            case GAUSSIAN3X3_RS:
+            case GAUSSIAN_RS:
+            case BOX3X3_RS:
+            case BOX5X5_RS:
+            case STACK_RS:
+                return PivBlurMode.GAUSSIAN_FAST_RS;
+
+            default:
+                return mode;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Encoded image (an uri, a resource or a file) to blur, decoded directly near the size it's blurred at.
+ * A big photo blurred at a fraction of the view size doesn't need to be decoded at full resolution: the decoder
+ * subsamples it by the highest power of 2 that keeps it at least as big as needed, taking a fraction of the time and memory.
+ * From API 19 the image is decoded into the bitmap of a previous decode, if it's big enough.
+ */
+
+public abstract class BlurSource {
+
+    /** Width of the encoded image, or 0 if it wasn't read yet */
+    private int mWidth;
+
+    /** Height of the encoded image, or 0 if it wasn't read yet */
+    private int mHeight;
+
+    BlurSource() {}
+
+    /**
+     * Creates a source from an uri, as the ones passed to setImageURI().
+     *
+     * @param context Context used to open the uri
+     * @param uri Uri of the image
+     */
+    public static BlurSource fromUri(Context context, final Uri uri) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        return new BlurSource() {
+            @Override
+            InputStream open() throws IOException {
+                return appContext.getContentResolver().openInputStream(uri);
+            }
+
+            @Override
+            public void setInto(ImageView view) {
+                view.setImageURI(uri);
+            }
+        };
+    }
+
+    /**
+     * Creates a source from a resource, as the ones passed to setImageResource().
+     * The image is decoded from the resource that best matches the screen density.
+     *
+     * @param resources Resources used to open the resource
+     * @param resId Id of the resource
+     */
+    public static BlurSource fromResource(final Resources resources, final int resId) {
+        return new BlurSource() {
+            @Override
+            InputStream open() throws IOException {
+                return resources.openRawResource(resId);
+            }
+
+            @Override
+            public void setInto(ImageView view) {
+                view.setImageResource(resId);
+            }
+        };
+    }
+
+    /**
+     * Creates a source from a file.
+     *
+     * @param file File of the image
+     */
+    public static BlurSource fromFile(final File file) {
+        return new BlurSource() {
+            @Override
+            InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public void setInto(ImageView view) {
+                view.setImageURI(Uri.fromFile(file));
+            }
+        };
+    }
+
+    /** Opens the stream of the encoded image. The caller closes it */
+    abstract InputStream open() throws IOException;
+
+    /**
+     * Sets the image into the view at full resolution, as ImageView would do.
+     * Used when the image can't be decoded as a bitmap (e.g. a vector drawable) or it isn't blurred.
+     *
+     * @param view View to set the image into
+     */
+    public abstract void setInto(ImageView view);
+
+    /**
+     * Reads the size of the encoded image, without decoding it. The size is read only once.
+     *
+     * @return True if the size is known, false if the image can't be decoded
+     */
+    boolean readSize() {
+        if(mWidth > 0 && mHeight > 0)
+            return true;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(options);
+        mWidth = Math.max(options.outWidth, 0);
+        mHeight = Math.max(options.outHeight, 0);
+        return mWidth > 0 && mHeight > 0;
+    }
+
+    /** Returns the width of the encoded image. Valid only after readSize() returned true */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /** Returns the height of the encoded image. Valid only after readSize() returned true */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Decodes the image subsampled, so that it's not smaller than the passed size (unless the image itself is smaller).
+     * Valid only after readSize() returned true.
+     *
+     * @param minWidth Width the decoded bitmap should not be smaller than
+     * @param minHeight Height the decoded bitmap should not be smaller than
+     * @param reusable Bitmap of a previous decode to decode the image into, if big enough. Nullable
+     * @return The decoded bitmap (the reusable one, if it was reused), or null if the image can't be decoded
+     */
+    Bitmap decode(int minWidth, int minHeight, Bitmap reusable) {
+        int sampleSize = 1;
+        while (mWidth / (sampleSize * 2) >= minWidth && mHeight / (sampleSize * 2) >= minHeight)
+            sampleSize *= 2;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        //the bitmap is decoded into by the next decode
+        options.inMutable = true;
+
+        //before API 19 a bitmap can be reused only by images of its same size, without subsampling
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && reusable != null && !reusable.isRecycled() && reusable.isMutable()) {
+            //the decoder rounds the subsampled size up
+            long width = (mWidth + sampleSize - 1) / sampleSize;
+            long height = (mHeight + sampleSize - 1) / sampleSize;
+            if(reusable.getAllocationByteCount() >= width * height * 4)
+                options.inBitmap = reusable;
+        }
+
+        try {
+            return decode(options);
+        } catch (IllegalArgumentException e) {
+            //the image couldn't be decoded into the reusable bitmap: it's decoded into a new one
+            if(options.inBitmap == null)
+                return null;
+            options.inBitmap = null;
+            return decode(options);
+        }
+    }
+
+    /** Decodes the image with the passed options, returning null if it can't be read */
+    private Bitmap decode(BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            stream = open();
+            return stream == null ? null : BitmapFactory.decodeStream(stream, null, options);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if(stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
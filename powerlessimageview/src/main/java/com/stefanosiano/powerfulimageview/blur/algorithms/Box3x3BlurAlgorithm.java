@@ -1,14 +1,15 @@
 package com.stefanosiano.powerfulimageview.blur.algorithms;
 
+import com.stefanosiano.powerfulimageview.core.blur.Box3x3BlurKernel;
+
 /**
  * Class that performs the box blur with 3x3 coefficient matrix.
  * Changing radius will repeat the process radius times.
  */
 
-final class Box3x3BlurAlgorithm extends ConvolveBaseBlurAlgorithm {
+final class Box3x3BlurAlgorithm extends ConvolveBlurAlgorithm {
 
-    @Override
-    protected float[] getFilter(){
-        return new float[] {1/3f, 1/3f, 1/3f};
+    Box3x3BlurAlgorithm() {
+        super(new Box3x3BlurKernel());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.renderscript.RenderScript;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.ScratchPool;
+import com.stefanosiano.powerfulimageview.core.blur.SummedAreaTable;
+
+/**
+ * Class that performs the box blur with any kind of radius using Java code, through a summed area table.
+ * The table is built once per original bitmap and kept until the bitmap changes, so that changing the radius
+ * (e.g. through a SeekBar) only costs a lookup per pixel, whatever the radius.
+ * It can also blur the same bitmap with several radii at once.
+ */
+
+final class BoxBlurAlgorithm implements BlurAlgorithm {
+
+    /** Summed area table of the last blurred bitmap */
+    private SummedAreaTable mTable;
+
+    /** Bitmap the table was built from */
+    private Bitmap mTableBitmap;
+
+    /** Generation id of the bitmap when the table was built, to know if its pixels changed */
+    private int mTableGenerationId;
+
+    @Override
+    public void setRenderscript(RenderScript renderscript) {
+
+    }
+
+    @Override
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+
+        BlurContext context = SharedBlurManager.getBlurContext(options.getNumThreads());
+        ScratchPool pool = context.getScratchPool();
+        int[] pix = pool.acquire(original.getWidth() * original.getHeight());
+
+        try {
+            getTable(original, context).blur(radius, PixelBuffer.wrap(pix, original.getWidth(), original.getHeight()), context);
+
+            //on static blur the original bitmap is blurred only once, so the table is not needed anymore
+            if(options.isStaticBlur())
+                release();
+
+            return JavaBlurAlgorithm.createResult(original, pix, options, reusable);
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Blurs the bitmap with several radii at once, using the same table.
+     * The original bitmap is never modified, even on static blur.
+     *
+     * @param original Bitmap to blur
+     * @param radii Radii to blur the bitmap with
+     * @param options Options used to blur the bitmap
+     * @return A new bitmap for each radius, or null if the thread was interrupted
+     */
+    Bitmap[] blur(Bitmap original, int[] radii, BlurOptions options) {
+
+        BlurContext context = SharedBlurManager.getBlurContext(options.getNumThreads());
+        int w = original.getWidth();
+        int h = original.getHeight();
+        int[][] pixs = new int[radii.length][w * h];
+        PixelBuffer[] outputs = new PixelBuffer[radii.length];
+        for (int i = 0; i < radii.length; i++)
+            outputs[i] = PixelBuffer.wrap(pixs[i], w, h);
+
+        try {
+            getTable(original, context).blur(radii, outputs, context);
+        } catch (InterruptedException e) {
+            return null;
+        }
+
+        Bitmap[] bitmaps = new Bitmap[radii.length];
+        for (int i = 0; i < radii.length; i++)
+            bitmaps[i] = Bitmap.createBitmap(pixs[i], 0, w, w, h, Bitmap.Config.ARGB_8888);
+        return bitmaps;
+    }
+
+    /**
+     * Releases the table, if any. It will be built again on next blur.
+     * It holds the lock of the algorithm, so it waits for any blur using the table to finish.
+     */
+    synchronized void release() {
+        mTable = null;
+        mTableBitmap = null;
+    }
+
+    /** Returns the table of the bitmap, building it only if the bitmap or its pixels changed */
+    private SummedAreaTable getTable(Bitmap original, BlurContext context) throws InterruptedException {
+        SummedAreaTable table = mTable;
+        if(table != null && mTableBitmap == original && mTableGenerationId == original.getGenerationId())
+            return table;
+
+        int w = original.getWidth();
+        int h = original.getHeight();
+        int[] pix = context.getScratchPool().acquire(w * h);
+        try {
+            original.getPixels(pix, 0, w, 0, 0, w, h);
+            table = SummedAreaTable.build(PixelBuffer.wrap(pix, w, h), context);
+        } finally {
+            context.getScratchPool().release(pix);
+        }
+        mTable = table;
+        mTableBitmap = original;
+        mTableGenerationId = original.getGenerationId();
+        return table;
+    }
+}
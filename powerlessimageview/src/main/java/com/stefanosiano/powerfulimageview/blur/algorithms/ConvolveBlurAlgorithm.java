@@ -0,0 +1,31 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.core.blur.ConvolveBlurKernel;
+
+/**
+ * Base class for algorithms that perform a convolution blur using Java code.
+ * It applies the convolution related options to the kernel before blurring.
+ */
+
+abstract class ConvolveBlurAlgorithm extends JavaBlurAlgorithm {
+
+    /** Kernel used to blur the pixels */
+    private final ConvolveBlurKernel mConvolveKernel;
+
+    ConvolveBlurAlgorithm(ConvolveBlurKernel kernel) {
+        super(kernel);
+        this.mConvolveKernel = kernel;
+    }
+
+    @Override
+    void applyOptions(BlurOptions options) {
+        super.applyOptions(options);
+        mConvolveKernel.setSinglePass(options.isSinglePass());
+    }
+
+    @Override
+    int getReach(int radius) {
+        return mConvolveKernel.getReach(radius);
+    }
+}
@@ -1,14 +1,15 @@
 package com.stefanosiano.powerfulimageview.blur.algorithms;
 
+import com.stefanosiano.powerfulimageview.core.blur.Gaussian5x5BlurKernel;
+
 /**
  * Class that performs the gaussian blur with 5x5 coefficient matrix.
  * Changing radius will repeat the process radius times.
  */
 
-final class Gaussian5x5BlurAlgorithm extends ConvolveBaseBlurAlgorithm {
+final class Gaussian5x5BlurAlgorithm extends ConvolveBlurAlgorithm {
 
-    @Override
-    protected float[] getFilter(){
-        return new float[] {0.0545f, 0.2442f, 0.4026f, 0.2442f, 0.0545f};
+    Gaussian5x5BlurAlgorithm() {
+        super(new Gaussian5x5BlurKernel());
     }
-}
\ No newline at end of file
+}
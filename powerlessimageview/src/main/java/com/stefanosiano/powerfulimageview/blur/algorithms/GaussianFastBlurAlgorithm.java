@@ -0,0 +1,15 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import com.stefanosiano.powerfulimageview.core.blur.GaussianFastBlurKernel;
+
+/**
+ * Class that approximates the gaussian blur with 3 box blurs, using Java code.
+ * Its speed doesn't depend on the radius, and there is no limit on the radius, so it's the best choice for heavy blurs.
+ */
+
+final class GaussianFastBlurAlgorithm extends JavaBlurAlgorithm {
+
+    GaussianFastBlurAlgorithm() {
+        super(new GaussianFastBlurKernel());
+    }
+}
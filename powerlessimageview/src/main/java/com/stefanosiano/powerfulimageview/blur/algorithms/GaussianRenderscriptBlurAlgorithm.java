@@ -25,7 +25,15 @@ final class GaussianRenderscriptBlurAlgorithm implements BlurAlgorithm {
     }
 
     @Override
-    public Bitmap blur(Bitmap original, int radius, BlurOptions options) throws RenderscriptException {
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+        return blur(original, (float) radius, options, reusable);
+    }
+
+    /**
+     * Blurs the bitmap with the passed radius of the intrinsic, which can be fractional (from 0, excluded, to 25).
+     * Its sigma is 0.4 * radius + 0.6.
+     */
+    Bitmap blur(Bitmap original, float radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
         RenderScript rs = renderscript.get();
         if(rs == null)
             throw new RenderscriptException("Renderscript is null!");
@@ -45,7 +53,7 @@ final class GaussianRenderscriptBlurAlgorithm implements BlurAlgorithm {
         }
 
         if(!options.isStaticBlur()) {
-            Bitmap bitmap = Bitmap.createBitmap(original.getWidth(), original.getHeight(), Bitmap.Config.ARGB_8888);
+            Bitmap bitmap = SharedBlurManager.getBitmapPool().getOutput(original, reusable);
             output.copyTo(bitmap);
             input.destroy();
             output.destroy();
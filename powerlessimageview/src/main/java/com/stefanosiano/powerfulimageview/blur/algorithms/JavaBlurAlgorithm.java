@@ -0,0 +1,230 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.renderscript.RenderScript;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.core.blur.BlurKernel;
+import com.stefanosiano.powerfulimageview.core.blur.BlurTracer;
+import com.stefanosiano.powerfulimageview.core.blur.PixelBuffer;
+import com.stefanosiano.powerfulimageview.core.blur.PixelSource;
+import com.stefanosiano.powerfulimageview.core.blur.Rgb565Dither;
+import com.stefanosiano.powerfulimageview.core.blur.ScratchPool;
+import com.stefanosiano.powerfulimageview.core.blur.SeparableBlurKernel;
+
+/**
+ * Base class for algorithms that blur the image using Java code.
+ * It only moves pixels between the bitmap and the pure Java kernel that performs the blur.
+ */
+
+abstract class JavaBlurAlgorithm implements BlurAlgorithm {
+
+    /** Kernel used to blur the pixels */
+    private final BlurKernel mKernel;
+
+    JavaBlurAlgorithm(BlurKernel kernel) {
+        this.mKernel = kernel;
+    }
+
+    @Override
+    public void setRenderscript(RenderScript renderscript) {
+
+    }
+
+    @Override
+    public Bitmap blur(Bitmap original, int radius, BlurOptions options, Bitmap reusable) throws RenderscriptException {
+
+        int w = original.getWidth();
+        int h = original.getHeight();
+        ScratchPool pool = SharedBlurManager.getScratchPool();
+        int[] pix = pool.acquire(w * h);
+
+        try {
+            original.getPixels(pix, 0, w, 0, 0, w, h);
+            applyOptions(options);
+            mKernel.blur(wrap(pix, w, h, original), radius, SharedBlurManager.getBlurContext(options.getNumThreads()));
+
+            //pixels are copied into the bitmap, so the array can be reused
+            return createResult(original, pix, options, reusable);
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Downsamples the bitmap by area averaging and blurs it at once, without creating the downsampled bitmap
+     * (see SeparableBlurKernel). The bitmap is read a few rows at a time, so its pixels are never copied all together.
+     *
+     * @param source Bitmap to downsample. It must not be smaller than the passed size
+     * @param width Width of the blurred bitmap
+     * @param height Height of the blurred bitmap
+     * @param config Config of the blurred bitmap: ARGB_8888, or RGB_565 if the source is opaque
+     * @param radius Radius of the algorithm. If it's 0, the bitmap is only downsampled
+     * @param options Options of the blurring
+     * @return The blurred bitmap, or null if the kernel is not separable, the bitmap can't be downsampled to the passed size
+     * or the thread was interrupted
+     */
+    Bitmap blurDownsampled(final Bitmap source, int width, int height, Bitmap.Config config, int radius, BlurOptions options) {
+
+        if(!(mKernel instanceof SeparableBlurKernel))
+            return null;
+
+        ScratchPool pool = SharedBlurManager.getScratchPool();
+        int[] pix = pool.acquire(width * height);
+
+        try {
+            PixelSource pixelSource = new PixelSource() {
+                @Override
+                public int getWidth() {
+                    return source.getWidth();
+                }
+
+                @Override
+                public int getHeight() {
+                    return source.getHeight();
+                }
+
+                @Override
+                public void readRows(int y, int rows, int[] dst) {
+                    source.getPixels(dst, 0, source.getWidth(), 0, y, source.getWidth(), rows);
+                }
+            };
+            applyOptions(options);
+            ((SeparableBlurKernel) mKernel).blur(pixelSource, wrap(pix, width, height, source), radius, SharedBlurManager.getBlurContext(options.getNumThreads()));
+            if(config == Bitmap.Config.RGB_565 && options.isDither())
+                Rgb565Dither.dither(PixelBuffer.wrap(pix, width, height), 0, 0);
+            Bitmap bitmap = SharedBlurManager.getBlurMetrics().createBitmap(pix, width, height, config, null);
+            bitmap.setHasAlpha(source.hasAlpha());
+            return bitmap;
+        } catch (InterruptedException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Blurs again only a region of the original bitmap that changed, writing the result into the bitmap blurred from it.
+     * The change affects the blurred bitmap only within the reach of the blur around the region, and blurring that area
+     * needs the pixels within the reach around it, too: only those are read, and blurred as an image on their own.
+     *
+     * @param original Bitmap whose region changed
+     * @param blurred Mutable bitmap blurred from the original one before the change, with the same radius and options
+     * @param region Region that changed, in pixels of the original bitmap. It's set to the region of the blurred bitmap that changed
+     * @param radius Radius of the algorithm
+     * @param options Options of the blurring
+     * @return True if the region was blurred, false if the algorithm can't blur a region alone or the thread was interrupted
+     */
+    boolean blurRegion(Bitmap original, Bitmap blurred, Rect region, int radius, BlurOptions options) {
+
+        int reach = getReach(radius);
+        int w = original.getWidth();
+        int h = original.getHeight();
+        if(reach < 0 || !blurred.isMutable() || blurred.getWidth() != w || blurred.getHeight() != h)
+            return false;
+
+        region.inset(-reach, -reach);
+        if(!region.intersect(0, 0, w, h))
+            return true;
+        Rect source = new Rect(region);
+        source.inset(-reach, -reach);
+        source.intersect(0, 0, w, h);
+
+        int sw = source.width();
+        int sh = source.height();
+        ScratchPool pool = SharedBlurManager.getScratchPool();
+        int[] pix = pool.acquire(sw * sh);
+
+        try {
+            original.getPixels(pix, 0, sw, source.left, source.top, sw, sh);
+            applyOptions(options);
+            mKernel.blur(wrap(pix, sw, sh, original), radius, SharedBlurManager.getBlurContext(options.getNumThreads()));
+            if(blurred.getConfig() == Bitmap.Config.RGB_565 && options.isDither())
+                Rgb565Dither.dither(PixelBuffer.wrap(pix, sw, sh), source.left, source.top);
+
+            //pixels near the edges of the source are wrong, since the pixels around it were not read: only the region is written
+            blurred.setPixels(pix, (region.top - source.top) * sw + region.left - source.left, sw, region.left, region.top, region.width(), region.height());
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            pool.release(pix);
+        }
+    }
+
+    /**
+     * Returns how far, in pixels, the blur with the passed radius spreads each pixel of the original bitmap,
+     * or -1 if it's unknown, and a region can't be blurred alone (see blurRegion()). By default it's -1.
+     *
+     * @param radius Radius of the algorithm
+     */
+    int getReach(int radius) {
+        return -1;
+    }
+
+    /** Sets the tracer of the passes of the kernel, if it's separable. If null, passes are not traced */
+    void setTracer(BlurTracer tracer) {
+        if(mKernel instanceof SeparableBlurKernel)
+            ((SeparableBlurKernel) mKernel).setTracer(tracer);
+    }
+
+    /**
+     * Wraps the pixels read from the bitmap. If the bitmap has no alpha (e.g. a decoded jpeg or an RGB_565 bitmap),
+     * the buffer is marked as opaque, and separable kernels blur only the 3 color channels.
+     */
+    private static PixelBuffer wrap(int[] pix, int width, int height, Bitmap bitmap) {
+        PixelBuffer pixels = PixelBuffer.wrap(pix, width, height);
+        return bitmap.hasAlpha() ? pixels : pixels.asOpaque();
+    }
+
+    /** Applies the options to the kernel before blurring */
+    void applyOptions(BlurOptions options) {
+        if(mKernel instanceof SeparableBlurKernel)
+            ((SeparableBlurKernel) mKernel).setTransposeVertical(options.isTransposeVertical());
+    }
+
+    /**
+     * Returns the bitmap containing the blurred pixels. If static blur is enabled, the original bitmap is reused
+     * (if mutable) or recycled, since it's not needed anymore. Otherwise the reusable bitmap is overwritten,
+     * if possible, or a bitmap is checked out from the pool.
+     * The result has the config of the original bitmap, if it's RGB_565, and the pixels are dithered first, if enabled.
+     *
+     * @param original Bitmap that has been blurred
+     * @param pix Blurred pixels, with the same size of the original bitmap (the array can be longer). They are copied into the bitmap
+     * @param options Options used to blur the bitmap
+     * @param reusable Bitmap that can be overwritten with the result, if static blur is disabled (nullable)
+     */
+    static Bitmap createResult(Bitmap original, int[] pix, BlurOptions options, Bitmap reusable) {
+        int w = original.getWidth();
+        int h = original.getHeight();
+        boolean hasAlpha = original.hasAlpha();
+        Bitmap.Config config = original.getConfig() == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if(config == Bitmap.Config.RGB_565 && options.isDither())
+            Rgb565Dither.dither(PixelBuffer.wrap(pix, w, h), 0, 0);
+
+        if(!options.isStaticBlur()) {
+            Bitmap bitmap = SharedBlurManager.getBitmapPool().getOutput(original, reusable);
+            bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+            //the blur of an opaque bitmap is opaque too, so it's drawn without blending
+            bitmap.setHasAlpha(hasAlpha);
+            return bitmap;
+        }
+        else {
+            if (original.isMutable()) {
+                original.setPixels(pix, 0, w, 0, 0, w, h);
+                return original;
+            }
+            else {
+                original.recycle();
+                Bitmap bitmap = SharedBlurManager.getBlurMetrics().createBitmap(pix, w, h, config, null);
+                bitmap.setHasAlpha(hasAlpha);
+                return bitmap;
+            }
+        }
+    }
+}
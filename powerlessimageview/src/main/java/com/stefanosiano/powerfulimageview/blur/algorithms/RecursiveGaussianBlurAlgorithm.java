@@ -0,0 +1,16 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import com.stefanosiano.powerfulimageview.core.blur.RecursiveGaussianBlurKernel;
+
+/**
+ * Class that performs the gaussian blur through a recursive filter, using Java code.
+ * Its speed doesn't depend on the radius, and there is no limit on the radius: with big radii it's as good as
+ * the gaussian blur, but much faster. With small radii it's less accurate.
+ */
+
+final class RecursiveGaussianBlurAlgorithm extends JavaBlurAlgorithm {
+
+    RecursiveGaussianBlurAlgorithm() {
+        super(new RecursiveGaussianBlurKernel());
+    }
+}
@@ -1,18 +1,26 @@
 package com.stefanosiano.powerfulimageview.blur.algorithms;
 
 import android.content.Context;
+import android.os.Process;
 import android.os.Build;
 import android.renderscript.RenderScript;
 import android.util.Log;
 
+import com.stefanosiano.powerfulimageview.core.blur.BlurContext;
+import com.stefanosiano.powerfulimageview.core.blur.ScratchPool;
+
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manager class for content shared through all instances of BlurManager
  * Renderscript related stuff
- * ThreadPool for java blurring methods
+ * ThreadPool for java blurring methods: a bounded pool of background priority threads, or the executor supplied by the app
  */
 
 final class SharedBlurManager {
@@ -23,6 +31,29 @@ final class SharedBlurManager {
 
     private static ExecutorService executorService;
 
+    /** Executor supplied by the app, used instead of the default thread pool */
+    private static Executor customExecutor;
+
+    /** Buffers reused by all Java algorithms, so that repeated blurs don't allocate memory */
+    private static final ScratchPool scratchPool = new ScratchPool();
+    private static BlurContext blurContext;
+
+    /** Bitmaps resulting from non static blurs, reused by all instances of BlurManager */
+    private static final BitmapPool bitmapPool = new BitmapPool(BitmapPool.DEFAULT_MAX_RETAINED_BYTES);
+    private static int blurContextThreads;
+
+    /** Number of views using the pools, whatever their mode: the pools are cleared when the last one goes away */
+    private static int poolUsers;
+
+    /** Blurred bitmaps shared by all instances of BlurManager, so that the same image is blurred only once */
+    private static final BlurCache blurCache = new BlurCache(BlurCache.DEFAULT_MAX_SIZE);
+
+    /** Metrics of the blurs of all instances of BlurManager */
+    private static final BlurMetrics blurMetrics = new BlurMetrics();
+
+    /** Results of static blurs saved on disk, if enabled by the app */
+    private static BlurDiskCache diskCache;
+
     synchronized static void addRenderscriptContext(Context context){
 
         //Renderscript scripts used are available only if api level is at least 18!
@@ -47,6 +78,19 @@ final class SharedBlurManager {
         }
     }
 
+    /** Adds a view using the pools of buffers and bitmaps */
+    synchronized static void addPoolUser(){
+        poolUsers++;
+    }
+
+    /** Removes a view using the pools of buffers and bitmaps. When no view uses them anymore, their memory is released */
+    synchronized static void removePoolUser(){
+        if(poolUsers > 0 && --poolUsers == 0) {
+            scratchPool.clear();
+            bitmapPool.clear();
+        }
+    }
+
     synchronized static RenderScript getRenderScriptContext(){
         if(renderScript == null && applicationContext != null) {
             try {
@@ -59,10 +103,95 @@ final class SharedBlurManager {
         return renderScript;
     }
 
-    synchronized static ExecutorService getExecutorService(){
+    /** Returns the executor that runs the tasks of Java algorithms: the one supplied by the app, if any, or the default thread pool */
+    synchronized static Executor getExecutor(){
+        if(customExecutor != null)
+            return customExecutor;
+
         if(executorService == null || executorService.isShutdown())
-            executorService = Executors.newCachedThreadPool();
+            executorService = createExecutorService();
 
         return executorService;
     }
+
+    /**
+     * Sets the executor that runs the tasks of Java algorithms, so that they can share the threads of the app.
+     *
+     * @param executor Executor to use. If null, the default thread pool is used
+     */
+    synchronized static void setExecutor(Executor executor){
+        customExecutor = executor;
+    }
+
+    /**
+     * Creates the default thread pool: one thread less than the available cores, since the thread that starts the blur
+     * works on it too. Threads run at background priority, so they don't compete with the UI, and they are
+     * stopped after some time without blurs.
+     */
+    private static ExecutorService createExecutorService(){
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "piv-blur-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the context used by Java algorithms to run their kernels on the shared thread pool.
+     * It's reused while the number of threads and the executor don't change.
+     *
+     * @param numThreads Number of threads to use. If it's 0 or negative, available cores number will be used
+     */
+    synchronized static BlurContext getBlurContext(int numThreads){
+        Executor executor = getExecutor();
+        if(blurContext == null || blurContext.getExecutor() != executor || blurContextThreads != numThreads) {
+            blurContext = new BlurContext(executor, numThreads, scratchPool);
+            blurContextThreads = numThreads;
+        }
+        return blurContext;
+    }
+
+    /** Returns the pool of the bitmaps resulting from non static blurs */
+    static BitmapPool getBitmapPool(){
+        return bitmapPool;
+    }
+
+    /** Returns the cache of the blurred bitmaps */
+    static BlurCache getBlurCache(){
+        return blurCache;
+    }
+
+    /** Returns the metrics of the blurs */
+    static BlurMetrics getBlurMetrics(){
+        return blurMetrics;
+    }
+
+    /** Returns the cache of the results of static blurs on disk, or null if it's disabled */
+    synchronized static BlurDiskCache getDiskCache(){
+        return diskCache;
+    }
+
+    /** Sets the cache of the results of static blurs on disk. If null, results are not cached on disk */
+    synchronized static void setDiskCache(BlurDiskCache cache){
+        diskCache = cache;
+    }
+
+    /** Returns the buffers shared by all Java algorithms */
+    static ScratchPool getScratchPool(){
+        return scratchPool;
+    }
 }
@@ -584,6 +584,28 @@ public class ShapeDrawerManager implements ShapeOptions.ShapeOptionsListener {
         mShapeDrawer.draw(canvas, mBorderBounds, mShapeBounds, mImageBounds);
     }
 
+    /**
+     * Maps a region of the shown bitmap, in its pixels, to the region of the view it's drawn into.
+     * If the drawable is not a bitmap, the region is set to the bounds of the image.
+     *
+     * @param rect Region of the bitmap. It's set to the region of the view
+     */
+    public final void mapBitmapRect(RectF rect) {
+        Bitmap bitmap = mDrawable instanceof BitmapDrawable ? ((BitmapDrawable) mDrawable).getBitmap() : null;
+        if(bitmap == null || mDrawable.getIntrinsicWidth() <= 0 || mDrawable.getIntrinsicHeight() <= 0) {
+            rect.set(mImageBounds);
+            return;
+        }
+
+        //drawers using the bitmap scale its pixels, while the others scale the drawable, whose size depends on its density
+        if(mLastBitmap == null) {
+            float scaleX = mDrawable.getIntrinsicWidth() / (float) bitmap.getWidth();
+            float scaleY = mDrawable.getIntrinsicHeight() / (float) bitmap.getHeight();
+            rect.set(rect.left * scaleX, rect.top * scaleY, rect.right * scaleX, rect.bottom * scaleY);
+        }
+        mShaderMatrix.mapRect(rect);
+    }
+
     /**
      * @return The options of the shape
      */
@@ -0,0 +1,85 @@
+package com.stefanosiano.powerfulimageview.blur.algorithms;
+
+import android.graphics.Bitmap;
+
+import com.stefanosiano.powerfulimageview.blur.BlurOptions;
+import com.stefanosiano.powerfulimageview.blur.PivBlurMode;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlurCacheKeyTest {
+
+    /** Stands for the source bitmap, which is only compared by identity */
+    private final Object mSource = new Object();
+
+    @Test
+    public void sameParametersGiveAHit() {
+        HashMap<BlurCache.Key, String> cache = new HashMap<>();
+        cache.put(createKey(Bitmap.Config.ARGB_8888, createOptions()), "blurred");
+
+        BlurCache.Key key = createKey(Bitmap.Config.ARGB_8888, createOptions());
+        assertTrue(cache.containsKey(key));
+        assertEquals(createKey(Bitmap.Config.ARGB_8888, createOptions()).getDescription(), key.getDescription());
+    }
+
+    @Test
+    public void differentConfigsGiveAMiss() {
+        assertMiss(createKey(Bitmap.Config.ARGB_8888, createOptions()), createKey(Bitmap.Config.RGB_565, createOptions()));
+    }
+
+    @Test
+    public void differentOptionsGiveAMiss() {
+        BlurCache.Key key = createKey(Bitmap.Config.ARGB_8888, createOptions());
+
+        BlurOptions options = createOptions();
+        options.setSinglePass(true);
+        assertMiss(key, createKey(Bitmap.Config.ARGB_8888, options));
+
+        options = createOptions();
+        options.setPyramidLevels(options.getPyramidLevels() + 1);
+        assertMiss(key, createKey(Bitmap.Config.ARGB_8888, options));
+
+        options = createOptions();
+        options.setAreaDownsampling(true);
+        assertMiss(key, createKey(Bitmap.Config.ARGB_8888, options));
+
+        options = createOptions();
+        options.setRgb565(true);
+        assertMiss(key, createKey(Bitmap.Config.ARGB_8888, options));
+
+        options = createOptions();
+        options.setDither(true);
+        assertMiss(key, createKey(Bitmap.Config.ARGB_8888, options));
+    }
+
+    @Test
+    public void optionsNotChangingThePixelsGiveAHit() {
+        BlurOptions options = createOptions();
+        options.setTransposeVertical(true);
+        options.setAsync(true);
+        assertEquals(createKey(Bitmap.Config.ARGB_8888, createOptions()), createKey(Bitmap.Config.ARGB_8888, options));
+    }
+
+    /** Checks that the keys differ, both in memory and in the name of the file of the disk cache */
+    private static void assertMiss(BlurCache.Key cached, BlurCache.Key requested) {
+        HashMap<BlurCache.Key, String> cache = new HashMap<>();
+        cache.put(cached, "blurred");
+        assertFalse(cache.containsKey(requested));
+        assertNotEquals(cached.getDescription(), requested.getDescription());
+    }
+
+    private BlurCache.Key createKey(Bitmap.Config config, BlurOptions options) {
+        return new BlurCache.Key(mSource, 1, 100, 80, config, PivBlurMode.STACK, 10, 2, options);
+    }
+
+    private static BlurOptions createOptions() {
+        return new BlurOptions(2, false, true, 0);
+    }
+}